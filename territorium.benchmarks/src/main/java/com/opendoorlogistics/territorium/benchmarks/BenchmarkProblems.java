@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.benchmarks;
+
+import java.util.Random;
+
+import com.opendoorlogistics.territorium.examples.XYMinMaxQuantitiesHeterogeneousClusters;
+import com.opendoorlogistics.territorium.problem.Problem;
+import com.opendoorlogistics.territorium.problem.ProblemIndex;
+
+/**
+ * Problems shared by the benchmarks. Problems use a full travel matrix so memory grows with the
+ * square of the number of customers; 5000 customers needs around 400 MB of heap.
+ * @author Phil
+ *
+ */
+class BenchmarkProblems {
+	static final long SEED = 123;
+
+	private BenchmarkProblems() {
+	}
+
+	/**
+	 * Build the problem with its {@link ProblemIndex} compiled, as the solver does
+	 * @param nbCustomers
+	 * @param nbClusters
+	 * @return
+	 */
+	static Problem build(int nbCustomers, int nbClusters) {
+		Problem problem = new XYMinMaxQuantitiesHeterogeneousClusters().setNbCustomers(nbCustomers).setNbClusters(nbClusters)
+				.build(new Random(SEED));
+		problem.setProblemIndex(ProblemIndex.compile(problem));
+		return problem;
+	}
+
+	/**
+	 * Assign every customer to a random cluster
+	 * @param problem
+	 * @param random
+	 * @return
+	 */
+	static int[] randomAssignment(Problem problem, Random random) {
+		int nbClusters = problem.getClusters().size();
+		int[] ret = new int[problem.getCustomers().size()];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = random.nextInt(nbClusters);
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.benchmarks;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.opendoorlogistics.territorium.optimiser.components.LocalSearch;
+import com.opendoorlogistics.territorium.optimiser.components.RandomisedCentreSelector;
+import com.opendoorlogistics.territorium.optimiser.components.RandomisedWeightBasedCustomerAssignment;
+import com.opendoorlogistics.territorium.optimiser.data.Cost;
+import com.opendoorlogistics.territorium.optimiser.data.MutableSolution;
+import com.opendoorlogistics.territorium.optimiser.solver.Solver;
+import com.opendoorlogistics.territorium.optimiser.solver.SolverConfig;
+import com.opendoorlogistics.territorium.problem.Problem;
+import com.opendoorlogistics.territorium.problem.location.Location;
+
+/**
+ * The two components of solution construction: the randomised weight based assignment and a single local
+ * search step starting from its output. Each invocation starts from the same assignment so they do
+ * the same work.
+ * <p>
+ * Run using: mvn -pl territorium.benchmarks -am package, then
+ * java -jar territorium.benchmarks/target/benchmarks.jar LocalSearchBenchmark -rf json
+ * @author Phil
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LocalSearchBenchmark {
+	@Param({ "1000", "5000" })
+	public int nbCustomers;
+
+	@Param({ "10", "100" })
+	public int nbClusters;
+
+	private Problem problem;
+	private SolverConfig config;
+	private Location[] centres;
+	private int[] startAssignment;
+	private LocalSearch localSearch;
+	private final Comparator<Cost> comparator = Cost.createApproxEqualComparator();
+
+	@Setup
+	public void setup() {
+		problem = BenchmarkProblems.build(nbCustomers, nbClusters);
+		config = new SolverConfig();
+		Random random = new Random(BenchmarkProblems.SEED);
+		centres = new RandomisedCentreSelector(problem, random, config.getCentreSelector()).run(null, null);
+		startAssignment = new RandomisedWeightBasedCustomerAssignment(problem, config.getWeightBasedAssigner(), random)
+				.run(centres, null);
+		localSearch = new LocalSearch(problem, config.getLocalSearchConfig(), Solver.createClosestNgbMatrix(problem, config),
+				random);
+	}
+
+	@Benchmark
+	public int[] weightBasedAssignment() {
+		return new RandomisedWeightBasedCustomerAssignment(problem, config.getWeightBasedAssigner(),
+				new Random(BenchmarkProblems.SEED)).run(centres, null);
+	}
+
+	@Benchmark
+	public MutableSolution localSearchSingleStep() {
+		return localSearch.runSingleStep(comparator, startAssignment);
+	}
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.benchmarks;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.opendoorlogistics.territorium.optimiser.components.LocalSearch;
+import com.opendoorlogistics.territorium.optimiser.components.LocalSearch.LocalSearchConfig;
+import com.opendoorlogistics.territorium.optimiser.data.Cost;
+import com.opendoorlogistics.territorium.optimiser.data.MutableSolution;
+import com.opendoorlogistics.territorium.optimiser.solver.Solver;
+import com.opendoorlogistics.territorium.optimiser.solver.SolverConfig;
+import com.opendoorlogistics.territorium.problem.Problem;
+
+/**
+ * Local search steps on a solution which is already at a local optimum, so each step only scans the
+ * neighbourhoods without changing anything. This is where the solver spends most of its local search time
+ * and it should not allocate; check using the GC profiler (gc.alloc.rate.norm is bytes per step).
+ * <p>
+ * Run using: mvn -pl territorium.benchmarks -am package, then
+ * java -jar territorium.benchmarks/target/benchmarks.jar LocalSearchSteadyStateBenchmark -prof gc
+ * @author Phil
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LocalSearchSteadyStateBenchmark {
+	@Param({ "1000" })
+	public int nbCustomers;
+
+	@Param({ "10", "100" })
+	public int nbClusters;
+
+	@Param({ "true", "false" })
+	public boolean dontLookBits;
+
+	private MutableSolution solution;
+	private LocalSearch localSearch;
+	private final Comparator<Cost> comparator = Cost.createApproxEqualComparator();
+
+	@Setup
+	public void setup() {
+		Problem problem = BenchmarkProblems.build(nbCustomers, nbClusters);
+		SolverConfig config = new SolverConfig();
+		LocalSearchConfig lsConfig = config.getLocalSearchConfig();
+		lsConfig.setDontLookBits(dontLookBits);
+		Random random = new Random(BenchmarkProblems.SEED);
+		localSearch = new LocalSearch(problem, lsConfig, Solver.createClosestNgbMatrix(problem, config), random);
+		solution = new MutableSolution(problem, BenchmarkProblems.randomAssignment(problem, random));
+		while (localSearch.runSingleStep(0, comparator, solution)) {
+		}
+	}
+
+	@Benchmark
+	public boolean localSearchStep() {
+		return localSearch.runSingleStep(0, comparator, solution);
+	}
+}
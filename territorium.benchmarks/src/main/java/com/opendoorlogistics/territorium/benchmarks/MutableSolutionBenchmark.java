@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.opendoorlogistics.territorium.optimiser.data.Cost;
+import com.opendoorlogistics.territorium.optimiser.data.MutableSolution;
+import com.opendoorlogistics.territorium.problem.Problem;
+
+/**
+ * The {@link MutableSolution} operations called in the local search inner loops: evaluating a move or
+ * swap without applying it, and applying a move. Update cost is covered by {@link MutableSolutionUpdateBenchmark}.
+ * <p>
+ * Run using: mvn -pl territorium.benchmarks -am package, then
+ * java -jar territorium.benchmarks/target/benchmarks.jar MutableSolutionBenchmark -rf json
+ * @author Phil
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MutableSolutionBenchmark {
+	@Param({ "1000", "5000" })
+	public int nbCustomers;
+
+	@Param({ "10", "100", "500" })
+	public int nbClusters;
+
+	private Random random;
+	private MutableSolution solution;
+	private final Cost cost = new Cost();
+
+	@Setup
+	public void setup() {
+		Problem problem = BenchmarkProblems.build(nbCustomers, nbClusters);
+		random = new Random(BenchmarkProblems.SEED);
+		solution = new MutableSolution(problem, BenchmarkProblems.randomAssignment(problem, random));
+	}
+
+	@Benchmark
+	public Cost evaluateSet() {
+		solution.evaluateSet(random.nextInt(nbCustomers), random.nextInt(nbClusters), cost);
+		return cost;
+	}
+
+	@Benchmark
+	public Cost evaluateSwap() {
+		solution.evaluateSwap(random.nextInt(nbCustomers), random.nextInt(nbCustomers), cost);
+		return cost;
+	}
+
+	@Benchmark
+	public Cost setCustomerToCluster() {
+		solution.setCustomerToCluster(random.nextInt(nbCustomers), random.nextInt(nbClusters));
+		return solution.getCost();
+	}
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.opendoorlogistics.territorium.examples.XYMinMaxQuantitiesHeterogeneousClusters;
+import com.opendoorlogistics.territorium.optimiser.data.Cost;
+import com.opendoorlogistics.territorium.optimiser.data.MutableSolution;
+import com.opendoorlogistics.territorium.problem.Problem;
+
+/**
+ * Compares {@link MutableSolution#update()}, which only recalculates clusters changed since the last update,
+ * against {@link MutableSolution#forceUpdate()}, which recalculates every cluster, after moving a single customer.
+ * Also measures update() when nothing has changed, which is what the local search hits most often.
+ * <p>
+ * Run using: mvn -pl territorium.benchmarks -am package, then
+ * java -jar territorium.benchmarks/target/benchmarks.jar MutableSolutionUpdateBenchmark
+ * @author Phil
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MutableSolutionUpdateBenchmark {
+	@Param({ "500", "2000" })
+	public int nbCustomers;
+
+	@Param({ "20" })
+	public int nbClusters;
+
+	private Random random;
+	private MutableSolution solution;
+
+	@Setup
+	public void setup() {
+		random = new Random(123);
+		Problem problem = new XYMinMaxQuantitiesHeterogeneousClusters().setNbCustomers(nbCustomers)
+				.setNbClusters(nbClusters).build(random);
+		int[] assignment = new int[nbCustomers];
+		for (int i = 0; i < nbCustomers; i++) {
+			assignment[i] = random.nextInt(nbClusters);
+		}
+		solution = new MutableSolution(problem, assignment);
+	}
+
+	private void moveRandomCustomer() {
+		solution.setCustomerToCluster(random.nextInt(nbCustomers), random.nextInt(nbClusters));
+	}
+
+	@Benchmark
+	public Cost moveThenUpdateChanged() {
+		moveRandomCustomer();
+		solution.update();
+		return solution.getCost();
+	}
+
+	@Benchmark
+	public Cost moveThenUpdateAll() {
+		moveRandomCustomer();
+		solution.forceUpdate();
+		return solution.getCost();
+	}
+
+	@Benchmark
+	public Cost updateUnchanged() {
+		solution.update();
+		return solution.getCost();
+	}
+}
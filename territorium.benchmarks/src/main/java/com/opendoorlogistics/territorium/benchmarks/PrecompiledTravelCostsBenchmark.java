@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.opendoorlogistics.territorium.optimiser.data.Cost;
+import com.opendoorlogistics.territorium.optimiser.data.ImmutableSolution;
+import com.opendoorlogistics.territorium.optimiser.data.MutableSolution;
+import com.opendoorlogistics.territorium.optimiser.solver.Solver;
+import com.opendoorlogistics.territorium.optimiser.solver.SolverConfig;
+import com.opendoorlogistics.territorium.problem.Problem;
+import com.opendoorlogistics.territorium.problem.TravelCostMatrix;
+
+/**
+ * Move evaluation and solver speed with and without a precompiled {@link TravelCostMatrix}, plus the
+ * cost of compiling the matrix. Solver runs use a fixed number of outer steps and a fixed seed.
+ * <p>
+ * Run using: mvn -pl territorium.benchmarks -am package, then
+ * java -jar territorium.benchmarks/target/benchmarks.jar PrecompiledTravelCostsBenchmark -rf json
+ * @author Phil
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PrecompiledTravelCostsBenchmark {
+	@Param({ "500", "2000" })
+	public int nbCustomers;
+
+	@Param({ "10", "40" })
+	public int nbClusters;
+
+	@Param({ "10" })
+	public int nbOuterSteps;
+
+	private Problem problem;
+
+	/**
+	 * Whether the travel costs are precompiled, kept in its own state so {@link #compile()} isn't run for both
+	 */
+	@State(Scope.Thread)
+	public static class Precompile {
+		@Param({ "false", "true" })
+		public boolean precompiled;
+
+		private Random random;
+		private MutableSolution solution;
+		private final Cost cost = new Cost();
+
+		@Setup
+		public void setup(PrecompiledTravelCostsBenchmark benchmark) {
+			Problem problem = benchmark.problem;
+			if (precompiled) {
+				problem = new Problem(problem);
+				problem.setTravelCostMatrix(TravelCostMatrix.compile(problem));
+			}
+			random = new Random(BenchmarkProblems.SEED);
+			solution = new MutableSolution(problem, BenchmarkProblems.randomAssignment(problem, random));
+		}
+	}
+
+	@Setup
+	public void setup() {
+		problem = BenchmarkProblems.build(nbCustomers, nbClusters);
+	}
+
+	@Benchmark
+	public Cost evaluateSet(Precompile state) {
+		state.solution.evaluateSet(state.random.nextInt(nbCustomers), state.random.nextInt(nbClusters), state.cost);
+		return state.cost;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 1)
+	@Measurement(iterations = 3)
+	public ImmutableSolution solve(Precompile state) {
+		SolverConfig config = new SolverConfig();
+		config.setNbOuterSteps(nbOuterSteps);
+		config.setPrecompileTravelCosts(state.precompiled);
+		return new Solver(problem, config, null, new Random(BenchmarkProblems.SEED)).solve(null);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 1)
+	@Measurement(iterations = 3)
+	public TravelCostMatrix compile() {
+		return TravelCostMatrix.compile(problem);
+	}
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.opendoorlogistics.territorium.optimiser.data.ImmutableSolution;
+import com.opendoorlogistics.territorium.optimiser.solver.Solver;
+import com.opendoorlogistics.territorium.optimiser.solver.SolverConfig;
+import com.opendoorlogistics.territorium.problem.Problem;
+
+/**
+ * Full {@link Solver#solve(int[])} runs with a fixed number of outer steps and a fixed seed, so each run
+ * does the same search. Timed as single shots since a run takes seconds.
+ * <p>
+ * Run using: mvn -pl territorium.benchmarks -am package, then
+ * java -jar territorium.benchmarks/target/benchmarks.jar SolverBenchmark -rf json
+ * @author Phil
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Thread)
+public class SolverBenchmark {
+	@Param({ "1000", "5000" })
+	public int nbCustomers;
+
+	@Param({ "10", "100" })
+	public int nbClusters;
+
+	@Param({ "20" })
+	public int nbOuterSteps;
+
+	private Problem problem;
+
+	@Setup
+	public void setup() {
+		problem = BenchmarkProblems.build(nbCustomers, nbClusters);
+	}
+
+	@Benchmark
+	public ImmutableSolution solve() {
+		SolverConfig config = new SolverConfig();
+		config.setNbOuterSteps(nbOuterSteps);
+		return new Solver(problem, config, null, new Random(BenchmarkProblems.SEED)).solve(null);
+	}
+}
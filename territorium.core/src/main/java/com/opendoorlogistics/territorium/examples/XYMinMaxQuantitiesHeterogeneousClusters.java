@@ -24,9 +24,9 @@ import com.opendoorlogistics.territorium.optimiser.solver.ContinueCallback;
 import com.opendoorlogistics.territorium.optimiser.solver.Solver;
 import com.opendoorlogistics.territorium.optimiser.solver.SolverConfig;
 import com.opendoorlogistics.territorium.optimiser.solver.SolverStateSummary;
-import com.opendoorlogistics.territorium.problem.ArrayBasedTravelMatrix;
 import com.opendoorlogistics.territorium.problem.Cluster;
 import com.opendoorlogistics.territorium.problem.Customer;
+import com.opendoorlogistics.territorium.problem.FlatArrayTravelMatrix;
 import com.opendoorlogistics.territorium.problem.Problem;
 import com.opendoorlogistics.territorium.problem.location.XYLocation;
 import com.opendoorlogistics.territorium.utils.SVGWriter;
@@ -128,7 +128,7 @@ public class XYMinMaxQuantitiesHeterogeneousClusters {
 		}
 
 		// create matrix
-		ArrayBasedTravelMatrix matrix =ArrayBasedTravelMatrix.buildForXYProblem(problem, 1);
+		FlatArrayTravelMatrix matrix =FlatArrayTravelMatrix.buildForXYProblem(problem, 1);
 		problem.setTravelMatrix(matrix);
 		
 		return problem;
@@ -15,12 +15,382 @@
  *******************************************************************************/
 package com.opendoorlogistics.territorium.optimiser;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.opendoorlogistics.territorium.optimiser.data.Cost;
+import com.opendoorlogistics.territorium.optimiser.data.ImmutableSolution;
+import com.opendoorlogistics.territorium.optimiser.solver.ContinueCallback;
+import com.opendoorlogistics.territorium.optimiser.solver.ContinueCallback.ContinueOption;
+import com.opendoorlogistics.territorium.optimiser.solver.Solver;
+import com.opendoorlogistics.territorium.optimiser.solver.SolverConfig;
+import com.opendoorlogistics.territorium.problem.Cluster;
+import com.opendoorlogistics.territorium.problem.EuclideanTravelMatrix;
+import com.opendoorlogistics.territorium.problem.HaversineTravelMatrix;
+import com.opendoorlogistics.territorium.problem.MappedFileTravelMatrix;
+import com.opendoorlogistics.territorium.problem.Problem;
+import com.opendoorlogistics.territorium.problem.ProblemReader;
+import com.opendoorlogistics.territorium.problem.TravelMatrix;
+import com.opendoorlogistics.territorium.problem.location.LatLongLocation;
+import com.opendoorlogistics.territorium.problem.location.Location;
+import com.opendoorlogistics.territorium.problem.location.XYLocation;
+
+/**
+ * Command line entry point for running the solver in batch jobs. Reads a problem in JSON or CSV
+ * (see {@link ProblemReader}) and the travel matrix from a binary file (see
+ * {@link com.opendoorlogistics.territorium.problem.TravelMatrixFileWriter}), solves, then writes the
+ * assignment and per-cluster costs as JSON. Status and timing lines go to stderr.
+ * @author Phil
+ *
+ */
 public class Main {
+	private static final long STATUS_INTERVAL_MILLIS = 5000;
+
+	private static final String USAGE = String.join(System.lineSeparator(),
+			"Usage: java " + Main.class.getName() + " [options]",
+			"  --problem FILE         Problem JSON, or customers CSV if the file ends with .csv. Reads stdin if omitted or -",
+			"  --format json|csv      Problem format, if it can't be told from the file name",
+			"  --clusters FILE        Clusters CSV, replacing any clusters in the problem",
+			"  --nb-clusters N        Create N identical clusters instead of reading them",
+			"  --min-quantity Q       Minimum quantity for clusters created with --nb-clusters (default 0)",
+			"  --max-quantity Q       Maximum quantity for clusters created with --nb-clusters (default unlimited)",
+			"  --matrix FILE          Binary travel matrix file. If omitted all locations must have x and y,",
+			"                         or all latitude and longitude (great-circle metres)",
+			"  --verify-matrix        Check the travel matrix file checksum before solving",
+			"  --steps N              Maximum number of outer steps (default " + SolverConfig.DEFAULT_NB_OUTER_STEPS
+					+ ", unlimited if only --time is given)",
+			"  --time SECONDS         Maximum solve time",
+			"  --threads N            Number of parallel search islands (default 1)",
+			"  --seed N               Random seed",
+			"  --output FILE          Write the result JSON to the file instead of stdout",
+			"  --help                 Show this message");
+
+	private static class Options {
+		String problem;
+		String format;
+		String clusters;
+		int nbClusters;
+		double minQuantity = 0;
+		double maxQuantity = Double.MAX_VALUE;
+		String matrix;
+		boolean verifyMatrix;
+		Integer steps;
+		Double timeSeconds;
+		int threads = 1;
+		Long seed;
+		String output;
+		boolean help;
+
+		static Options parse(String[] args) {
+			Options ret = new Options();
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				switch (arg) {
+				case "--help":
+				case "-h":
+					ret.help = true;
+					break;
+				case "--verify-matrix":
+					ret.verifyMatrix = true;
+					break;
+				default:
+					if (i + 1 >= args.length) {
+						throw new IllegalArgumentException("Unknown option or missing value: " + arg);
+					}
+					String value = args[++i];
+					switch (arg) {
+					case "--problem":
+						ret.problem = value;
+						break;
+					case "--format":
+						ret.format = value.toLowerCase(Locale.ROOT);
+						if (!ret.format.equals("json") && !ret.format.equals("csv")) {
+							throw new IllegalArgumentException("Format must be json or csv");
+						}
+						break;
+					case "--clusters":
+						ret.clusters = value;
+						break;
+					case "--nb-clusters":
+						ret.nbClusters = parseInt(arg, value, 1);
+						break;
+					case "--min-quantity":
+						ret.minQuantity = parseDouble(arg, value);
+						break;
+					case "--max-quantity":
+						ret.maxQuantity = parseDouble(arg, value);
+						break;
+					case "--matrix":
+						ret.matrix = value;
+						break;
+					case "--steps":
+						ret.steps = parseInt(arg, value, 0);
+						break;
+					case "--time":
+						ret.timeSeconds = parseDouble(arg, value);
+						break;
+					case "--threads":
+						ret.threads = parseInt(arg, value, 1);
+						break;
+					case "--seed":
+						try {
+							ret.seed = Long.parseLong(value);
+						} catch (NumberFormatException e) {
+							throw new IllegalArgumentException("Invalid value for " + arg + ": " + value);
+						}
+						break;
+					case "--output":
+						ret.output = value;
+						break;
+					default:
+						throw new IllegalArgumentException("Unknown option: " + arg);
+					}
+				}
+			}
+			return ret;
+		}
+
+		private static int parseInt(String arg, String value, int min) {
+			try {
+				int ret = Integer.parseInt(value);
+				if (ret >= min) {
+					return ret;
+				}
+			} catch (NumberFormatException e) {
+			}
+			throw new IllegalArgumentException("Invalid value for " + arg + ": " + value);
+		}
+
+		private static double parseDouble(String arg, String value) {
+			try {
+				return Double.parseDouble(value);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid value for " + arg + ": " + value);
+			}
+		}
+	}
 
 	public static void main(String[] args) {
-		// create some artificial data....
-		
-		// run a bit....
+		System.exit(run(args, System.in, System.out, System.err));
+	}
+
+	/**
+	 * Run the command line
+	 * @param args
+	 * @param stdin
+	 * @param stdout
+	 * @param stderr
+	 * @return Exit code; 0 for success, 1 for an error and 2 for invalid arguments
+	 */
+	public static int run(String[] args, InputStream stdin, PrintStream stdout, PrintStream stderr) {
+		Options options;
+		try {
+			options = Options.parse(args);
+		} catch (IllegalArgumentException e) {
+			stderr.println(e.getMessage());
+			stderr.println(USAGE);
+			return 2;
+		}
+
+		if (options.help) {
+			stdout.println(USAGE);
+			return 0;
+		}
+
+		try {
+			run(options, stdin, stdout, stderr);
+			return 0;
+		} catch (IOException | RuntimeException e) {
+			stderr.println("Error: " + e.getMessage());
+			return 1;
+		}
+	}
+
+	private static void run(Options options, InputStream stdin, PrintStream stdout, PrintStream stderr) throws IOException {
+		long start = System.currentTimeMillis();
+		Problem problem = readProblem(options, stdin);
+		stderr.println("Read " + problem.getCustomers().size() + " customers and " + problem.getClusters().size()
+				+ " clusters in " + (System.currentTimeMillis() - start) + " ms");
+
+		MappedFileTravelMatrix mapped = null;
+		try {
+			start = System.currentTimeMillis();
+			if (options.matrix != null) {
+				mapped = MappedFileTravelMatrix.open(new File(options.matrix), options.verifyMatrix);
+				checkLocationIndices(problem, mapped.getNbLocations());
+				problem.setTravelMatrix(mapped);
+				stderr.println("Opened travel matrix with " + mapped.getNbLocations() + " locations in "
+						+ (System.currentTimeMillis() - start) + " ms");
+			} else {
+				problem.setTravelMatrix(buildAnalyticMatrix(problem));
+				stderr.println("Built analytic travel matrix in " + (System.currentTimeMillis() - start) + " ms");
+			}
+
+			SolverConfig config = new SolverConfig();
+			if (options.steps != null) {
+				config.setNbOuterSteps(options.steps);
+			} else if (options.timeSeconds != null) {
+				config.setNbOuterSteps(Integer.MAX_VALUE);
+			}
+			config.setNbIslands(options.threads);
+			long seed = options.seed != null ? options.seed : config.getRandomSeed();
+
+			long solveStart = System.currentTimeMillis();
+			long[] lastStatus = new long[] { solveStart };
+			ContinueCallback callback = state -> {
+				long now = System.currentTimeMillis();
+				if (now - lastStatus[0] >= STATUS_INTERVAL_MILLIS) {
+					lastStatus[0] = now;
+					ImmutableSolution best = state.getBestSolution();
+					stderr.println(String.format(Locale.ROOT, "%.1f s, step %d, best %s", 0.001 * (now - solveStart),
+							state.getNbOuterSteps(), best != null ? best.getCost().toSingleLineSummary() : "none yet"));
+				}
+				if (options.timeSeconds != null && now - solveStart > 1000 * options.timeSeconds) {
+					return ContinueOption.FINISH_NOW;
+				}
+				return ContinueOption.KEEP_GOING;
+			};
+
+			ImmutableSolution solution = new Solver(problem, config, callback, new Random(seed)).solve(null);
+			double seconds = 0.001 * (System.currentTimeMillis() - solveStart);
+			stderr.println(String.format(Locale.ROOT, "Finished in %.1f s, cost %s", seconds,
+					solution.getCost().toSingleLineSummary()));
+
+			writeResult(solution, seconds, options.output, stdout);
+		} finally {
+			if (mapped != null) {
+				mapped.close();
+			}
+		}
+	}
+
+	private static Problem readProblem(Options options, InputStream stdin) throws IOException {
+		boolean fromStdin = options.problem == null || options.problem.equals("-");
+		boolean csv = options.format != null ? options.format.equals("csv")
+				: !fromStdin && options.problem.toLowerCase(Locale.ROOT).endsWith(".csv");
+
+		Problem problem;
+		try (Reader reader = new InputStreamReader(fromStdin ? stdin : new FileInputStream(options.problem),
+				StandardCharsets.UTF_8)) {
+			if (csv) {
+				problem = new Problem();
+				problem.setCustomers(ProblemReader.readCustomersCsv(reader));
+			} else {
+				problem = ProblemReader.readJson(reader);
+			}
+		}
+
+		if (options.clusters != null) {
+			try (Reader reader = new InputStreamReader(new FileInputStream(options.clusters), StandardCharsets.UTF_8)) {
+				problem.setClusters(ProblemReader.readClustersCsv(reader));
+			}
+		} else if (options.nbClusters > 0) {
+			List<Cluster> clusters = problem.getClusters();
+			clusters.clear();
+			for (int i = 0; i < options.nbClusters; i++) {
+				Cluster cluster = new Cluster();
+				cluster.setUserIndex(i + 1);
+				cluster.setMinQuantity(options.minQuantity);
+				cluster.setMaxQuantity(options.maxQuantity);
+				clusters.add(cluster);
+			}
+		}
+
+		if (problem.getClusters().size() == 0) {
+			throw new IllegalArgumentException("The problem has no clusters, use --clusters or --nb-clusters");
+		}
+		return problem;
+	}
+
+	/**
+	 * Use straight-line distance if all locations have x and y, or great-circle distance in metres
+	 * if all have latitude and longitude. Time equals distance.
+	 * @param problem
+	 * @return
+	 */
+	private static TravelMatrix buildAnalyticMatrix(Problem problem) {
+		boolean allXY = true;
+		boolean allLatLong = true;
+		for (Location location : Problem.getAllLocations(problem)) {
+			allXY &= location instanceof XYLocation;
+			allLatLong &= location instanceof LatLongLocation;
+		}
+		if (allXY) {
+			return EuclideanTravelMatrix.buildForXYProblem(problem, 1);
+		}
+		if (allLatLong) {
+			return HaversineTravelMatrix.buildForLatLongProblem(problem, 1);
+		}
+		throw new IllegalArgumentException(
+				"A travel matrix file is needed unless all locations have x and y, or all have latitude and longitude");
+	}
+
+	private static void checkLocationIndices(Problem problem, int nbLocations) {
+		for (Location location : Problem.getAllLocations(problem)) {
+			if (location == null || location.getIndex() < 0 || location.getIndex() >= nbLocations) {
+				throw new IllegalArgumentException("Location index " + (location != null ? location.getIndex() : null)
+						+ " is not in the travel matrix, which has " + nbLocations + " locations");
+			}
+		}
+	}
+
+	private static void writeResult(ImmutableSolution solution, double seconds, String output, PrintStream stdout)
+			throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		ObjectNode root = mapper.createObjectNode();
+		root.put("cost", solution.getCost().getCost());
+		root.put("quantityViolation", solution.getCost().getQuantityViolation());
+		root.put("seconds", seconds);
+
+		ArrayNode assignment = root.putArray("assignment");
+		for (int clusterIndx : solution.getCustomersToClusters()) {
+			assignment.add(clusterIndx);
+		}
+
+		ArrayNode clusters = root.putArray("clusters");
+		Problem problem = solution.getProblem();
+		for (int i = 0; i < problem.getClusters().size(); i++) {
+			ObjectNode cluster = clusters.addObject();
+			Cost cost = solution.getClusterCost(i);
+			Location centre = solution.getClusterCentre(i);
+			cluster.put("index", i);
+			cluster.put("userIndex", problem.getClusters().get(i).getUserIndex());
+			cluster.put("nbCustomers", solution.getNbCustomers(i));
+			cluster.put("quantity", solution.getClusterQuantity(i));
+			cluster.put("cost", cost.getCost());
+			cluster.put("quantityViolation", cost.getQuantityViolation());
+			if (centre != null) {
+				cluster.put("centreLocationIndex", centre.getIndex());
+			} else {
+				cluster.putNull("centreLocationIndex");
+			}
+		}
+
+		String json = mapper.writeValueAsString(root);
+		if (output != null) {
+			try (Writer writer = new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8)) {
+				writer.write(json);
+				writer.write(System.lineSeparator());
+			}
+		} else {
+			stdout.println(json);
+			stdout.flush();
+		}
 	}
 
 }
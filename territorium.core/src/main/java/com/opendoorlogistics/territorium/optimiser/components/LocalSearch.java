@@ -15,21 +15,20 @@
  *******************************************************************************/
 package com.opendoorlogistics.territorium.optimiser.components;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Comparator;
-import java.util.List;
 import java.util.Random;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.opendoorlogistics.territorium.optimiser.data.ClusterAdjacencyGraph;
+import com.opendoorlogistics.territorium.optimiser.data.DontLookBits;
 import com.opendoorlogistics.territorium.optimiser.data.Cost;
 import com.opendoorlogistics.territorium.optimiser.data.Customer2CustomerClosestNgbMatrix;
 import com.opendoorlogistics.territorium.optimiser.data.MutableSolution;
-import com.opendoorlogistics.territorium.optimiser.utils.SolutionImprovementChecker;
-import com.opendoorlogistics.territorium.problem.Customer;
+import com.opendoorlogistics.territorium.optimiser.utils.BoundedMaxHeap;
 import com.opendoorlogistics.territorium.problem.ObjectWithJSONToString;
 import com.opendoorlogistics.territorium.problem.Problem;
+import com.opendoorlogistics.territorium.problem.location.Location;
 import com.opendoorlogistics.territorium.utils.NumberUtils;
 
 import gnu.trove.list.array.TIntArrayList;
@@ -42,6 +41,20 @@ public class LocalSearch {
 //	private final LocalSearchContinueCallback cont;
 //	private final Comparator<Cost> comparator = Cost.createApproxEqualComparator();
 	private final Customer2CustomerClosestNgbMatrix closestNeighboursMatrix;
+
+	// Working storage reused between calls so steady-state search doesn't allocate. Lists used
+	// inside each other's loops are kept separate, so none is refilled while still being iterated.
+	private final Cost stepStartCost = new Cost();
+	private final Cost workingCost1 = new Cost();
+	private final Cost workingCost2 = new Cost();
+	private final TIntArrayList customerOrder = new TIntArrayList();
+	private final TIntArrayList clusterOrder = new TIntArrayList();
+	private final TIntArrayList customersi = new TIntArrayList();
+	private final TIntArrayList customersj = new TIntArrayList();
+	private final BoundedMaxHeap closestCentresHeap = new BoundedMaxHeap(0);
+	private int[] closestCentres = new int[0];
+	private TIntArrayList[] nearestLists = new TIntArrayList[0];
+	private boolean[] clusterTried = new boolean[0];
 	
 	public LocalSearch(Problem problem, LocalSearchConfig config, Customer2CustomerClosestNgbMatrix closestNeighboursMatrix, Random random) {
 		this.problem = problem;
@@ -67,6 +80,10 @@ public class LocalSearch {
 		private boolean customerNearestNeighbourSwaps=true;
 		private boolean estimatedSwapCosts=true;
 		private int interchangeNNearest = 5;
+		private int clusterAdjacencyNbNearest = 10;
+		private int recreateRegretK = 0;
+		private boolean dontLookBits = true;
+		private boolean boundaryCandidatesOnly = false;
 
 		
 		@JsonIgnore
@@ -128,6 +145,19 @@ public class LocalSearch {
 			this.interchangeNNearest = interchangeNNearest;
 		}
 
+		public int getClusterAdjacencyNbNearest() {
+			return clusterAdjacencyNbNearest;
+		}
+
+		/**
+		 * Two clusters are considered adjacent when a customer in one has a customer in the other
+		 * amongst this many of its nearest neighbours
+		 * @param clusterAdjacencyNbNearest
+		 */
+		public void setClusterAdjacencyNbNearest(int clusterAdjacencyNbNearest) {
+			this.clusterAdjacencyNbNearest = clusterAdjacencyNbNearest;
+		}
+
 		public boolean isEstimatedSwapCosts() {
 			return estimatedSwapCosts;
 		}
@@ -136,6 +166,45 @@ public class LocalSearch {
 			this.estimatedSwapCosts = estimatedSwapCosts;
 		}
 
+		public boolean isDontLookBits() {
+			return dontLookBits;
+		}
+
+		/**
+		 * If true, customers and cluster pairs which were examined without finding a move are skipped
+		 * until one of the clusters they could move between changes (see {@link DontLookBits})
+		 * @param dontLookBits
+		 */
+		public void setDontLookBits(boolean dontLookBits) {
+			this.dontLookBits = dontLookBits;
+		}
+
+		public boolean isBoundaryCandidatesOnly() {
+			return boundaryCandidatesOnly;
+		}
+
+		/**
+		 * If true, intercluster moves and swaps between two adjacent clusters only try the customers
+		 * which have one of their nearest neighbours in the other cluster (see {@link ClusterAdjacencyGraph})
+		 * @param boundaryCandidatesOnly
+		 */
+		public void setBoundaryCandidatesOnly(boolean boundaryCandidatesOnly) {
+			this.boundaryCandidatesOnly = boundaryCandidatesOnly;
+		}
+
+		public int getRecreateRegretK() {
+			return recreateRegretK;
+		}
+
+		/**
+		 * If 2 or more, unassigned customers are assigned using regret-k insertion (see {@link RegretInsertion}).
+		 * Otherwise they're assigned in random order, each to its best cluster.
+		 * @param recreateRegretK
+		 */
+		public void setRecreateRegretK(int recreateRegretK) {
+			this.recreateRegretK = recreateRegretK;
+		}
+
 		
 	}
 
@@ -167,10 +236,9 @@ public class LocalSearch {
 			return;
 		}
 		
-		Cost originalCost = new Cost();
-		Cost newCost = new Cost();
-		TIntArrayList customersi = new TIntArrayList();
-		solution.getCustomers(clusteri, customersi);
+		Cost originalCost = workingCost1;
+		Cost newCost = workingCost2;
+		getCandidateCustomers(clusteri, clusterj, solution, customersi);
 		int n = customersi.size();
 		customersi.shuffle(random);
 
@@ -185,6 +253,47 @@ public class LocalSearch {
 		}
 	}
 	
+	/**
+	 * Get the customers in the cluster to try moving to (or swapping with) the other cluster.
+	 * If restricting to the boundary and the clusters are adjacent, this is only the customers with
+	 * a nearest neighbour in the other cluster, otherwise it's all of them.
+	 * @param cluster
+	 * @param otherCluster
+	 * @param solution
+	 * @param out
+	 */
+	private void getCandidateCustomers(int cluster, int otherCluster, MutableSolution solution, TIntArrayList out) {
+		solution.getCustomers(cluster, out);
+		ClusterAdjacencyGraph adjacency = solution.getClusterAdjacency();
+		if (!config.isBoundaryCandidatesOnly() || adjacency == null || adjacency.getNbLinks(cluster, otherCluster) == 0) {
+			return;
+		}
+
+		int n = out.size();
+		int nbKept = 0;
+		for (int i = 0; i < n; i++) {
+			int customer = out.getQuick(i);
+			if (adjacency.hasNeighbourInCluster(customer, otherCluster, solution)) {
+				out.setQuick(nbKept++, customer);
+			}
+		}
+		out.remove(nbKept, n - nbKept);
+	}
+
+	/**
+	 * Fill the list with 0 to n-1 in a random order. This uses the same shuffle as
+	 * {@link NumberUtils#getRandomOrder0ToNArray(Random, int)} so gives the same order
+	 * @param n
+	 * @param out
+	 */
+	private void getRandomOrder(int n, TIntArrayList out) {
+		out.resetQuick();
+		for (int i = 0; i < n; i++) {
+			out.add(i);
+		}
+		out.shuffle(random);
+	}
+
 	private boolean acceptMove(Comparator<Cost> comparator,Cost oldCost, Cost newCost){
 		int diff = comparator.compare(oldCost, newCost);
 		if(diff>0){
@@ -207,17 +316,27 @@ public class LocalSearch {
 	}
 
 	public void assignUnassignedCustomers(Comparator<Cost> comparator,MutableSolution sol) {
+		if (config.getRecreateRegretK() >= 2) {
+			new RegretInsertion(random, config.getRecreateRegretK()).assignUnassignedCustomers(comparator, sol);
+			return;
+		}
+
 		int p = problem.getClusters().size();
-		Cost best= new Cost();
-		Cost newCost= new Cost();
-		for(int customerIndx: NumberUtils.getRandomOrder0ToNArray(random, problem.getCustomers().size()-1)){
+		Cost best= workingCost1;
+		Cost newCost= workingCost2;
+		getRandomOrder(problem.getCustomers().size(), customerOrder);
+		int n = customerOrder.size();
+		for(int i =0 ; i<n ; i++){
+			int customerIndx = customerOrder.getQuick(i);
 			if(sol.getClusterIndex(customerIndx)!=-1){
 				// already loaded
 				continue;
 			}
 			best.setMax();
 			int bestIndex=-1;
-			for(int clusterIndx : NumberUtils.getRandomOrder0ToNArray(random, p-1)){
+			getRandomOrder(p, clusterOrder);
+			for(int j =0 ; j<p ; j++){
+				int clusterIndx = clusterOrder.getQuick(j);
 				sol.evaluateSet(customerIndx, clusterIndx, newCost);
 				if(comparator.compare(newCost, best)<0){
 					bestIndex = clusterIndx;
@@ -248,13 +367,22 @@ public class LocalSearch {
 			return;
 		}
 		
-		Cost newCost = new Cost();
+		Cost newCost = workingCost1;
 		
 		long lastCallbackTime=System.currentTimeMillis();
-		boolean [] clusterTried = new boolean[problem.getClusters().size()];
+		boolean [] clusterTried = getClusterTried();
+		DontLookBits dontLook = getDontLookBits(comparator, solution);
 		int nbDone=0;
-		for(int customerIndx: NumberUtils.getRandomOrder0ToNArray(random, problem.getCustomers().size()-1)){
+		getRandomOrder(problem.getCustomers().size(), customerOrder);
+		int nbCustomers = customerOrder.size();
+		for(int i =0 ; i<nbCustomers ; i++){
+			int customerIndx = customerOrder.getQuick(i);
 			int nbNearest = closestNeighboursMatrix.getNbClosestNeighbours(customerIndx);
+			if (dontLook != null && isCustomerUnchanged(customerIndx, dontLook.getCustomerCleanMoveNb(customerIndx), clusterTried, solution)) {
+				nbDone++;
+				continue;
+			}
+			long nbMovesBefore = solution.getNbMoves();
 			
 			// init found clusters boolean
 			Arrays.fill(clusterTried, false);
@@ -281,6 +409,9 @@ public class LocalSearch {
 				}
 			}
 			
+			if (dontLook != null && solution.getNbMoves() == nbMovesBefore) {
+				dontLook.setCustomerCleanMoveNb(customerIndx, nbMovesBefore);
+			}
 			nbDone++;
 			
 			// do callback if its been over a second
@@ -293,6 +424,74 @@ public class LocalSearch {
 		}
 	}
 
+	private boolean[] getClusterTried() {
+		int p = problem.getClusters().size();
+		if (clusterTried.length != p) {
+			clusterTried = new boolean[p];
+		}
+		return clusterTried;
+	}
+
+	/**
+	 * Check if none of the clusters the customer could move between (its own and those tried from
+	 * its nearest neighbours) have changed since it was last examined without a move
+	 * @param customerIndx
+	 * @param cleanMoveNb
+	 * @param clusterTried Working array
+	 * @param solution
+	 * @return
+	 */
+	private boolean isCustomerUnchanged(int customerIndx, long cleanMoveNb, boolean[] clusterTried, MutableSolution solution) {
+		if (cleanMoveNb < 0) {
+			return false;
+		}
+
+		Arrays.fill(clusterTried, false);
+		int clusterIndx = solution.getClusterIndex(customerIndx);
+		if (clusterIndx >= 0) {
+			if (solution.getClusterLastMoveNb(clusterIndx) > cleanMoveNb) {
+				return false;
+			}
+			clusterTried[clusterIndx] = true;
+		}
+
+		int nbNearest = closestNeighboursMatrix.getNbClosestNeighbours(customerIndx);
+		int nbClustersTried = 0;
+		for (int iNear = 0; iNear < nbNearest; iNear++) {
+			int otherClusterIndx = closestNeighboursMatrix.getClusterIndexOfClosestNeighbour(solution, customerIndx, iNear);
+			if (otherClusterIndx >= 0 && !clusterTried[otherClusterIndx]) {
+				if (solution.getClusterLastMoveNb(otherClusterIndx) > cleanMoveNb) {
+					return false;
+				}
+				clusterTried[otherClusterIndx] = true;
+				nbClustersTried++;
+			}
+			if (nbClustersTried > config.getInterchangeNNearest()) {
+				break;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get the solution's don't-look bits, attaching new ones if needed
+	 * @param comparator
+	 * @param solution
+	 * @return The bits or null if they're turned off
+	 */
+	private DontLookBits getDontLookBits(Comparator<Cost> comparator, MutableSolution solution) {
+		if (!config.isDontLookBits()) {
+			return null;
+		}
+		DontLookBits ret = solution.getDontLookBits();
+		if (ret == null) {
+			ret = new DontLookBits(problem.getCustomers().size(), problem.getClusters().size());
+			solution.setDontLookBits(ret);
+		}
+		ret.checkContext(comparator, config);
+		return ret;
+	}
+
 	/**
 	 * Run a single step on the input solution and return true if we improved
 	 * @param step
@@ -300,7 +499,10 @@ public class LocalSearch {
 	 * @return
 	 */
 	public boolean runSingleStep(int step, Comparator<Cost> comparator,MutableSolution solution) {
-		SolutionImprovementChecker checker = new SolutionImprovementChecker(solution);
+		// record the starting cost instead of copying the solution like SolutionImprovementChecker.
+		// Once updated the solution's cost is identical to that of a copy, which is recalculated from scratch
+		solution.update();
+		stepStartCost.set(solution.getCost());
 
 		if(random.nextBoolean()){
 			nearestClusterSearch(step,comparator, solution);
@@ -314,7 +516,11 @@ public class LocalSearch {
 		solution.update();
 		
 		// see if we've improved by more than the round-off limit
-		return checker.isImproved(solution);
+		Cost newCost = solution.getCost();
+		if (!Cost.isApproxEqual(stepStartCost, newCost)) {
+			return newCost.compareTo(stepStartCost) < 0;
+		}
+		return false;
 	}
 
 	public static interface ContinueLocalSearchCallback{
@@ -326,77 +532,40 @@ public class LocalSearch {
 			return;
 		}
 		
-		// calculate a cluster to cluster distance matrix using the minimum distance 
-		// from any point in cluster A to any point in cluster B
+		// get the most linked clusters for each cluster from the adjacency graph, which is maintained
+		// incrementally by the solution, instead of comparing all customer pairs
 		int p = problem.getClusters().size();
-		final double[][] matrix = new double[p][p];
-		for (int i = 0; i < p; i++) {
-			matrix[i] = new double[p];
-			Arrays.fill(matrix[i], Double.POSITIVE_INFINITY);
-		}
-
-		List<? extends Customer> customers = problem.getCustomers();
-		int nCustomers = customers.size();
-		for (int i = 0; i < nCustomers; i++) {
-			int cluster4CustomerI = solution.getClusterIndex(i);
-			if (cluster4CustomerI != -1) {
-				Customer coi = customers.get(i);
-				for (int j = 0; j < nCustomers; j++) {
-					int cluster4CustomerJ = solution.getClusterIndex(j);
-					if (cluster4CustomerJ != -1) {
-						Customer coj = customers.get(j);
-						double distance = problem.getTravelCost(-1,coi.getLocation(), coj);
-						distance += problem.getTravelCost(-1,coj.getLocation(), coi);
-						matrix[cluster4CustomerI][cluster4CustomerJ] = Math.min(matrix[cluster4CustomerI][cluster4CustomerJ], distance);
-					}
-				}
+		ClusterAdjacencyGraph adjacency = getClusterAdjacency(solution);
+		int nNearest = config.getInterchangeNNearest();
+		if (nearestLists.length != p) {
+			nearestLists = new TIntArrayList[p];
+			for (int i = 0; i < p; i++) {
+				nearestLists[i] = new TIntArrayList(nNearest);
 			}
 		}
-
-		// get a sorted list of nearest clusters for each cluster
-		ArrayList<ArrayList<Integer>> nearestLists = new ArrayList<>();
 		for (int i = 0; i < p; i++) {
-			ArrayList<Integer> nearest = new ArrayList<>();
-			nearestLists.add(nearest);
-			for (int j = 0; j < p; j++) {
-				if (i != j) {
-					nearest.add(j);
-				}
-			}
-
-			final int from = i;
-			Collections.sort(nearest, new Comparator<Integer>() {
-
-				@Override
-				public int compare(Integer o1, Integer o2) {
-					double d1 = matrix[from][o1];
-					double d2 = matrix[from][o2];
-					return Double.compare(d1, d2);
-				}
-			});
-
-			while (nearest.size() > config.getInterchangeNNearest()) {
-				nearest.remove(nearest.size() - 1);
+			TIntArrayList nearest = nearestLists[i];
+			adjacency.getMostLinkedClusters(i, nNearest, nearest);
+			if (nearest.size() < Math.min(nNearest, p - 1)) {
+				addClosestCentres(i, solution, nNearest, nearest);
 			}
 		}
 
 		// get a randomly ordered list of cluster indices
-		TIntArrayList list = new TIntArrayList(p);
-		for (int i = 0; i < p; i++) {
-			list.add(i);
-		}
-		list.shuffle(random);
+		TIntArrayList list = clusterOrder;
+		getRandomOrder(p, list);
 
 
 		// loop over each cluster taking first improving moves
+		DontLookBits dontLook = getDontLookBits(comparator, solution);
 		long lastCallbackTime = System.currentTimeMillis();
 		for (int i = 0; i < p; i++) {
 			int cli = list.get(i);
 
 
 			// shuffle its nearest clusters
-			List<Integer> nearest = nearestLists.get(cli);
-			Collections.shuffle(nearest, random);
+			TIntArrayList nearest = nearestLists[cli];
+			shuffle(nearest, random);
 
 			for (int j = 0; j < nearest.size(); j++) {
 				int clj = nearest.get(j);
@@ -404,6 +573,15 @@ public class LocalSearch {
 					throw new RuntimeException();
 				}
 
+				long nbMovesBefore = solution.getNbMoves();
+				if (dontLook != null) {
+					long cleanMoveNb = dontLook.getPairCleanMoveNb(cli, clj);
+					if (cleanMoveNb >= 0 && solution.getClusterLastMoveNb(cli) <= cleanMoveNb
+							&& solution.getClusterLastMoveNb(clj) <= cleanMoveNb) {
+						continue;
+					}
+				}
+
 				if (random.nextBoolean()) {
 
 					interclusterMoves(comparator,random,cli, clj, solution);
@@ -413,6 +591,10 @@ public class LocalSearch {
 					interclusterSwaps(comparator,random, cli, clj, solution);
 					interclusterMoves(comparator,random, cli, clj, solution);
 				}
+
+				if (dontLook != null && solution.getNbMoves() == nbMovesBefore) {
+					dontLook.setPairCleanMoveNb(cli, clj, nbMovesBefore);
+				}
 			}
 
 			// refresh solution after processing each cluster to help prevent round-off
@@ -428,22 +610,81 @@ public class LocalSearch {
 			
 		}
 	}
+
+	/**
+	 * Get the solution's cluster adjacency graph, attaching a new one if it doesn't have one built
+	 * from our nearest neighbours matrix
+	 * @param solution
+	 * @return
+	 */
+	private ClusterAdjacencyGraph getClusterAdjacency(MutableSolution solution) {
+		ClusterAdjacencyGraph ret = solution.getClusterAdjacency();
+		if (ret == null || ret.getNeighbourMatrix() != closestNeighboursMatrix
+				|| ret.getK() != config.getClusterAdjacencyNbNearest()) {
+			ret = new ClusterAdjacencyGraph(closestNeighboursMatrix, config.getClusterAdjacencyNbNearest(), solution);
+			solution.setClusterAdjacency(ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * Pad the list of nearby clusters with the clusters whose centres are closest,
+	 * for clusters without enough adjacent clusters. Empty clusters come last.
+	 * @param cluster
+	 * @param solution
+	 * @param nNearest
+	 * @param nearest
+	 */
+	private void addClosestCentres(int cluster, MutableSolution solution, int nNearest, TIntArrayList nearest) {
+		int p = problem.getClusters().size();
+		BoundedMaxHeap heap = closestCentresHeap;
+		heap.clear(Math.min(nNearest, p - 1) - nearest.size());
+		Location centre = solution.getClusterCentre(cluster);
+		for (int j = 0; j < p; j++) {
+			if (j != cluster && !nearest.contains(j)) {
+				double cost = Double.POSITIVE_INFINITY;
+				Location other = solution.getClusterCentre(j);
+				if (centre != null && other != null) {
+					cost = problem.getTravelMatrix().getDistance(centre.getIndex(), other.getIndex());
+				}
+				heap.offer(cost, j);
+			}
+		}
+		if (closestCentres.length < heap.size()) {
+			closestCentres = new int[heap.size()];
+		}
+		int n = heap.drainAscending(closestCentres);
+		nearest.add(closestCentres, 0, n);
+	}
+
+	/**
+	 * Unbiased Fisher-Yates shuffle (TIntArrayList.shuffle never leaves an element in place)
+	 * @param list
+	 * @param random
+	 */
+	private static void shuffle(TIntArrayList list, Random random) {
+		for (int i = list.size(); i > 1; i--) {
+			int j = random.nextInt(i);
+			int tmp = list.get(i - 1);
+			list.set(i - 1, list.get(j));
+			list.set(j, tmp);
+		}
+	}
+
 	private void interclusterSwaps(Comparator<Cost> comparator,Random random, int clusteri, int clusterj, MutableSolution solution) {
 		if(!config.isInterclusterSwaps()){
 			return;
 		}
 		
-		TIntArrayList customersi = new TIntArrayList();
-		solution.getCustomers(clusteri, customersi);
+		getCandidateCustomers(clusteri, clusterj, solution, customersi);
 		customersi.shuffle(random);
 
-		TIntArrayList customersj = new TIntArrayList();
-		solution.getCustomers(clusterj, customersj);
+		getCandidateCustomers(clusterj, clusteri, solution, customersj);
 		customersj.shuffle(random);
 
 		solution.update();
-		Cost cost = new Cost();
-		Cost bestSwap = new Cost();
+		Cost cost = workingCost1;
+		Cost bestSwap = workingCost2;
 
 		int ni = customersi.size();
 		int nj = customersj.size();
@@ -0,0 +1,450 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.optimiser.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.opendoorlogistics.territorium.problem.Problem;
+import com.opendoorlogistics.territorium.problem.Problem.QuantityViolationType;
+import com.opendoorlogistics.territorium.problem.ProblemIndex;
+import com.opendoorlogistics.territorium.problem.location.Location;
+
+import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+/**
+ * Assign customers to given cluster centres by solving the capacitated assignment as a min-cost flow.
+ * Each customer's quantity flows to its nearest few clusters (by travel cost) and each cluster passes
+ * flow to the sink up to its min quantity at a large bonus, then up to its max quantity for free, then
+ * at a large penalty, so quantity violation is minimised first and travel cost second, as in the solver.
+ * For {@link QuantityViolationType#LINEAR} the bonus and penalty are the same for every unit. For
+ * {@link QuantityViolationType#SQUARE} the violation is made piecewise linear between whole numbers
+ * of units, so the bonus for the j-th unit short of the min quantity and the penalty for the j-th unit
+ * over the max quantity are proportional to 2j - 1, and the squared violation is minimised.
+ * <p>
+ * The flow is found by successive shortest paths, routing each customer's quantity in turn. A customer
+ * node only connects clusters, so shortest paths are found on the clusters alone: the cost of moving flow
+ * from cluster a to cluster b is the cheapest change of cluster of any customer with flow on a, kept
+ * in a lazily-cleaned heap per cluster pair which has any. Each path then costs O(p * p) to find for p clusters,
+ * independent of the number of customers. The assignment is optimal for the candidate clusters when every
+ * customer has quantity 1 and cluster min and max quantities are whole numbers. Otherwise some customers
+ * can be split between clusters, and each is assigned to the cluster with most of its quantity.
+ * For squared violation the same holds when the fixed customers' quantities are whole numbers.
+ * @author Phil
+ *
+ */
+public class MinCostFlowCustomerAssignment {
+	private final Problem problem;
+	private final ProblemIndex problemIndex;
+	private final Config config;
+
+	public static class Config {
+		public static int DEFAULT_NB_CANDIDATE_CLUSTERS = 10;
+
+		private int nbCandidateClusters = DEFAULT_NB_CANDIDATE_CLUSTERS;
+
+		public int getNbCandidateClusters() {
+			return nbCandidateClusters;
+		}
+
+		/**
+		 * Each customer can only be assigned to this many of its nearest clusters
+		 * @param nbCandidateClusters
+		 */
+		public void setNbCandidateClusters(int nbCandidateClusters) {
+			this.nbCandidateClusters = nbCandidateClusters;
+		}
+	}
+
+	public MinCostFlowCustomerAssignment(Problem problem, Config config) {
+		this.problem = problem;
+		this.problemIndex = ProblemIndex.get(problem);
+		this.config = config;
+
+		if (config.getNbCandidateClusters() < 1) {
+			throw new IllegalArgumentException("Need at least 1 candidate cluster per customer");
+		}
+	}
+
+	/**
+	 * 
+	 * @param clusterLocations Centre for each cluster. Customers aren't assigned to clusters with null centres.
+	 * @param assignedClusterIndexByCustomer Customers already assigned (i.e. not -1) are left alone. Can be null.
+	 * @return Assigned cluster index for each customer, or -1 if all cluster centres are null
+	 */
+	public int[] run(Location[] clusterLocations, int[] assignedClusterIndexByCustomer) {
+		if (clusterLocations.length != problemIndex.getNbClusters()) {
+			throw new IllegalArgumentException();
+		}
+		return new Flow(clusterLocations, assignedClusterIndexByCustomer).run();
+	}
+
+	/**
+	 * Moving a customer's flow from one cluster to another
+	 */
+	private static class Hop implements Comparable<Hop> {
+		final int fromSlot;
+		final int toSlot;
+		final double unitCost;
+
+		Hop(int fromSlot, int toSlot, double unitCost) {
+			this.fromSlot = fromSlot;
+			this.toSlot = toSlot;
+			this.unitCost = unitCost;
+		}
+
+		@Override
+		public int compareTo(Hop o) {
+			return Double.compare(unitCost, o.unitCost);
+		}
+	}
+
+	/**
+	 * Working data for a single call. Customer i's candidate clusters are stored in slots i * k to i * k + k - 1.
+	 */
+	private class Flow {
+		final Location[] clusterLocations;
+		final int[] fixedAssignment;
+		final int n;
+		final int p;
+		final int k;
+		final int[] nbCandidates;
+		final int[] candidateCluster;
+		final double[] cost;
+		final double[] flow;
+		final double eps;
+
+		/** Quantity sent to the sink by each cluster, which only ever increases */
+		final double[] load;
+		final boolean square;
+		final double[] pot;
+		double potSink;
+		final double bigM;
+
+		/** For each cluster a, the heap of hops to each cluster b it has hops to, keyed by b */
+		final List<TIntObjectHashMap<PriorityQueue<Hop>>> hopsFrom;
+
+		// Dijkstra working storage
+		final double[] dist;
+		final boolean[] settled;
+		final int[] predCluster;
+		final Hop[] predHop;
+		final int[] predSourceSlot;
+		final TIntArrayList settledList = new TIntArrayList();
+		double distSink;
+
+		Flow(Location[] clusterLocations, int[] fixedAssignment) {
+			this.clusterLocations = clusterLocations;
+			this.fixedAssignment = fixedAssignment;
+			n = problemIndex.getNbCustomers();
+			p = problemIndex.getNbClusters();
+			int nbLocated = 0;
+			for (Location location : clusterLocations) {
+				if (location != null) {
+					nbLocated++;
+				}
+			}
+			k = Math.max(1, Math.min(config.getNbCandidateClusters(), nbLocated));
+			nbCandidates = new int[n];
+			candidateCluster = new int[n * k];
+			cost = new double[n * k];
+			flow = new double[n * k];
+			load = new double[p];
+			square = problemIndex.getQuantityViolationType() == QuantityViolationType.SQUARE;
+			pot = new double[p];
+			hopsFrom = new ArrayList<>(p);
+			for (int c = 0; c < p; c++) {
+				hopsFrom.add(new TIntObjectHashMap<>());
+			}
+			dist = new double[p];
+			settled = new boolean[p];
+			predCluster = new int[p];
+			predHop = new Hop[p];
+			predSourceSlot = new int[p];
+
+			double maxQuantity = 0;
+			double sumMaxUnitCost = 0;
+			double[] costs = new double[p];
+			for (int i = 0; i < n; i++) {
+				maxQuantity = Math.max(maxQuantity, problemIndex.getQuantity(i));
+				if (isFixed(i)) {
+					continue;
+				}
+				for (int c = 0; c < p; c++) {
+					costs[c] = clusterLocations[c] != null ? problem.getTravelCost(c, clusterLocations[c], i)
+							: Double.POSITIVE_INFINITY;
+				}
+				selectCandidates(i, costs);
+				if (problemIndex.getQuantity(i) > 0 && nbCandidates[i] > 0) {
+					sumMaxUnitCost += cost[i * k + nbCandidates[i] - 1] / problemIndex.getQuantity(i);
+				}
+			}
+			eps = 1E-9 * Math.max(1, maxQuantity);
+
+			// the violation penalty must outweigh the travel cost of any path
+			bigM = 1 + 2 * sumMaxUnitCost;
+		}
+
+		boolean isFixed(int customer) {
+			return fixedAssignment != null && fixedAssignment[customer] != -1;
+		}
+
+		/**
+		 * Store the k cheapest clusters, cheapest first
+		 */
+		void selectCandidates(int customer, double[] costs) {
+			int offset = customer * k;
+			int nb = 0;
+			for (int c = 0; c < p; c++) {
+				double value = costs[c];
+				if (value == Double.POSITIVE_INFINITY) {
+					continue;
+				}
+				int pos = nb;
+				while (pos > 0 && value < cost[offset + pos - 1]) {
+					pos--;
+				}
+				if (pos < k) {
+					for (int j = Math.min(nb, k - 1); j > pos; j--) {
+						cost[offset + j] = cost[offset + j - 1];
+						candidateCluster[offset + j] = candidateCluster[offset + j - 1];
+					}
+					cost[offset + pos] = value;
+					candidateCluster[offset + pos] = c;
+					nb = Math.min(nb + 1, k);
+				}
+			}
+			nbCandidates[customer] = nb;
+		}
+
+		double minQuantity(int cluster) {
+			return Math.min(problemIndex.getMinQuantity(cluster), problemIndex.getMaxQuantity(cluster));
+		}
+
+		/**
+		 * Cost per unit of the cheapest arc from the cluster to the sink with capacity left. The costs
+		 * increase with the load, so reduced costs stay non-negative as the load grows.
+		 */
+		double sinkCost(int cluster) {
+			double shortfall = minQuantity(cluster) - load[cluster];
+			if (shortfall > eps) {
+				return square ? -bigM * (2 * Math.ceil(shortfall - eps) - 1) : -bigM;
+			}
+			double excess = load[cluster] - problemIndex.getMaxQuantity(cluster);
+			if (excess < -eps) {
+				return 0;
+			}
+			return square ? bigM * (2 * Math.floor(excess + eps) + 1) : bigM;
+		}
+
+		/**
+		 * Quantity the cluster can send to the sink at {@link #sinkCost(int)}
+		 */
+		double sinkCapacity(int cluster) {
+			double shortfall = minQuantity(cluster) - load[cluster];
+			if (shortfall > eps) {
+				return square ? shortfall - Math.ceil(shortfall - eps) + 1 : shortfall;
+			}
+			double excess = load[cluster] - problemIndex.getMaxQuantity(cluster);
+			if (excess < -eps) {
+				return -excess;
+			}
+			return square ? Math.floor(excess + eps) + 1 - excess : Double.POSITIVE_INFINITY;
+		}
+
+		double unitCost(int slot) {
+			return cost[slot] / problemIndex.getQuantity(slot / k);
+		}
+
+		/**
+		 * Peek the cheapest hop in the queue, discarding any whose customer no longer has flow to move
+		 */
+		Hop peekHop(PriorityQueue<Hop> queue) {
+			while (!queue.isEmpty()) {
+				Hop hop = queue.peek();
+				if (flow[hop.fromSlot] > eps) {
+					return hop;
+				}
+				queue.poll();
+			}
+			return null;
+		}
+
+		void addFlow(int slot, double delta) {
+			boolean hadFlow = flow[slot] > eps;
+			flow[slot] += delta;
+			if (hadFlow || flow[slot] <= eps) {
+				return;
+			}
+
+			// the customer's flow can now move from this cluster to its other candidates
+			int customer = slot / k;
+			TIntObjectHashMap<PriorityQueue<Hop>> hops = hopsFrom.get(candidateCluster[slot]);
+			int offset = customer * k;
+			for (int j = 0; j < nbCandidates[customer]; j++) {
+				int toSlot = offset + j;
+				if (toSlot == slot) {
+					continue;
+				}
+				int to = candidateCluster[toSlot];
+				PriorityQueue<Hop> queue = hops.get(to);
+				if (queue == null) {
+					queue = new PriorityQueue<>();
+					hops.put(to, queue);
+				}
+				queue.add(new Hop(slot, toSlot, unitCost(toSlot) - unitCost(slot)));
+			}
+		}
+
+		/**
+		 * Find the shortest path from the customer to the sink using reduced costs, setting distSink
+		 * and updating the cluster potentials
+		 * @return The last cluster on the path
+		 */
+		int shortestPath(int customer, double potCustomer) {
+			Arrays.fill(dist, Double.POSITIVE_INFINITY);
+			Arrays.fill(settled, false);
+			settledList.resetQuick();
+			int offset = customer * k;
+			for (int j = 0; j < nbCandidates[customer]; j++) {
+				int slot = offset + j;
+				int c = candidateCluster[slot];
+				double d = unitCost(slot) + potCustomer - pot[c];
+				if (d < dist[c]) {
+					dist[c] = d;
+					predCluster[c] = -1;
+					predSourceSlot[c] = slot;
+				}
+			}
+
+			distSink = Double.POSITIVE_INFINITY;
+			int lastCluster = -1;
+			while (true) {
+				int a = -1;
+				for (int c = 0; c < p; c++) {
+					if (!settled[c] && dist[c] < Double.POSITIVE_INFINITY && (a == -1 || dist[c] < dist[a])) {
+						a = c;
+					}
+				}
+				if (a == -1 || dist[a] >= distSink) {
+					break;
+				}
+				settled[a] = true;
+				settledList.add(a);
+
+				double d = dist[a] + sinkCost(a) + pot[a] - potSink;
+				if (d < distSink) {
+					distSink = d;
+					lastCluster = a;
+				}
+
+				for (TIntObjectIterator<PriorityQueue<Hop>> it = hopsFrom.get(a).iterator(); it.hasNext();) {
+					it.advance();
+					int b = it.key();
+					if (settled[b]) {
+						continue;
+					}
+					Hop hop = peekHop(it.value());
+					if (hop != null) {
+						d = dist[a] + hop.unitCost + pot[a] - pot[b];
+						if (d < dist[b]) {
+							dist[b] = d;
+							predCluster[b] = a;
+							predHop[b] = hop;
+						}
+					}
+				}
+			}
+
+			// keep reduced costs non-negative
+			for (int j = 0; j < settledList.size(); j++) {
+				int c = settledList.getQuick(j);
+				pot[c] += dist[c] - distSink;
+			}
+			return lastCluster;
+		}
+
+		int[] run() {
+			int[] ret = new int[n];
+			for (int i = 0; i < n; i++) {
+				if (isFixed(i)) {
+					ret[i] = fixedAssignment[i];
+					load[ret[i]] += problemIndex.getQuantity(i);
+				}
+			}
+
+			// start the sink potential at or below the cheapest sink arc so its reduced costs are non-negative
+			potSink = -bigM;
+			for (int c = 0; c < p; c++) {
+				potSink = Math.min(potSink, sinkCost(c));
+			}
+
+			for (int i = 0; i < n; i++) {
+				if (isFixed(i) || nbCandidates[i] == 0) {
+					continue;
+				}
+				// a customer with no quantity has nothing to route and goes to its cheapest cluster
+				double remaining = problemIndex.getQuantity(i);
+				double potCustomer = 0;
+				while (remaining > eps) {
+					int last = shortestPath(i, potCustomer);
+					potCustomer -= distSink;
+
+					// find the bottleneck
+					double delta = Math.min(remaining, sinkCapacity(last));
+					int c = last;
+					while (predCluster[c] != -1) {
+						delta = Math.min(delta, flow[predHop[c].fromSlot]);
+						c = predCluster[c];
+					}
+
+					// and augment
+					load[last] += delta;
+					c = last;
+					while (predCluster[c] != -1) {
+						Hop hop = predHop[c];
+						flow[hop.fromSlot] -= delta;
+						addFlow(hop.toSlot, delta);
+						c = predCluster[c];
+					}
+					addFlow(predSourceSlot[c], delta);
+					remaining -= delta;
+				}
+			}
+
+			// assign each customer to the cluster with most of its flow
+			for (int i = 0; i < n; i++) {
+				if (isFixed(i)) {
+					continue;
+				}
+				ret[i] = -1;
+				int offset = i * k;
+				double best = Double.NEGATIVE_INFINITY;
+				for (int j = 0; j < nbCandidates[i]; j++) {
+					if (flow[offset + j] > best) {
+						best = flow[offset + j];
+						ret[i] = candidateCluster[offset + j];
+					}
+				}
+			}
+			return ret;
+		}
+	}
+}
@@ -31,6 +31,7 @@ import com.opendoorlogistics.territorium.optimiser.solver.SolverConfig;
 import com.opendoorlogistics.territorium.problem.Cluster;
 import com.opendoorlogistics.territorium.problem.Customer;
 import com.opendoorlogistics.territorium.problem.Problem;
+import com.opendoorlogistics.territorium.problem.ProblemIndex;
 import com.opendoorlogistics.territorium.problem.location.Location;
 import com.opendoorlogistics.territorium.utils.Pair;
 
@@ -185,7 +186,12 @@ public class ProblemSplitter {
 		Problem splitProblem = createSplitterProblem(nbSubproblems, originalSol);
 
 		// Construct using our specifically randomised constructor
-		ImmutableSolution splitSolution = new Solver(splitProblem, new SolverConfig(), null, random).constructRandWeightBasedPlusLocalSearchSingleStepSol(Cost.createApproxEqualComparator());
+		SolverConfig splitConfig = new SolverConfig();
+		// the split problem's clusters are not fixed, so decide on flow assignment using the original problem
+		splitConfig.setMinCostFlowAssignment(Solver.isMinCostFlowAssignment(problem, config));
+		splitConfig.setMinCostFlowAssignmentForFixedCentres(config.isMinCostFlowAssignmentForFixedCentres());
+		splitConfig.setMinCostFlowAssigner(config.getMinCostFlowAssigner());
+		ImmutableSolution splitSolution = new Solver(splitProblem, splitConfig, null, random).constructRandWeightBasedPlusLocalSearchSingleStepSol(Cost.createApproxEqualComparator());
 		
 		// Now create individual subproblem objects *together with the initial solution*
 		ArrayList<Subproblem> ret = new ArrayList<>();
@@ -233,10 +239,19 @@ public class ProblemSplitter {
 			}
 			
 			// Reuse the travel matrix			
-			newProblem.setProblem(new Problem(newCustomers, newClusters, problem.getTravelMatrix()));;
+			Problem subproblem = new Problem(newCustomers, newClusters, problem.getTravelMatrix());
+			ProblemIndex index = ProblemIndex.get(problem);
+			subproblem.setProblemIndex(ProblemIndex.compile(subproblem, index.getApproximateCentres(),
+					index.getApproximateCentreSampleSize()));
+			newProblem.setProblem(subproblem);
 			newProblem.setSolution(new MutableSolution(newProblem.getProblem(), newAssignments.toArray()));
 			
 			// Remap the nearest customer to customer matrix
+			int[] originalToNewCustomerIndices = new int[problem.getCustomers().size()];
+			Arrays.fill(originalToNewCustomerIndices, -1);
+			for (int j = 0; j < newCustomers.size(); j++) {
+				originalToNewCustomerIndices[newProblem.getNewToOriginalCustomerIndices()[j]] = j;
+			}
 			newProblem.setCustomer2CustomerClosestNgbMatrix(new Customer2CustomerClosestNgbMatrix() {
 				
 				@Override
@@ -244,18 +259,20 @@ public class ProblemSplitter {
 					return customer2CustomerClosestNgbMatrix.getNbClosestNeighbours(newProblem.getNewToOriginalCustomerIndices()[customerIndx]);
 				}
 				
+				@Override
+				public int getClosestNeighbour(int customerIndx, int nearestNeighbourIndex) {
+					int originalCustomerIndx = newProblem.getNewToOriginalCustomerIndices()[customerIndx];
+					int originalNeighbour = customer2CustomerClosestNgbMatrix.getClosestNeighbour(originalCustomerIndx, nearestNeighbourIndex);
+					
+					// returns -1 if not in same subproblem
+					return originalNeighbour != -1 ? originalToNewCustomerIndices[originalNeighbour] : -1;
+				}
+				
 				@Override
 				public int getClusterIndexOfClosestNeighbour(ImmutableSolution solution, int customerIndex,
 						int nearestNeighbourIndex) {
-					int originalCustomerIndx = newProblem.getNewToOriginalCustomerIndices()[customerIndex];
-					if(originalCustomerIndx==-1){
-						// not in same subproblem
-						return -1;
-					}
-					
-					// get from subproblem
-					return solution.getClusterIndex(customerIndex);
-			//		throw new UnsupportedOperationException();
+					int neighbour = getClosestNeighbour(customerIndex, nearestNeighbourIndex);
+					return neighbour != -1 ? solution.getClusterIndex(neighbour) : -1;
 				}
 			});
 			
@@ -17,23 +17,23 @@ package com.opendoorlogistics.territorium.optimiser.components;
 
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.List;
 import java.util.Random;
 
-import com.opendoorlogistics.territorium.problem.Cluster;
-import com.opendoorlogistics.territorium.problem.Customer;
 import com.opendoorlogistics.territorium.problem.Problem;
+import com.opendoorlogistics.territorium.problem.ProblemIndex;
 import com.opendoorlogistics.territorium.problem.location.Location;
 import com.opendoorlogistics.territorium.utils.NumberUtils;
 
 public class RandomisedCentreSelector {
 	private final Problem problem;
+	private final ProblemIndex problemIndex;
 	private final Random random;
 	private final Config config;
 	
 	
 	public RandomisedCentreSelector(Problem problem, Random random, Config config) {
 		this.problem = problem;
+		this.problemIndex = ProblemIndex.get(problem);
 		this.random = random;
 		this.config = config;
 	}
@@ -54,18 +54,15 @@ public class RandomisedCentreSelector {
 	
 	private static class CustomerRec{
 		
-		CustomerRec(int index, Customer customer) {
+		CustomerRec(int index) {
 			this.index = index;
-			this.customer = customer;
 		}
 		final int index;
-		final Customer customer;
 		double minCostToCluster;
 	}
 	
 	public Location[] run(Location[] clusterLocations, int[] assignedClusterIndexByCustomer) {
-		List<? extends Cluster> clusters = problem.getClusters();
-		int p = clusters.size();
+		int p = problemIndex.getNbClusters();
 		if(clusterLocations!=null && clusterLocations.length!=p){
 			throw new IllegalArgumentException();
 		}
@@ -73,23 +70,23 @@ public class RandomisedCentreSelector {
 		// copy over already assigned ones
 		Location [] ret = new Location[p];
 		for(int clusterIndx =0;clusterIndx<p;clusterIndx++){
-			ret[clusterIndx] = Cluster.getFixedCentre(clusters.get(clusterIndx));
+			ret[clusterIndx] = problemIndex.getFixedCentre(clusterIndx);
 			if(ret[clusterIndx]==null && clusterLocations!=null){
 				ret[clusterIndx] = clusterLocations[clusterIndx];
 			}
 		}
 		
 		// init array of customers to min travel cost to existing cluster
-		int nCust = problem.getCustomers().size();
+		int nCust = problemIndex.getNbCustomers();
 		CustomerRec [] customers = new CustomerRec[nCust];
 		for(int i=0;i< nCust ; i++){
-			customers[i] = new CustomerRec(i,problem.getCustomers().get(i));
+			customers[i] = new CustomerRec(i);
 			customers[i].minCostToCluster = Double.POSITIVE_INFINITY;
 		}
 		for(int clusterIndx =0;clusterIndx<p;clusterIndx++){
 			if(ret[clusterIndx]!=null){
 				for(int i=0;i< nCust ; i++){
-					double cost = problem.getTravelCost(clusterIndx,ret[clusterIndx],customers[i].customer);
+					double cost = problem.getTravelCost(clusterIndx,ret[clusterIndx],i);
 					customers[i].minCostToCluster = Math.min(customers[i].minCostToCluster, cost);
 				}				
 			}
@@ -104,8 +101,7 @@ public class RandomisedCentreSelector {
 			}
 			
 			// sort customers by best first
-			Cluster cluster = problem.getClusters().get(clusterIndx);
-			int[] orderedCustomerIndices = sortCandidateLocations(clusterIndx,cluster, customers);
+			int[] orderedCustomerIndices = sortCandidateLocations(clusterIndx, customers);
 			
 			// choose randomly from the best 0.5/nclusters
 			int limit = (int)Math.ceil(config.getBestCandidateSelectivity() * orderedCustomerIndices.length / p);
@@ -116,19 +112,19 @@ public class RandomisedCentreSelector {
 			}
 			
 			// set the cluster
-			ret[clusterIndx] = customers[customerIndex].customer.getLocation();
+			ret[clusterIndx] = problemIndex.getLocation(customerIndex);
 			
 			// update the min distances
 			for(int i=0;i< nCust ; i++){
 				customers[i].minCostToCluster = Math.min(customers[i].minCostToCluster,
-						problem.getTravelCost(clusterIndx,ret[clusterIndx],customers[i].customer));
+						problem.getTravelCost(clusterIndx,ret[clusterIndx],i));
 			}
 		}
 		
 		return ret;
 	}
 	
-	private int [] sortCandidateLocations(int clusterIndex,Cluster cluster,CustomerRec [] customers){
+	private int [] sortCandidateLocations(int clusterIndex,CustomerRec [] customers){
 		class SortRecord{
 			CustomerRec customer;
 			double normalisedClosestClusterScore;
@@ -174,9 +170,10 @@ public class RandomisedCentreSelector {
 		}
 		
 		// get distance to ref location
-		if(cluster.getTargetCentre()!=null){
+		Location targetCentre = problemIndex.getTargetCentre(clusterIndex);
+		if(targetCentre!=null){
 			for(SortRecord rec:recs){
-				rec.dist2RefLocation = problem.getTravelCost(clusterIndex,cluster.getTargetCentre(), rec.customer.customer);			
+				rec.dist2RefLocation = problem.getTravelCost(clusterIndex,targetCentre, rec.customer.index);			
 			}
 			// smallest distance comes first
 			recs.sort((o1,o2)->Double.compare(o1.dist2RefLocation, o2.dist2RefLocation));
@@ -16,17 +16,14 @@
 package com.opendoorlogistics.territorium.optimiser.components;
 
 import java.util.Arrays;
-import java.util.List;
 import java.util.Random;
 import java.util.TreeSet;
 import java.util.logging.Logger;
 
 import com.opendoorlogistics.territorium.optimiser.data.CustomerClusterCostMatrix;
-import com.opendoorlogistics.territorium.optimiser.utils.QuantityUtils;
-import com.opendoorlogistics.territorium.problem.Cluster;
-import com.opendoorlogistics.territorium.problem.Customer;
 import com.opendoorlogistics.territorium.problem.ObjectWithJSONToString;
 import com.opendoorlogistics.territorium.problem.Problem;
+import com.opendoorlogistics.territorium.problem.ProblemIndex;
 import com.opendoorlogistics.territorium.problem.location.Location;
 import com.opendoorlogistics.territorium.utils.NumberUtils;
 
@@ -147,26 +144,17 @@ public class RandomisedWeightBasedCustomerAssignment {
 	}
 
 	static class ImmutableData extends ObjectWithJSONToString {
-		private List<? extends Cluster> clusters;
-		private List<? extends Customer> customers;
+		private ProblemIndex problemIndex;
 		private Location[] clusterLocations;
 		private int[] assignedClusterIndexByCustomer;
 		private CustomerClusterCostMatrix noMultiplierCustomer2ClusterCost;
 
-		public List<? extends Cluster> getClusters() {
-			return clusters;
+		public ProblemIndex getProblemIndex() {
+			return problemIndex;
 		}
 
-		public void setClusters(List<? extends Cluster> clusters) {
-			this.clusters = clusters;
-		}
-
-		public List<? extends Customer> getCustomers() {
-			return customers;
-		}
-
-		public void setCustomers(List<? extends Customer> customers) {
-			this.customers = customers;
+		public void setProblemIndex(ProblemIndex problemIndex) {
+			this.problemIndex = problemIndex;
 		}
 
 		public Location[] getClusterLocations() {
@@ -266,11 +254,9 @@ public class RandomisedWeightBasedCustomerAssignment {
 		immutable.clusterLocations = clusterLocations;
 		immutable.assignedClusterIndexByCustomer = assignedClusterIndexByCustomer;
 		// initialise travel costs for all customers (cluster centres are already assigned)
-		immutable.clusters = problem.getClusters();
-		immutable.customers = problem.getCustomers();
-		int p = immutable.clusters.size();
-		int nc = immutable.customers.size();
-		immutable.customers = problem.getCustomers();
+		immutable.problemIndex = ProblemIndex.get(problem);
+		int p = immutable.problemIndex.getNbClusters();
+		int nc = immutable.problemIndex.getNbCustomers();
 		immutable.noMultiplierCustomer2ClusterCost  = new CustomerClusterCostMatrix(problem, clusterLocations);
 
 		Blackboard bb = new Blackboard();
@@ -298,8 +284,8 @@ public class RandomisedWeightBasedCustomerAssignment {
 	 */
 	private void singleStep(Blackboard bb) {
 		ImmutableData immutable = bb.immutable;
-		int p = immutable.clusters.size();
-		int nc = immutable.customers.size();
+		int p = immutable.problemIndex.getNbClusters();
+		int nc = immutable.problemIndex.getNbCustomers();
 		SolutionState testState = new SolutionState(nc, p);
 
 		// loop over clusters in random order
@@ -350,10 +336,10 @@ public class RandomisedWeightBasedCustomerAssignment {
 								bb.multipliers);
 						if (newClusterIndx != oldClusterIndx) {
 							if (oldClusterIndx != -1) {
-								testState.quantities[oldClusterIndx] -= immutable.customers.get(i).getQuantity();
+								testState.quantities[oldClusterIndx] -= immutable.problemIndex.getQuantity(i);
 							}
 							if (newClusterIndx != -1) {
-								testState.quantities[newClusterIndx] += immutable.customers.get(i).getQuantity();
+								testState.quantities[newClusterIndx] += immutable.problemIndex.getQuantity(i);
 							}
 						}
 					}
@@ -394,7 +380,7 @@ public class RandomisedWeightBasedCustomerAssignment {
 		Arrays.fill(state.quantities, 0);
 		for (int i = 0; i < nc; i++) {
 			if (state.bestCluster[i] != -1) {
-				state.quantities[state.bestCluster[i]] += immutable.customers.get(i).getQuantity();
+				state.quantities[state.bestCluster[i]] += immutable.problemIndex.getQuantity(i);
 			}
 		}
 
@@ -405,8 +391,7 @@ public class RandomisedWeightBasedCustomerAssignment {
 		// get initial violations
 		state.sumAbsQuantityViolation = 0;
 		for (int i = 0; i < state.quantityViolations.length; i++) {
-			state.quantityViolations[i] = QuantityUtils.getAbsQuantityViolation(immutable.clusters.get(i),
-					state.quantities[i], problem.getQuantityViolationType());
+			state.quantityViolations[i] = immutable.problemIndex.getAbsQuantityViolation(i, state.quantities[i]);
 			state.sumAbsQuantityViolation += state.quantityViolations[i];
 		}
 	}
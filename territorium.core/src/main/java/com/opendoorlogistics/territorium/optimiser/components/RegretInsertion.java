@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.optimiser.components;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import com.opendoorlogistics.territorium.optimiser.data.Cost;
+import com.opendoorlogistics.territorium.optimiser.data.MutableSolution;
+import com.opendoorlogistics.territorium.utils.NumberUtils;
+
+/**
+ * Regret-k insertion of unassigned customers. The customer inserted next is the one with the largest
+ * regret, i.e. the largest difference between its best and k-th best insertion (quantity violation
+ * first, then travel), so customers with few good options are placed before their options are taken.
+ * <p>
+ * Inserting a customer only changes the insertion costs for its new cluster, so each insertion is logged
+ * and a customer's cached costs are only re-evaluated for the clusters changed since it was last looked at.
+ * This is done lazily, when the customer reaches the top of the priority queue with a stale regret;
+ * it's then pushed back with its refreshed regret. Customers far down the queue are therefore never
+ * re-evaluated until they're nearly due to be inserted. The cached insertion costs take
+ * 16 bytes per unassigned customer per cluster.
+ * @author Phil
+ *
+ */
+public class RegretInsertion {
+	private final Random random;
+	private final int k;
+
+	/**
+	 * 
+	 * @param random
+	 * @param k Regret is measured between the best and k-th best insertion, so k must be at least 2
+	 */
+	public RegretInsertion(Random random, int k) {
+		if (k < 2) {
+			throw new IllegalArgumentException("Regret insertion needs k of at least 2");
+		}
+		this.random = random;
+		this.k = k;
+	}
+
+	private static class QueueEntry {
+		final int unassignedIndex;
+		final int order;
+		final double quantityViolationRegret;
+		final double costRegret;
+
+		QueueEntry(int unassignedIndex, int order, double quantityViolationRegret, double costRegret) {
+			this.unassignedIndex = unassignedIndex;
+			this.order = order;
+			this.quantityViolationRegret = quantityViolationRegret;
+			this.costRegret = costRegret;
+		}
+	}
+
+	/**
+	 * Largest regret first, then the (random) customer order
+	 */
+	private static final Comparator<QueueEntry> QUEUE_ORDER = (a, b) -> {
+		if (!Cost.numbersAreApproxEqual(a.quantityViolationRegret, b.quantityViolationRegret)) {
+			return a.quantityViolationRegret > b.quantityViolationRegret ? -1 : +1;
+		}
+		if (!Cost.numbersAreApproxEqual(a.costRegret, b.costRegret)) {
+			return a.costRegret > b.costRegret ? -1 : +1;
+		}
+		return Integer.compare(a.order, b.order);
+	};
+
+	/**
+	 * Working data for a single call
+	 */
+	private class Insertion {
+		final Comparator<Cost> comparator;
+		final MutableSolution sol;
+		final int p;
+		final int[] unassigned;
+
+		/** Change in the solution's travel and quantity violation for each unassigned customer and cluster */
+		final double[] deltaCost;
+		final double[] deltaQuantityViolation;
+
+		final int[] bestCluster;
+		final int[] lastRefreshStep;
+		final int[] insertedClusterByStep;
+		int nbSteps;
+
+		final int[] clusterMark;
+		int markStamp;
+		final int[] top;
+		final Cost evaluated = new Cost();
+		final Cost a = new Cost();
+		final Cost b = new Cost();
+
+		Insertion(Comparator<Cost> comparator, MutableSolution sol, int[] unassigned) {
+			this.comparator = comparator;
+			this.sol = sol;
+			this.p = sol.getProblem().getClusters().size();
+			this.unassigned = unassigned;
+			int m = unassigned.length;
+			deltaCost = new double[m * p];
+			deltaQuantityViolation = new double[m * p];
+			bestCluster = new int[m];
+			lastRefreshStep = new int[m];
+			insertedClusterByStep = new int[m];
+			clusterMark = new int[p];
+			top = new int[Math.min(k, p)];
+		}
+
+		void evaluate(int u, int cluster) {
+			sol.evaluateSet(unassigned[u], cluster, evaluated);
+			Cost current = sol.getCost();
+			deltaCost[u * p + cluster] = evaluated.getCost() - current.getCost();
+			deltaQuantityViolation[u * p + cluster] = evaluated.getQuantityViolation() - current.getQuantityViolation();
+		}
+
+		/**
+		 * Compare inserting customer u into cluster c1 against inserting it into c2
+		 */
+		int compare(int u, int c1, int c2) {
+			Cost current = sol.getCost();
+			a.setCost(current.getCost() + deltaCost[u * p + c1]);
+			a.setQuantityViolation(current.getQuantityViolation() + deltaQuantityViolation[u * p + c1]);
+			b.setCost(current.getCost() + deltaCost[u * p + c2]);
+			b.setQuantityViolation(current.getQuantityViolation() + deltaQuantityViolation[u * p + c2]);
+			return comparator.compare(a, b);
+		}
+
+		/**
+		 * Find the best k insertions for customer u from its cached costs and create its queue entry
+		 */
+		QueueEntry rank(int u) {
+			int nbTop = 0;
+			for (int c = 0; c < p; c++) {
+				// insertion sort into the small top list, keeping the earlier cluster on ties
+				int pos = nbTop;
+				while (pos > 0 && compare(u, c, top[pos - 1]) < 0) {
+					pos--;
+				}
+				if (pos < top.length) {
+					int last = Math.min(nbTop, top.length - 1);
+					for (int i = last; i > pos; i--) {
+						top[i] = top[i - 1];
+					}
+					top[pos] = c;
+					nbTop = Math.min(nbTop + 1, top.length);
+				}
+			}
+
+			bestCluster[u] = top[0];
+			if (nbTop < 2) {
+				// only one option... insert as soon as possible
+				return new QueueEntry(u, u, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+			}
+			int best = u * p + top[0];
+			int kth = u * p + top[nbTop - 1];
+			return new QueueEntry(u, u, deltaQuantityViolation[kth] - deltaQuantityViolation[best],
+					deltaCost[kth] - deltaCost[best]);
+		}
+
+		/**
+		 * Re-evaluate customer u's insertion costs for the clusters changed since it was last refreshed
+		 */
+		void refresh(int u) {
+			markStamp++;
+			for (int step = lastRefreshStep[u]; step < nbSteps; step++) {
+				int cluster = insertedClusterByStep[step];
+				if (clusterMark[cluster] != markStamp) {
+					clusterMark[cluster] = markStamp;
+					evaluate(u, cluster);
+				}
+			}
+			lastRefreshStep[u] = nbSteps;
+		}
+
+		void run() {
+			PriorityQueue<QueueEntry> queue = new PriorityQueue<>(Math.max(1, unassigned.length), QUEUE_ORDER);
+			for (int u = 0; u < unassigned.length; u++) {
+				for (int c = 0; c < p; c++) {
+					evaluate(u, c);
+				}
+				queue.add(rank(u));
+			}
+
+			while (!queue.isEmpty()) {
+				int u = queue.poll().unassignedIndex;
+				if (lastRefreshStep[u] < nbSteps) {
+					// regret is stale, refresh and push back
+					refresh(u);
+					queue.add(rank(u));
+					continue;
+				}
+
+				sol.setCustomerToCluster(unassigned[u], bestCluster[u]);
+				insertedClusterByStep[nbSteps++] = bestCluster[u];
+			}
+		}
+	}
+
+	/**
+	 * Assign all unassigned customers, leaving the assigned ones alone
+	 * @param comparator
+	 * @param sol
+	 */
+	public void assignUnassignedCustomers(Comparator<Cost> comparator, MutableSolution sol) {
+		int n = sol.getProblem().getCustomers().size();
+		int nbUnassigned = 0;
+		int[] order = NumberUtils.getRandomOrder0ToNArray(random, n - 1);
+		for (int customerIndx : order) {
+			if (sol.getClusterIndex(customerIndx) == -1) {
+				order[nbUnassigned++] = customerIndx;
+			}
+		}
+
+		if (nbUnassigned > 0 && sol.getProblem().getClusters().size() > 0) {
+			int[] unassigned = new int[nbUnassigned];
+			System.arraycopy(order, 0, unassigned, 0, nbUnassigned);
+			new Insertion(comparator, sol, unassigned).run();
+		}
+
+		// update sol before returning to stop any rounding errors
+		sol.update();
+	}
+}
@@ -19,25 +19,55 @@ import java.util.Arrays;
 import java.util.Random;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.opendoorlogistics.territorium.optimiser.data.Customer2CustomerClosestNgbMatrix;
 import com.opendoorlogistics.territorium.problem.Problem;
 
+import gnu.trove.iterator.TIntIntIterator;
 import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.set.hash.TIntHashSet;
 
 public class Ruin {
 	private final Problem problem;
 	private final Random random;
 	private final RuinConfig config;
+	private final Customer2CustomerClosestNgbMatrix closestNeighbours;
+	private final RuinStatistics statistics;
 	private RuinType lastRuinType;
+	private int lastSizeBucket = -1;
+
+	/**
+	 * Adaptive selection weight per operator (ruin type and size bucket), copied from the statistics' shared
+	 * weights at the end of each segment, and the current segment's scores. Null unless adaptive selection is on.
+	 */
+	private final double[] weights;
+	private final double[] segmentScores;
+	private final int[] segmentUses;
+	private double minWeight;
+	private int nbOutcomesInSegment;
 	
 	public static class RuinConfig{
 		private double weightDeleteClusters = 0.4;
 		private double weightDeleteCustomers = 0.4;
+		private double weightDeleteNearestCustomers = 0.2;
+		private double weightDeleteNeighbouringClusters = 0.2;
 		//private double weightDeleteAll = 0.2;
 		private double minRuinCustomersFraction = 0.25;
 		private double maxRuinCustomersFraction = 0.75;
 		private double minRuinClustersFraction = 0.25;
 		private double maxRuinClustersFraction = 0.75;
+		private double minRuinNearestCustomersFraction = 0.05;
+		private double maxRuinNearestCustomersFraction = 0.25;
+		private double minRuinNeighbouringClustersFraction = 0.25;
+		private double maxRuinNeighbouringClustersFraction = 1;
+		private int clusterAdjacencyNbNearest = 10;
+		private boolean adaptive = false;
+		private int nbSizeBuckets = 3;
+		private int adaptiveSegmentLength = 20;
+		private double adaptiveReactionFactor = 0.3;
+		private double adaptiveNewBestScore = 3;
+		private double adaptiveImprovedScore = 1;
+		private double adaptiveMinWeightFraction = 0.05;
 		
 		public double getWeightDeleteClusters() {
 			return weightDeleteClusters;
@@ -51,6 +81,28 @@ public class Ruin {
 		public void setWeightDeleteCustomers(double weightDeleteCustomers) {
 			this.weightDeleteCustomers = weightDeleteCustomers;
 		}
+		public double getWeightDeleteNearestCustomers() {
+			return weightDeleteNearestCustomers;
+		}
+		/**
+		 * Weight for the radial ruin, which removes a random customer plus its nearest customers.
+		 * This and {@link #setWeightDeleteNeighbouringClusters(double)} need a closest neighbour matrix
+		 * and are never chosen if the ruin doesn't have one.
+		 * @param weightDeleteNearestCustomers
+		 */
+		public void setWeightDeleteNearestCustomers(double weightDeleteNearestCustomers) {
+			this.weightDeleteNearestCustomers = weightDeleteNearestCustomers;
+		}
+		public double getWeightDeleteNeighbouringClusters() {
+			return weightDeleteNeighbouringClusters;
+		}
+		/**
+		 * Weight for the ruin which removes a random cluster plus some of the clusters next to it
+		 * @param weightDeleteNeighbouringClusters
+		 */
+		public void setWeightDeleteNeighbouringClusters(double weightDeleteNeighbouringClusters) {
+			this.weightDeleteNeighbouringClusters = weightDeleteNeighbouringClusters;
+		}
 		//public double getWeightDeleteAll() {
 	//		return weightDeleteAll;
 		//}
@@ -83,6 +135,116 @@ public class Ruin {
 		public void setMaxRuinCustomersFraction(double maxRuinCustomersFraction) {
 			this.maxRuinCustomersFraction = maxRuinCustomersFraction;
 		}
+		public double getMinRuinNearestCustomersFraction() {
+			return minRuinNearestCustomersFraction;
+		}
+		public void setMinRuinNearestCustomersFraction(double minRuinNearestCustomersFraction) {
+			this.minRuinNearestCustomersFraction = minRuinNearestCustomersFraction;
+		}
+		public double getMaxRuinNearestCustomersFraction() {
+			return maxRuinNearestCustomersFraction;
+		}
+		public void setMaxRuinNearestCustomersFraction(double maxRuinNearestCustomersFraction) {
+			this.maxRuinNearestCustomersFraction = maxRuinNearestCustomersFraction;
+		}
+		public double getMinRuinNeighbouringClustersFraction() {
+			return minRuinNeighbouringClustersFraction;
+		}
+		/**
+		 * Fraction of the clusters next to the randomly chosen cluster which are also removed
+		 * @param minRuinNeighbouringClustersFraction
+		 */
+		public void setMinRuinNeighbouringClustersFraction(double minRuinNeighbouringClustersFraction) {
+			this.minRuinNeighbouringClustersFraction = minRuinNeighbouringClustersFraction;
+		}
+		public double getMaxRuinNeighbouringClustersFraction() {
+			return maxRuinNeighbouringClustersFraction;
+		}
+		public void setMaxRuinNeighbouringClustersFraction(double maxRuinNeighbouringClustersFraction) {
+			this.maxRuinNeighbouringClustersFraction = maxRuinNeighbouringClustersFraction;
+		}
+		public int getClusterAdjacencyNbNearest() {
+			return clusterAdjacencyNbNearest;
+		}
+		/**
+		 * For the neighbouring clusters ruin, two clusters are next to each other when a customer
+		 * in one has a customer in the other amongst this many of its nearest neighbours
+		 * @param clusterAdjacencyNbNearest
+		 */
+		public void setClusterAdjacencyNbNearest(int clusterAdjacencyNbNearest) {
+			this.clusterAdjacencyNbNearest = clusterAdjacencyNbNearest;
+		}
+		public boolean isAdaptive() {
+			return adaptive;
+		}
+		/**
+		 * If true the ruin type and size are chosen adaptively (as in adaptive large neighbourhood search),
+		 * favouring the operators which recently improved the solution bank. The configured ruin weights
+		 * are used as the starting weights. If false they're chosen using the fixed weights.
+		 * @param adaptive
+		 */
+		public void setAdaptive(boolean adaptive) {
+			this.adaptive = adaptive;
+		}
+		public int getNbSizeBuckets() {
+			return nbSizeBuckets;
+		}
+		/**
+		 * Number of equal parts the min-max ruin fraction range is split into, each being a separate
+		 * operator for adaptive selection and statistics
+		 * @param nbSizeBuckets
+		 */
+		public void setNbSizeBuckets(int nbSizeBuckets) {
+			this.nbSizeBuckets = nbSizeBuckets;
+		}
+		public int getAdaptiveSegmentLength() {
+			return adaptiveSegmentLength;
+		}
+		/**
+		 * Number of ruins between updates of the adaptive weights
+		 * @param adaptiveSegmentLength
+		 */
+		public void setAdaptiveSegmentLength(int adaptiveSegmentLength) {
+			this.adaptiveSegmentLength = adaptiveSegmentLength;
+		}
+		public double getAdaptiveReactionFactor() {
+			return adaptiveReactionFactor;
+		}
+		/**
+		 * At the end of each segment an operator's weight becomes (1-r) * old weight + r * its mean score
+		 * in the segment, so old performance decays away. Operators not used in the segment keep their weight.
+		 * @param adaptiveReactionFactor
+		 */
+		public void setAdaptiveReactionFactor(double adaptiveReactionFactor) {
+			this.adaptiveReactionFactor = adaptiveReactionFactor;
+		}
+		public double getAdaptiveNewBestScore() {
+			return adaptiveNewBestScore;
+		}
+		public void setAdaptiveNewBestScore(double adaptiveNewBestScore) {
+			this.adaptiveNewBestScore = adaptiveNewBestScore;
+		}
+		public double getAdaptiveImprovedScore() {
+			return adaptiveImprovedScore;
+		}
+		/**
+		 * Score for a ruin which improved a solution bank slot without finding a new best
+		 * @param adaptiveImprovedScore
+		 */
+		public void setAdaptiveImprovedScore(double adaptiveImprovedScore) {
+			this.adaptiveImprovedScore = adaptiveImprovedScore;
+		}
+		public double getAdaptiveMinWeightFraction() {
+			return adaptiveMinWeightFraction;
+		}
+		/**
+		 * Operator weights never fall below this fraction of the mean starting weight,
+		 * so every operator keeps being tried occasionally
+		 * @param adaptiveMinWeightFraction
+		 */
+		public void setAdaptiveMinWeightFraction(double adaptiveMinWeightFraction) {
+			this.adaptiveMinWeightFraction = adaptiveMinWeightFraction;
+		}
 		@JsonIgnore
 		public double getWeight(RuinType type){
 			switch (type) {
@@ -92,6 +254,12 @@ public class Ruin {
 			case DELETE_CUSTOMERS:
 				return getWeightDeleteCustomers();
 				
+			case DELETE_NEAREST_CUSTOMERS:
+				return getWeightDeleteNearestCustomers();
+
+			case DELETE_NEIGHBOURING_CLUSTERS:
+				return getWeightDeleteNeighbouringClusters();
+
 		//	case DELETE_ALL:
 		//		return getWeightDeleteAll();
 				
@@ -105,41 +273,144 @@ public class Ruin {
 	
 
 	public Ruin(Problem problem, RuinConfig config, Random random) {
+		this(problem, config, random, null, null);
+	}
+
+	/**
+	 * 
+	 * @param problem
+	 * @param config
+	 * @param random
+	 * @param closestNeighbours Needed for the spatially localised ruins, which are never chosen if this is null
+	 * @param statistics Statistics to record outcomes to, can be shared between several ruins (which then also
+	 * share their adaptive weights). Created if null.
+	 */
+	public Ruin(Problem problem, RuinConfig config, Random random, Customer2CustomerClosestNgbMatrix closestNeighbours,
+			RuinStatistics statistics) {
 		this.problem = problem;
 		this.config = config;
 		this.random = random;
+		this.closestNeighbours = closestNeighbours;
+		this.statistics = statistics != null ? statistics : new RuinStatistics(config.getNbSizeBuckets());
+		if (this.statistics.getNbSizeBuckets() != config.getNbSizeBuckets()) {
+			throw new IllegalArgumentException("Ruin statistics have a different number of size buckets to the config");
+		}
+
+		if (config.isAdaptive()) {
+			int nbBuckets = config.getNbSizeBuckets();
+			weights = new double[RuinType.values().length * nbBuckets];
+			double sum = 0;
+			for (RuinType type : RuinType.values()) {
+				for (int b = 0; b < nbBuckets; b++) {
+					double w = getWeight(type) / nbBuckets;
+					weights[RuinStatistics.getOperatorIndex(type, b, nbBuckets)] = w;
+					sum += w;
+				}
+			}
+			// operators with zero starting weight are switched off so aren't given the minimum weight
+			minWeight = config.getAdaptiveMinWeightFraction() * sum / weights.length;
+			for (int i = 0; i < weights.length; i++) {
+				if (weights[i] > 0) {
+					weights[i] = Math.max(minWeight, weights[i]);
+				}
+			}
+			segmentScores = new double[weights.length];
+			segmentUses = new int[weights.length];
+			this.statistics.initialiseWeights(weights);
+		} else {
+			weights = null;
+			segmentScores = null;
+			segmentUses = null;
+		}
 	}
 
 	// Don't bother with a delete all ruin type as the ruin-recreate will type this anyway
 	public enum RuinType{
 		DELETE_CLUSTERS,
 		DELETE_CUSTOMERS,
+		
+		/**
+		 * Delete a random customer and its nearest customers (a radial ruin)
+		 */
+		DELETE_NEAREST_CUSTOMERS,
+		
+		/**
+		 * Delete a random cluster and some of the clusters next to it
+		 */
+		DELETE_NEIGHBOURING_CLUSTERS,
 	//	DELETE_ALL
 	}
 	
+	/**
+	 * @param type
+	 * @return True if the ruin type needs the closest neighbour matrix
+	 */
+	private static boolean isSpatial(RuinType type) {
+		return type == RuinType.DELETE_NEAREST_CUSTOMERS || type == RuinType.DELETE_NEIGHBOURING_CLUSTERS;
+	}
+	
+	/**
+	 * @param type
+	 * @return The configured weight, or 0 if the ruin type can't be used
+	 */
+	private double getWeight(RuinType type) {
+		if (config.getWeight(type) < 0) {
+			throw new RuntimeException("Ruin weights cannot be negative");
+		}
+		if (isSpatial(type) && closestNeighbours == null) {
+			return 0;
+		}
+		return config.getWeight(type);
+	}
+	
 	private RuinType chooseRuin(){
 		// normalise ruins
 		double sum=0;
 		for(RuinType type : RuinType.values()){
-			if(config.getWeight(type)<0){
-				throw new RuntimeException("Ruin weights cannot be negative");
-			}
-			sum+=config.getWeight(type);
+			sum+=getWeight(type);
+		}
+		if (sum <= 0) {
+			throw new RuntimeException("At least one usable ruin type must have a positive weight");
 		}
 
 		double rand = random.nextDouble();
 		double randSum=0;
 		for(RuinType type : RuinType.values()){
-			randSum += config.getWeight(type)/sum;
-			if(rand <= randSum){
+			double weight = getWeight(type);
+			randSum += weight/sum;
+			if(weight > 0 && rand <= randSum){
 				return type;
 			}
 			
 		}
 		// this should never happen....
-		return RuinType.values()[random.nextInt(RuinType.values().length)];
+		RuinType ret;
+		do {
+			ret = RuinType.values()[random.nextInt(RuinType.values().length)];
+		} while (getWeight(ret) == 0);
+		return ret;
 	}
 	
+	/**
+	 * Choose the ruin type and size bucket by roulette wheel selection on the adaptive weights
+	 * @return Operator index
+	 */
+	private int chooseAdaptiveOperator() {
+		double sum = 0;
+		for (double w : weights) {
+			sum += w;
+		}
+		double rand = random.nextDouble() * sum;
+		double randSum = 0;
+		for (int i = 0; i < weights.length; i++) {
+			randSum += weights[i];
+			if (rand < randSum) {
+				return i;
+			}
+		}
+		return weights.length - 1;
+	}
+
 	private int getNbToRuin(String type, double min, double max, int total){
 		if(min<0 || max>1){
 			throw new RuntimeException("Min " +type+ " fraction must be between 0 and 1");
@@ -154,8 +425,17 @@ public class Ruin {
 		}
 		
 		
-		// choose the target fraction to remove
-		double fractionToRuin = min + (max-min) * random.nextDouble();
+		// choose the target fraction to remove, from within the size bucket's part of the range if one was chosen
+		// for this ruin (i.e. adaptive), otherwise from anywhere in the range and record its bucket
+		int nbBuckets = config.getNbSizeBuckets();
+		double position;
+		if (lastSizeBucket >= 0) {
+			position = (lastSizeBucket + random.nextDouble()) / nbBuckets;
+		} else {
+			position = random.nextDouble();
+			lastSizeBucket = Math.min(nbBuckets - 1, (int) (position * nbBuckets));
+		}
+		double fractionToRuin = min + (max-min) * position;
 		
 		int toRemove =(int) Math.ceil(total * fractionToRuin);
 		toRemove = Math.min(total, toRemove);
@@ -188,8 +468,45 @@ public class Ruin {
 	}
 	
 	public int [] ruin(int [] assignment){
-		lastRuinType = chooseRuin();
-		return ruin(lastRuinType, assignment);
+		if (weights != null) {
+			int operator = chooseAdaptiveOperator();
+			int nbBuckets = config.getNbSizeBuckets();
+			return ruin(RuinType.values()[operator / nbBuckets], operator % nbBuckets, assignment);
+		}
+		return ruin(chooseRuin(), -1, assignment);
+	}
+
+	/**
+	 * Report the outcome of recreating the solution from the last {@link #ruin(int[])}, which updates the
+	 * statistics and, if adaptive, the operator weights
+	 * @param improved True if the recreated solution improved at least one solution bank slot
+	 * @param newBest True if it gave a new best solution
+	 */
+	public void reportOutcome(boolean improved, boolean newBest) {
+		if (lastRuinType == null || lastSizeBucket == -1) {
+			return;
+		}
+		int nbBuckets = config.getNbSizeBuckets();
+		int operator = RuinStatistics.getOperatorIndex(lastRuinType, lastSizeBucket, nbBuckets);
+		statistics.record(operator, improved, newBest);
+		if (weights == null) {
+			return;
+		}
+
+		segmentUses[operator]++;
+		segmentScores[operator] += newBest ? config.getAdaptiveNewBestScore() : (improved ? config.getAdaptiveImprovedScore() : 0);
+		if (++nbOutcomesInSegment >= Math.max(1, config.getAdaptiveSegmentLength())) {
+			// update the weights shared with other ruins using the statistics and take back their updates
+			statistics.updateWeights(segmentScores, segmentUses, config.getAdaptiveReactionFactor(), minWeight,
+					weights);
+			Arrays.fill(segmentScores, 0);
+			Arrays.fill(segmentUses, 0);
+			nbOutcomesInSegment = 0;
+		}
+	}
+
+	public RuinStatistics getStatistics() {
+		return statistics;
 	}
 
 	
@@ -197,6 +514,13 @@ public class Ruin {
 		return lastRuinType;
 	}
 
+	/**
+	 * @return Size bucket of the last ruin, or -1 if there hasn't been one or it returned before choosing a size
+	 */
+	public int getLastSizeBucket() {
+		return lastSizeBucket;
+	}
+
 	private int [] ruinClusters(int[] assignment){
 		// get clusters present and shuffle them
 		TIntHashSet clusters = new TIntHashSet();
@@ -230,10 +554,133 @@ public class Ruin {
 		return ret;
 	}
 	
+	/**
+	 * Remove a random loaded customer and then the loaded customers closest to it, found by a breadth-first
+	 * search through the nearest neighbour lists so this still works with a sparse neighbour matrix
+	 * @param assignment
+	 * @return
+	 */
+	private int[] ruinNearestCustomers(int[] assignment) {
+		TIntArrayList loaded = new TIntArrayList();
+		int nc = assignment.length;
+		for (int i = 0; i < nc; i++) {
+			if (assignment[i] != -1) {
+				loaded.add(i);
+			}
+		}
+
+		int toRemove = getNbToRuin("nearest customers ruin", config.getMinRuinNearestCustomersFraction(),
+				config.getMaxRuinNearestCustomersFraction(), loaded.size());
+		int[] ret = Arrays.copyOf(assignment, nc);
+		if (loaded.size() == 0) {
+			return ret;
+		}
+		toRemove = Math.max(1, toRemove);
+
+		// queue of customers to visit, in order of discovery
+		boolean[] visited = new boolean[nc];
+		TIntArrayList queue = new TIntArrayList();
+		int seed = loaded.get(random.nextInt(loaded.size()));
+		queue.add(seed);
+		visited[seed] = true;
+		int nbRemoved = 0;
+		for (int q = 0; q < queue.size() && nbRemoved < toRemove; q++) {
+			int customer = queue.get(q);
+			if (ret[customer] != -1) {
+				ret[customer] = -1;
+				nbRemoved++;
+			}
+
+			int nn = closestNeighbours.getNbClosestNeighbours(customer);
+			for (int i = 0; i < nn; i++) {
+				int other = closestNeighbours.getClosestNeighbour(customer, i);
+				if (other != -1 && !visited[other]) {
+					visited[other] = true;
+					queue.add(other);
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Remove a random cluster plus some of the clusters next to it, most linked first
+	 * @param assignment
+	 * @return
+	 */
+	private int[] ruinNeighbouringClusters(int[] assignment) {
+		TIntArrayList clusters = new TIntArrayList();
+		TIntHashSet present = new TIntHashSet();
+		for (int c : assignment) {
+			if (c != -1 && present.add(c)) {
+				clusters.add(c);
+			}
+		}
+		int nc = assignment.length;
+		int[] ret = Arrays.copyOf(assignment, nc);
+		if (clusters.size() == 0) {
+			return ret;
+		}
+		int seedCluster = clusters.get(random.nextInt(clusters.size()));
+
+		// count links from the seed cluster's customers to other clusters
+		int k = config.getClusterAdjacencyNbNearest();
+		TIntIntHashMap links = new TIntIntHashMap();
+		for (int i = 0; i < nc; i++) {
+			if (assignment[i] != seedCluster) {
+				continue;
+			}
+			int nn = Math.min(k + 1, closestNeighbours.getNbClosestNeighbours(i));
+			for (int j = 0; j < nn; j++) {
+				int other = closestNeighbours.getClosestNeighbour(i, j);
+				if (other != -1 && assignment[other] != -1 && assignment[other] != seedCluster) {
+					links.adjustOrPutValue(assignment[other], 1, 1);
+				}
+			}
+		}
+
+		// sort adjacent clusters by most links, ties by lowest index so results are reproducible
+		int[][] adjacent = new int[links.size()][];
+		int n = 0;
+		for (TIntIntIterator it = links.iterator(); it.hasNext();) {
+			it.advance();
+			adjacent[n++] = new int[] { it.key(), it.value() };
+		}
+		Arrays.sort(adjacent, (a, b) -> a[1] != b[1] ? Integer.compare(b[1], a[1]) : Integer.compare(a[0], b[0]));
+
+		int toRemove = getNbToRuin("neighbouring clusters ruin", config.getMinRuinNeighbouringClustersFraction(),
+				config.getMaxRuinNeighbouringClustersFraction(), adjacent.length);
+		TIntHashSet toRemoveSet = new TIntHashSet();
+		toRemoveSet.add(seedCluster);
+		for (int i = 0; i < toRemove; i++) {
+			toRemoveSet.add(adjacent[i][0]);
+		}
+
+		for (int i = 0; i < nc; i++) {
+			if (toRemoveSet.contains(ret[i])) {
+				ret[i] = -1;
+			}
+		}
+		return ret;
+	}
+
 	public int[] ruin(RuinType type, int[] assignment) {
+		return ruin(type, -1, assignment);
+	}
+
+	/**
+	 * 
+	 * @param type
+	 * @param sizeBucket Size bucket to ruin from, or -1 to choose the size from the whole range
+	 * @param assignment
+	 * @return
+	 */
+	private int[] ruin(RuinType type, int sizeBucket, int[] assignment) {
 		if(assignment.length!=problem.getCustomers().size()){
 			throw new IllegalArgumentException();
 		}
+		lastRuinType = type;
+		lastSizeBucket = sizeBucket;
 
 		switch(type){
 		case DELETE_CLUSTERS:
@@ -242,6 +689,14 @@ public class Ruin {
 		case DELETE_CUSTOMERS:
 			return ruinCustomers(assignment);
 			
+		case DELETE_NEAREST_CUSTOMERS:
+		case DELETE_NEIGHBOURING_CLUSTERS:
+			if (closestNeighbours == null) {
+				throw new RuntimeException("Ruin type " + type.name() + " needs the closest neighbour matrix");
+			}
+			return type == RuinType.DELETE_NEAREST_CUSTOMERS ? ruinNearestCustomers(assignment)
+					: ruinNeighbouringClusters(assignment);
+			
 //		case DELETE_ALL:
 //			int [] ret = new int[assignment.length];
 //			Arrays.fill(ret, -1);
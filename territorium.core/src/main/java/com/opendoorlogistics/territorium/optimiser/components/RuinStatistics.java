@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.optimiser.components;
+
+import com.opendoorlogistics.territorium.optimiser.components.Ruin.RuinType;
+
+/**
+ * Counts of how often each ruin operator was used and how often the following recreate improved
+ * the solution bank, plus the operators' current adaptive selection weights. An operator is a ruin type
+ * combined with a ruin size bucket, where the buckets split the configured min-max ruin fraction range
+ * into equal parts (bucket 0 is the smallest ruins). Shared between islands so all methods are synchronised.
+ * Adaptive ruins sharing the statistics also share one set of weights, which each ruin updates with
+ * its own segment scores.
+ * @author Phil
+ *
+ */
+public class RuinStatistics {
+	private final int nbSizeBuckets;
+	private final long[] nbUses;
+	private final long[] nbImproved;
+	private final long[] nbNewBest;
+	private final double[] weights;
+	private boolean weightsInitialised;
+
+	public RuinStatistics(int nbSizeBuckets) {
+		if (nbSizeBuckets < 1) {
+			throw new IllegalArgumentException("Number of ruin size buckets must be at least 1");
+		}
+		this.nbSizeBuckets = nbSizeBuckets;
+		int n = RuinType.values().length * nbSizeBuckets;
+		nbUses = new long[n];
+		nbImproved = new long[n];
+		nbNewBest = new long[n];
+		weights = new double[n];
+	}
+
+	private RuinStatistics(RuinStatistics copyThis) {
+		nbSizeBuckets = copyThis.nbSizeBuckets;
+		nbUses = copyThis.nbUses.clone();
+		nbImproved = copyThis.nbImproved.clone();
+		nbNewBest = copyThis.nbNewBest.clone();
+		weights = copyThis.weights.clone();
+		weightsInitialised = copyThis.weightsInitialised;
+	}
+
+	static int getOperatorIndex(RuinType type, int sizeBucket, int nbSizeBuckets) {
+		return type.ordinal() * nbSizeBuckets + sizeBucket;
+	}
+
+	public int getNbSizeBuckets() {
+		return nbSizeBuckets;
+	}
+
+	public synchronized long getNbUses(RuinType type, int sizeBucket) {
+		return nbUses[getOperatorIndex(type, sizeBucket, nbSizeBuckets)];
+	}
+
+	/**
+	 * 
+	 * @param type
+	 * @param sizeBucket
+	 * @return Number of uses which improved at least one solution bank slot
+	 */
+	public synchronized long getNbImproved(RuinType type, int sizeBucket) {
+		return nbImproved[getOperatorIndex(type, sizeBucket, nbSizeBuckets)];
+	}
+
+	/**
+	 * 
+	 * @param type
+	 * @param sizeBucket
+	 * @return Number of uses which found a new best solution
+	 */
+	public synchronized long getNbNewBest(RuinType type, int sizeBucket) {
+		return nbNewBest[getOperatorIndex(type, sizeBucket, nbSizeBuckets)];
+	}
+
+	/**
+	 * 
+	 * @param type
+	 * @param sizeBucket
+	 * @return The shared adaptive selection weight, or 0 if adaptive selection is off
+	 */
+	public synchronized double getWeight(RuinType type, int sizeBucket) {
+		return weights[getOperatorIndex(type, sizeBucket, nbSizeBuckets)];
+	}
+
+	synchronized void record(int operatorIndex, boolean improved, boolean newBest) {
+		nbUses[operatorIndex]++;
+		if (improved) {
+			nbImproved[operatorIndex]++;
+		}
+		if (newBest) {
+			nbNewBest[operatorIndex]++;
+		}
+	}
+
+	/**
+	 * Set the shared weights to the starting weights if no ruin has set them yet, then copy the shared
+	 * weights back, so a ruin created after others have adapted the weights starts from them
+	 * @param weights
+	 */
+	synchronized void initialiseWeights(double[] weights) {
+		if (!weightsInitialised) {
+			System.arraycopy(weights, 0, this.weights, 0, this.weights.length);
+			weightsInitialised = true;
+		} else {
+			System.arraycopy(this.weights, 0, weights, 0, this.weights.length);
+		}
+	}
+
+	/**
+	 * Move the shared weight of each operator used in the segment towards its average segment score,
+	 * then copy the shared weights back
+	 * @param segmentScores
+	 * @param segmentUses
+	 * @param reactionFactor
+	 * @param minWeight
+	 * @param weights Receives the updated shared weights
+	 */
+	synchronized void updateWeights(double[] segmentScores, int[] segmentUses, double reactionFactor, double minWeight,
+			double[] weights) {
+		for (int i = 0; i < this.weights.length; i++) {
+			if (segmentUses[i] > 0) {
+				this.weights[i] = Math.max(minWeight,
+						(1 - reactionFactor) * this.weights[i] + reactionFactor * segmentScores[i] / segmentUses[i]);
+			}
+		}
+		System.arraycopy(this.weights, 0, weights, 0, this.weights.length);
+	}
+
+	public synchronized RuinStatistics copy() {
+		return new RuinStatistics(this);
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (RuinType type : RuinType.values()) {
+			for (int b = 0; b < nbSizeBuckets; b++) {
+				int i = getOperatorIndex(type, b, nbSizeBuckets);
+				if (builder.length() > 0) {
+					builder.append(System.lineSeparator());
+				}
+				builder.append(String.format("%s size %d/%d: uses=%d improved=%d newBest=%d weight=%.3f", type, b + 1,
+						nbSizeBuckets, nbUses[i], nbImproved[i], nbNewBest[i], weights[i]));
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,321 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.optimiser.data;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * Graph of which clusters are next to each other. Two clusters are linked when a customer in one
+ * has a customer in the other amongst its K nearest neighbours; the link weight is the number of
+ * such customer pairs, so clusters sharing a long boundary have a high weight.
+ * <p>
+ * The graph is attached to a {@link MutableSolution}, which updates it incrementally each time a
+ * customer is moved. A move only touches the moved customer's K nearest neighbours and the customers
+ * which have it as one of their K nearest, instead of recalculating over all customer pairs.
+ * Links are stored sparsely so memory is proportional to the number of linked cluster pairs.
+ * <p>
+ * The graph also maintains the boundary set: the customers with at least one of their K nearest
+ * neighbours in a different cluster. Interior customers are surrounded by their own cluster
+ * and almost never move, so the local search can restrict its candidates to the boundary.
+ * @author Phil
+ *
+ */
+public class ClusterAdjacencyGraph {
+	private final Customer2CustomerClosestNgbMatrix neighbours;
+	private final int k;
+	private final int nbCustomers;
+
+	/** K nearest neighbours of each customer, flattened, -1 for none */
+	private final int[] forward;
+
+	/** For each customer, the customers which have it as one of their K nearest, stored in CSR format */
+	private final int[] reverseStart;
+	private final int[] reverse;
+
+	private final TIntIntHashMap[] links;
+
+	/** For each customer, the number of its K nearest neighbours assigned to a different cluster */
+	private final int[] nbForeignNeighbours;
+	private int nbBoundaryCustomers;
+
+	/** Working arrays for {@link #getMostLinkedClusters(int, int, TIntArrayList)} so it doesn't allocate */
+	private int[] workingKeys = new int[0];
+	private int[] workingValues = new int[0];
+	private int[] workingCounts = new int[0];
+
+	public ClusterAdjacencyGraph(Customer2CustomerClosestNgbMatrix neighbours, int k, ImmutableSolution solution) {
+		this.neighbours = neighbours;
+		this.k = k;
+		this.nbCustomers = solution.getProblem().getCustomers().size();
+
+		// take the first K neighbours of each customer, excluding itself
+		forward = new int[nbCustomers * k];
+		int[] reverseCounts = new int[nbCustomers + 1];
+		for (int i = 0; i < nbCustomers; i++) {
+			int n = neighbours.getNbClosestNeighbours(i);
+			int added = 0;
+			for (int nn = 0; nn < n && added < k; nn++) {
+				int j = neighbours.getClosestNeighbour(i, nn);
+				if (j != i && j != -1) {
+					forward[i * k + added++] = j;
+					reverseCounts[j + 1]++;
+				}
+			}
+			for (; added < k; added++) {
+				forward[i * k + added] = -1;
+			}
+		}
+
+		// build reverse lists
+		reverseStart = new int[nbCustomers + 1];
+		for (int i = 0; i < nbCustomers; i++) {
+			reverseStart[i + 1] = reverseStart[i] + reverseCounts[i + 1];
+		}
+		reverse = new int[reverseStart[nbCustomers]];
+		int[] fill = new int[nbCustomers];
+		for (int i = 0; i < nbCustomers; i++) {
+			for (int nn = 0; nn < k; nn++) {
+				int j = forward[i * k + nn];
+				if (j != -1) {
+					reverse[reverseStart[j] + fill[j]++] = i;
+				}
+			}
+		}
+
+		// count links for the current assignment
+		int nbClusters = solution.getProblem().getClusters().size();
+		links = new TIntIntHashMap[nbClusters];
+		for (int i = 0; i < nbClusters; i++) {
+			links[i] = new TIntIntHashMap();
+		}
+		nbForeignNeighbours = new int[nbCustomers];
+		for (int i = 0; i < nbCustomers; i++) {
+			int clusterI = solution.getClusterIndex(i);
+			if (clusterI == -1) {
+				continue;
+			}
+			for (int nn = 0; nn < k; nn++) {
+				int j = forward[i * k + nn];
+				if (j != -1) {
+					addLink(clusterI, solution.getClusterIndex(j), 1);
+				}
+			}
+			setNbForeignNeighbours(i, countForeignNeighbours(i, clusterI, solution));
+		}
+	}
+
+	private static boolean isForeign(int clusterA, int clusterB) {
+		return clusterA != -1 && clusterB != -1 && clusterA != clusterB;
+	}
+
+	private int countForeignNeighbours(int customerIndx, int cluster, ImmutableSolution solution) {
+		int ret = 0;
+		for (int nn = 0; nn < k; nn++) {
+			int j = forward[customerIndx * k + nn];
+			if (j != -1 && isForeign(cluster, solution.getClusterIndex(j))) {
+				ret++;
+			}
+		}
+		return ret;
+	}
+
+	private void setNbForeignNeighbours(int customerIndx, int count) {
+		if (nbForeignNeighbours[customerIndx] > 0) {
+			nbBoundaryCustomers--;
+		}
+		nbForeignNeighbours[customerIndx] = count;
+		if (count > 0) {
+			nbBoundaryCustomers++;
+		}
+	}
+
+	/**
+	 *
+	 * @return The neighbour matrix this graph was built from
+	 */
+	public Customer2CustomerClosestNgbMatrix getNeighbourMatrix() {
+		return neighbours;
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	private void addLink(int clusterA, int clusterB, int delta) {
+		if (clusterA == -1 || clusterB == -1 || clusterA == clusterB) {
+			return;
+		}
+		adjust(links[clusterA], clusterB, delta);
+		adjust(links[clusterB], clusterA, delta);
+	}
+
+	private static void adjust(TIntIntHashMap map, int key, int delta) {
+		int value = map.adjustOrPutValue(key, delta, delta);
+		if (value == 0) {
+			map.remove(key);
+		}
+	}
+
+	/**
+	 * Update the links after a customer moves. Must be called when the customer has moved but before any other
+	 * customer moves, as the current clusters of its neighbours are read from the solution.
+	 * @param customerIndx
+	 * @param originalCluster Can be -1
+	 * @param newCluster Can be -1
+	 * @param solution
+	 */
+	void customerMoved(int customerIndx, int originalCluster, int newCluster, ImmutableSolution solution) {
+		if (originalCluster == newCluster) {
+			return;
+		}
+
+		for (int nn = 0; nn < k; nn++) {
+			int j = forward[customerIndx * k + nn];
+			if (j != -1) {
+				int clusterJ = solution.getClusterIndex(j);
+				addLink(originalCluster, clusterJ, -1);
+				addLink(newCluster, clusterJ, 1);
+			}
+		}
+
+		for (int r = reverseStart[customerIndx]; r < reverseStart[customerIndx + 1]; r++) {
+			int j = reverse[r];
+			int clusterJ = solution.getClusterIndex(j);
+			addLink(originalCluster, clusterJ, -1);
+			addLink(newCluster, clusterJ, 1);
+
+			// the moved customer is one of j's nearest so j's count of foreign neighbours may change
+			int delta = (isForeign(clusterJ, newCluster) ? 1 : 0) - (isForeign(clusterJ, originalCluster) ? 1 : 0);
+			if (delta != 0) {
+				setNbForeignNeighbours(j, nbForeignNeighbours[j] + delta);
+			}
+		}
+
+		setNbForeignNeighbours(customerIndx, countForeignNeighbours(customerIndx, newCluster, solution));
+	}
+
+	/**
+	 * 
+	 * @param customerIndx
+	 * @return True if at least one of the customer's K nearest neighbours is in a different cluster
+	 */
+	public boolean isBoundary(int customerIndx) {
+		return nbForeignNeighbours[customerIndx] > 0;
+	}
+
+	/**
+	 * 
+	 * @param customerIndx
+	 * @return The number of the customer's K nearest neighbours in a different cluster
+	 */
+	public int getNbForeignNeighbours(int customerIndx) {
+		return nbForeignNeighbours[customerIndx];
+	}
+
+	public int getNbBoundaryCustomers() {
+		return nbBoundaryCustomers;
+	}
+
+	/**
+	 * 
+	 * @param customerIndx
+	 * @param cluster
+	 * @param solution
+	 * @return True if one of the customer's K nearest neighbours is in the cluster
+	 */
+	public boolean hasNeighbourInCluster(int customerIndx, int cluster, ImmutableSolution solution) {
+		if (nbForeignNeighbours[customerIndx] == 0) {
+			return false;
+		}
+		for (int nn = 0; nn < k; nn++) {
+			int j = forward[customerIndx * k + nn];
+			if (j != -1 && solution.getClusterIndex(j) == cluster) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 *
+	 * @param clusterA
+	 * @param clusterB
+	 * @return The number of nearest neighbour pairs linking the two clusters (counted in both directions)
+	 */
+	public int getNbLinks(int clusterA, int clusterB) {
+		return links[clusterA].get(clusterB);
+	}
+
+	/**
+	 *
+	 * @param cluster
+	 * @return The number of other clusters linked to this one
+	 */
+	public int getNbLinkedClusters(int cluster) {
+		return links[cluster].size();
+	}
+
+	/**
+	 * Get up to max linked clusters, ordered by most links first (ties by lowest cluster index)
+	 * @param cluster
+	 * @param max
+	 * @param out Cleared before use
+	 */
+	public void getMostLinkedClusters(int cluster, int max, TIntArrayList out) {
+		out.resetQuick();
+		if (max <= 0) {
+			return;
+		}
+
+		TIntIntHashMap clusterLinks = links[cluster];
+		int nbLinked = clusterLinks.size();
+		if (workingKeys.length < nbLinked) {
+			workingKeys = new int[nbLinked];
+			workingValues = new int[nbLinked];
+		}
+		if (workingCounts.length < max) {
+			workingCounts = new int[max];
+		}
+		clusterLinks.keys(workingKeys);
+		clusterLinks.values(workingValues);
+
+		// insertion sort into a bounded list, max is small
+		int[] counts = workingCounts;
+		for (int i = 0; i < nbLinked; i++) {
+			int other = workingKeys[i];
+			int count = workingValues[i];
+			int size = out.size();
+			if (size == max && !isBetter(count, other, counts[max - 1], out.get(max - 1))) {
+				continue;
+			}
+			int pos = Math.min(size, max - 1);
+			while (pos > 0 && isBetter(count, other, counts[pos - 1], out.get(pos - 1))) {
+				pos--;
+			}
+			if (size == max) {
+				out.removeAt(max - 1);
+			}
+			out.insert(pos, other);
+			System.arraycopy(counts, pos, counts, pos + 1, max - pos - 1);
+			counts[pos] = count;
+		}
+	}
+
+	private static boolean isBetter(int count1, int cluster1, int count2, int cluster2) {
+		return count1 > count2 || (count1 == count2 && cluster1 < cluster2);
+	}
+}
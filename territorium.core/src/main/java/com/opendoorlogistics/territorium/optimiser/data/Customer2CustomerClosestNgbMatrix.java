@@ -21,4 +21,12 @@ public interface Customer2CustomerClosestNgbMatrix {
 
 	int getClusterIndexOfClosestNeighbour(ImmutableSolution solution, int customerIndex, int nearestNeighbourIndex);
 
+	/**
+	 * 
+	 * @param customerIndx
+	 * @param nearestNeighbourIndex
+	 * @return The customer index of the nearest neighbour, or -1 if the neighbour isn't in the problem
+	 */
+	int getClosestNeighbour(int customerIndx, int nearestNeighbourIndex);
+
 }
\ No newline at end of file
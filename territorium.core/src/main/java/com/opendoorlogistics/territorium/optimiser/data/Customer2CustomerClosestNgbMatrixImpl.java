@@ -39,7 +39,7 @@ public class Customer2CustomerClosestNgbMatrixImpl implements Customer2CustomerC
 			double []costs = new double[n];
 			Location from = customers.get(i).getLocation();
 			for(int j =0 ; j<n;j++){
-				costs[j] = problem.getTravelCost(-1,from, customers.get(j));
+				costs[j] = problem.getTravelCost(-1,from, j);
 			}
 			
 			tmpList.sort((k,l)->Double.compare(costs[k],costs[l]));
@@ -50,9 +50,10 @@ public class Customer2CustomerClosestNgbMatrixImpl implements Customer2CustomerC
 		}
 	}
 	
-//	public int[] getClosestNeighbours(int customerIndx){
-//		return closestNeighbours[customerIndx];
-//	}
+	@Override
+	public int getClosestNeighbour(int customerIndx, int nearestNeighbourIndex){
+		return closestNeighbours[customerIndx][nearestNeighbourIndex];
+	}
 	
 	/* (non-Javadoc)
 	 * @see com.opendoorlogistics.territorium.solver.data.Customer2CustomerClosestNgbMatrix#getNbClosestNeighbours(int)
@@ -16,7 +16,6 @@
 package com.opendoorlogistics.territorium.optimiser.data;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.opendoorlogistics.territorium.problem.Customer;
 import com.opendoorlogistics.territorium.problem.ObjectWithJSONToString;
 import com.opendoorlogistics.territorium.problem.Problem;
 import com.opendoorlogistics.territorium.problem.location.Location;
@@ -34,13 +33,12 @@ public class CustomerClusterCostMatrix extends ObjectWithJSONToString{
 		int p = clusterCentres.length;
 
 		for (int customerIndx = 0; customerIndx < nCust; customerIndx++) {
-			Customer customer = problem.getCustomers().get(customerIndx);
 			costs[customerIndx] = new double[p];
 			for (int clusterIndx = 0; clusterIndx < p; clusterIndx++) {
 				costs[customerIndx][clusterIndx] = Double.POSITIVE_INFINITY;
 				if (clusterCentres[clusterIndx] != null) {
 					costs[customerIndx][clusterIndx] = problem
-							.getTravelCost(clusterIndx,clusterCentres[clusterIndx], customer);
+							.getTravelCost(clusterIndx,clusterCentres[clusterIndx], customerIndx);
 				}
 			}
 		}
@@ -77,7 +75,7 @@ public class CustomerClusterCostMatrix extends ObjectWithJSONToString{
 		for (int customerIndx = 0; customerIndx < nCust; customerIndx++) {
 			if (location!= null) {
 				costs[customerIndx][clusterIndx] = problem
-						.getTravelCost(clusterIndx,location, problem.getCustomers().get(customerIndx));
+						.getTravelCost(clusterIndx,location, customerIndx);
 			}else{
 				costs[customerIndx][clusterIndx] = Double.POSITIVE_INFINITY;
 			}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.optimiser.data;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import gnu.trove.map.hash.TLongLongHashMap;
+
+/**
+ * Don't-look bits for the local search, stored as the {@link MutableSolution#getNbMoves()} value
+ * when a customer, or an ordered pair of clusters, was last examined without any move being accepted.
+ * A move's cost change only depends on the state of the clusters it moves between, so the local search
+ * can skip a customer or cluster pair until one of the clusters involved has changed, which it
+ * checks using {@link MutableSolution#getClusterLastMoveNb(int)}.
+ * <p>
+ * The bits are attached to a solution and only valid for the comparator and local search settings
+ * they were recorded with.
+ * @author Phil
+ *
+ */
+public class DontLookBits {
+	private final long[] customerCleanMoveNb;
+	private final TLongLongHashMap pairCleanMoveNb = new TLongLongHashMap(16, 0.5f, -1, -1);
+	private final int nbClusters;
+	private Comparator<Cost> comparator;
+	private Object searchConfig;
+
+	public DontLookBits(int nbCustomers, int nbClusters) {
+		this.customerCleanMoveNb = new long[nbCustomers];
+		this.nbClusters = nbClusters;
+		Arrays.fill(customerCleanMoveNb, -1);
+	}
+
+	/**
+	 * Clear all bits if the comparator or search config object is different to the ones they were recorded with
+	 * @param comparator
+	 * @param searchConfig
+	 */
+	public void checkContext(Comparator<Cost> comparator, Object searchConfig) {
+		if (this.comparator != comparator || this.searchConfig != searchConfig) {
+			Arrays.fill(customerCleanMoveNb, -1);
+			pairCleanMoveNb.clear();
+			this.comparator = comparator;
+			this.searchConfig = searchConfig;
+		}
+	}
+
+	/**
+	 * 
+	 * @param customerIndx
+	 * @return The move number when the customer was last examined without a move, or -1 if never
+	 */
+	public long getCustomerCleanMoveNb(int customerIndx) {
+		return customerCleanMoveNb[customerIndx];
+	}
+
+	public void setCustomerCleanMoveNb(int customerIndx, long moveNb) {
+		customerCleanMoveNb[customerIndx] = moveNb;
+	}
+
+	/**
+	 * 
+	 * @param fromCluster
+	 * @param toCluster
+	 * @return The move number when moves and swaps from the first cluster to the second were last examined
+	 *         without a move, or -1 if never
+	 */
+	public long getPairCleanMoveNb(int fromCluster, int toCluster) {
+		return pairCleanMoveNb.get((long) fromCluster * nbClusters + toCluster);
+	}
+
+	public void setPairCleanMoveNb(int fromCluster, int toCluster, long moveNb) {
+		pairCleanMoveNb.put((long) fromCluster * nbClusters + toCluster, moveNb);
+	}
+}
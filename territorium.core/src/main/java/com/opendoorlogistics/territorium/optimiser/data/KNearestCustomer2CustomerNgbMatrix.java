@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.optimiser.data;
+
+import java.util.List;
+
+import com.opendoorlogistics.territorium.optimiser.utils.BoundedMaxHeap;
+import com.opendoorlogistics.territorium.optimiser.utils.KDTree;
+import com.opendoorlogistics.territorium.problem.Customer;
+import com.opendoorlogistics.territorium.problem.Problem;
+import com.opendoorlogistics.territorium.problem.location.LatLongLocation;
+import com.opendoorlogistics.territorium.problem.location.Location;
+import com.opendoorlogistics.territorium.problem.location.XYLocation;
+
+/**
+ * Closest neighbour matrix which only holds the K closest neighbours of each customer,
+ * in a single flat int array, so memory is O(n.K) instead of O(n^2).
+ * <p>
+ * If all customers have {@link XYLocation} or all have {@link LatLongLocation}, candidates are
+ * found using a KD-tree (lat-longs are converted to 3D points on the unit sphere so straight-line
+ * distance ranks the same as great circle distance). The candidates are then re-ranked by
+ * actual travel cost. Otherwise each row of travel costs is scanned keeping the K smallest
+ * in a bounded heap, which is still O(n^2) time but avoids sorting and boxing.
+ * @author Phil
+ *
+ */
+public class KNearestCustomer2CustomerNgbMatrix implements Customer2CustomerClosestNgbMatrix {
+	/**
+	 * When using the KD-tree, how many geometric candidates we take per neighbour we keep,
+	 * to allow for travel costs not being exactly proportional to straight-line distance.
+	 */
+	private static final int CANDIDATE_MULTIPLIER = 2;
+
+	private final int k;
+	private final int[] closestNeighbours;
+
+	public KNearestCustomer2CustomerNgbMatrix(Problem problem, int k) {
+		List<Customer> customers = problem.getCustomers();
+		int n = customers.size();
+		this.k = Math.max(0, Math.min(k, n));
+		if ((long) n * this.k > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Too many nearest neighbours (" + k + ") for " + n + " customers");
+		}
+		this.closestNeighbours = new int[n * this.k];
+
+		double[] coords = getSpatialCoordinates(customers);
+		if (coords != null) {
+			buildUsingKDTree(problem, coords);
+		} else {
+			buildUsingRowSelection(problem);
+		}
+	}
+
+	/**
+	 * Get coordinates suitable for Euclidean nearest neighbour search, or null if we
+	 * don't have a consistent coordinate system
+	 * @param customers
+	 * @return
+	 */
+	private static double[] getSpatialCoordinates(List<Customer> customers) {
+		int n = customers.size();
+		boolean allXY = true;
+		boolean allLatLong = true;
+		for (Customer customer : customers) {
+			Location location = customer.getLocation();
+			allXY &= location instanceof XYLocation;
+			allLatLong &= location instanceof LatLongLocation;
+		}
+
+		if (n > 0 && allXY) {
+			double[] ret = new double[2 * n];
+			for (int i = 0; i < n; i++) {
+				XYLocation xy = (XYLocation) customers.get(i).getLocation();
+				ret[2 * i] = xy.getX();
+				ret[2 * i + 1] = xy.getY();
+			}
+			return ret;
+		}
+
+		if (n > 0 && allLatLong) {
+			double[] ret = new double[3 * n];
+			for (int i = 0; i < n; i++) {
+				LatLongLocation ll = (LatLongLocation) customers.get(i).getLocation();
+				double lat = Math.toRadians(ll.getLatitude());
+				double lng = Math.toRadians(ll.getLongitude());
+				double cosLat = Math.cos(lat);
+				ret[3 * i] = cosLat * Math.cos(lng);
+				ret[3 * i + 1] = cosLat * Math.sin(lng);
+				ret[3 * i + 2] = Math.sin(lat);
+			}
+			return ret;
+		}
+		return null;
+	}
+
+	private void buildUsingKDTree(Problem problem, double[] coords) {
+		int n = problem.getCustomers().size();
+		int dimensions = coords.length / n;
+		KDTree tree = new KDTree(dimensions, coords);
+		int nbCandidates = (int) Math.min(n, (long) k * CANDIDATE_MULTIPLIER);
+		BoundedMaxHeap candidateHeap = new BoundedMaxHeap(nbCandidates);
+		BoundedMaxHeap costHeap = new BoundedMaxHeap(k);
+		int[] candidates = new int[nbCandidates];
+		int[] tmpRow = new int[k];
+		double[] query = new double[dimensions];
+
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(coords, i * dimensions, query, 0, dimensions);
+			candidateHeap.clear();
+			tree.nearest(query, candidateHeap);
+			int nc = candidateHeap.drainAscending(candidates);
+
+			// re-rank the geometric candidates using travel cost
+			Location from = problem.getCustomers().get(i).getLocation();
+			costHeap.clear();
+			for (int c = 0; c < nc; c++) {
+				costHeap.offer(problem.getTravelCost(-1, from, candidates[c]), candidates[c]);
+			}
+			drainRow(i, costHeap, tmpRow);
+		}
+	}
+
+	private void buildUsingRowSelection(Problem problem) {
+		int n = problem.getCustomers().size();
+		BoundedMaxHeap heap = new BoundedMaxHeap(k);
+		int[] tmpRow = new int[k];
+		for (int i = 0; i < n; i++) {
+			Location from = problem.getCustomers().get(i).getLocation();
+			heap.clear();
+			for (int j = 0; j < n; j++) {
+				double cost = problem.getTravelCost(-1, from, j);
+				if (cost <= heap.getWorstKey()) {
+					heap.offer(cost, j);
+				}
+			}
+			drainRow(i, heap, tmpRow);
+		}
+	}
+
+	private void drainRow(int customerIndx, BoundedMaxHeap heap, int[] tmpRow) {
+		heap.drainAscending(tmpRow);
+		System.arraycopy(tmpRow, 0, closestNeighbours, customerIndx * k, k);
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	@Override
+	public int getClosestNeighbour(int customerIndx, int nearestNeighbourIndex) {
+		return closestNeighbours[customerIndx * k + nearestNeighbourIndex];
+	}
+
+	@Override
+	public int getNbClosestNeighbours(int customerIndx) {
+		return k;
+	}
+
+	@Override
+	public int getClusterIndexOfClosestNeighbour(ImmutableSolution solution, int customerIndex, int nearestNeighbourIndex) {
+		return solution.getClusterIndex(closestNeighbours[customerIndex * k + nearestNeighbourIndex]);
+	}
+}
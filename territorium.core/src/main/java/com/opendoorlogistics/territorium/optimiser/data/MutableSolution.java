@@ -9,11 +9,10 @@ package com.opendoorlogistics.territorium.optimiser.data;
 import java.util.ArrayList;
 import java.util.Collections;
 
-import com.opendoorlogistics.territorium.optimiser.utils.QuantityUtils;
-import com.opendoorlogistics.territorium.problem.Cluster;
-import com.opendoorlogistics.territorium.problem.Customer;
 import com.opendoorlogistics.territorium.problem.DistanceTime;
+import com.opendoorlogistics.territorium.problem.FixedCentreCostTable;
 import com.opendoorlogistics.territorium.problem.Problem;
+import com.opendoorlogistics.territorium.problem.ProblemIndex;
 import com.opendoorlogistics.territorium.problem.location.Location;
 
 import gnu.trove.list.array.TIntArrayList;
@@ -27,32 +26,32 @@ import gnu.trove.list.array.TIntArrayList;
 final public class MutableSolution implements ImmutableSolution {
 	private final Cost cost = new Cost();
 	private final Problem problem;
+	private final ProblemIndex problemIndex;
 	private final CustomerRecord[] customers;
 	private final ClusterRecord[] clusters;
+	private ClusterAdjacencyGraph clusterAdjacency;
+	private DontLookBits dontLookBits;
+	private long nbMoves;
+	private long nbMovesAtLastUpdate = -1;
 
-	private static double calcPreferredPenalty(int clusterIndex,Customer rec) {
-		int pref=rec.getPreferredClusterIndex();
-		if(pref!=-1 && pref!=clusterIndex) {
-			return rec.getPreferredClusterPenaltyCost();
-		}
-		return 0;
-	}
-	
-	
 	private class CustomerRecord {
 		private final int index;
-		private final Customer customer;
+		private final Location location;
 		private double clusterTravelCostIfCustomerIsCentre;
 		private ClusterRecord assignedCluster;
 
 		private CustomerRecord(int index) {
 			super();
 			this.index = index;
-			this.customer = problem.getCustomers().get(index);
+			this.location = problemIndex.getLocation(index);
 		}
 
 		private double getQuantity() {
-			return customer.getQuantity();
+			return problemIndex.getQuantity(index);
+		}
+
+		private double getPreferredClusterPenalty(int clusterIndex) {
+			return problemIndex.getPreferredClusterPenalty(index, clusterIndex);
 		}
 
 		private int getClusterIndx() {
@@ -74,27 +73,66 @@ final public class MutableSolution implements ImmutableSolution {
 	private class ClusterRecord {
 		private final Cost cost = new Cost();
 		private final int clusterIndex;
-		private final Cluster cluster;
+		private final Location fixedCentre;
 		private double quantity;
 		private CustomerRecord centralCustomer;
 		private ArrayList<CustomerRecord> assignedCustomers = new ArrayList<>();
 		private double fixedCentreTravelCostToCustomers;
 
+		/**
+		 * Travel costs from the fixed centre to each customer, read from the problem's
+		 * {@link FixedCentreCostTable}. Null if the centre isn't fixed or the table isn't compiled.
+		 */
+		private final double[] fixedCentreCosts;
+
+		/**
+		 * Target to centre travel cost, which is constant if the centre is fixed
+		 */
+		private final double fixedCentreTargetCost;
+
+		/**
+		 * If true the centre is approximated (see {@link ProblemIndex.ApproximateCentres}). The central customer
+		 * is then held fixed until the next {@link #updateAll()}, even if it leaves the cluster, and
+		 * approximateCentreTravelCostToCustomers is the travel cost from its location to the cluster's customers.
+		 */
+		private final boolean approximateCentre;
+		private double approximateCentreTravelCostToCustomers;
+
+		/**
+		 * Running total of the assigned customers' preferred cluster penalties
+		 */
+		private double preferredPenalty;
+
+		/**
+		 * True if customers were inserted or removed since the last {@link #updateAll()}
+		 */
+		private boolean dirty = true;
+
+		/**
+		 * Value of nbMoves when a customer last moved into or out of the cluster
+		 */
+		private long lastMoveNb;
+
 		private ClusterRecord(int id) {
 			super();
 			this.clusterIndex = id;
-			this.cluster = problem.getClusters().get(clusterIndex);
+			this.fixedCentre = problemIndex.getFixedCentre(clusterIndex);
+			FixedCentreCostTable table = problem.getFixedCentreCostTable();
+			this.fixedCentreCosts = fixedCentre != null && table != null ? table.getCosts(clusterIndex) : null;
+			this.fixedCentreTargetCost = fixedCentre != null
+					? problem.getTargetToCentreTravelCost(fixedCentre, clusterIndex, problemIndex) : 0;
+			this.approximateCentre = problemIndex.isApproximateCentre(clusterIndex);
 		}
 
 		private Location getCentre() {
 			if (isImmutableCentre()) {
-				return Cluster.getFixedCentre(cluster);
+				return fixedCentre;
 			}
-			return centralCustomer != null ? centralCustomer.customer.getLocation() : null;
+			return centralCustomer != null ? centralCustomer.location : null;
 		}
 
 		boolean isImmutableCentre() {
-			return Cluster.getFixedCentre(cluster) != null;
+			return fixedCentre != null;
 		}
 
 		@Override
@@ -105,10 +143,10 @@ final public class MutableSolution implements ImmutableSolution {
 		}
 
 		private void getCustomers(TIntArrayList out) {
-			out.clear();
+			// resetQuick keeps the list's array, clear would allocate a new one
+			out.resetQuick();
 			int n = assignedCustomers.size();
 			out.ensureCapacity(n);
-			;
 			for (int i = 0; i < n; i++) {
 				out.add(assignedCustomers.get(i).index);
 			}
@@ -116,7 +154,7 @@ final public class MutableSolution implements ImmutableSolution {
 		
 		private double getQuantityViolationChangeForQuantityChange(double quantityChange){
 			double newQuant = quantity + quantityChange;
-			double newViolation = QuantityUtils.getAbsQuantityViolation(cluster, newQuant,problem.getQuantityViolationType());
+			double newViolation = problemIndex.getAbsQuantityViolation(clusterIndex, newQuant);
 			double oldViolation = cost.getQuantityViolation();
 			
 			// check for equals to help ward off rounding error...
@@ -140,25 +178,41 @@ final public class MutableSolution implements ImmutableSolution {
 			Collections.sort(assignedCustomers, (c1,c2)->Integer.compare(c1.index, c2.index));;
 			
 			quantity = 0;
+			preferredPenalty = 0;
 			int nCustomersInCluster = assignedCustomers.size();
 			fixedCentreTravelCostToCustomers = 0;
 			for (int i = 0; i < nCustomersInCluster; i++) {
 				CustomerRecord ci = assignedCustomers.get(i);
 				quantity += ci.getQuantity();
+				preferredPenalty += ci.getPreferredClusterPenalty(clusterIndex);
 				ci.clusterTravelCostIfCustomerIsCentre = 0;
 
 				fixedCentreTravelCostToCustomers += getFixedLocationToCustomerTravelCost(ci);
 
+				if (approximateCentre) {
+					continue;
+				}
 				for (int j = 0; j < nCustomersInCluster; j++) {
 					if (i != j) {
 						CustomerRecord cj = assignedCustomers.get(j);
-						ci.clusterTravelCostIfCustomerIsCentre += problem.getTravelCost(clusterIndex,ci.customer.getLocation(),
-								cj.customer);
+						ci.clusterTravelCostIfCustomerIsCentre += problem.getTravelCost(clusterIndex,ci.location,
+								cj.index);
 					}
 				}
 			}
 
-			updateCentreAndCost();
+			// find the central customer now all sums are known
+			centralCustomer = null;
+			if (approximateCentre) {
+				updateApproximateCentre();
+			} else if (!isImmutableCentre()) {
+				for (int i = 0; i < nCustomersInCluster; i++) {
+					centralCustomer = getMoreCentral(centralCustomer, assignedCustomers.get(i));
+				}
+			}
+
+			updateCost();
+			dirty = false;
 			// assert changedCentre || isCostEqualToChecker();
 		}
 
@@ -173,39 +227,75 @@ final public class MutableSolution implements ImmutableSolution {
 
 
 		
-		private void updateCentreAndCost() {
+		/**
+		 * Choose the approximate centre as the customer with the lowest travel cost to the others, out of
+		 * a sample evenly spaced through the (sorted) customer list. The sample only depends on which
+		 * customers are assigned, so recalculating gives the same centre. All customers are tried
+		 * if there are no more than the sample size.
+		 */
+		private void updateApproximateCentre() {
+			centralCustomer = null;
+			approximateCentreTravelCostToCustomers = 0;
+			int n = assignedCustomers.size();
+			int nbCandidates = Math.min(n, problemIndex.getApproximateCentreSampleSize());
+			for (int i = 0; i < nbCandidates; i++) {
+				CustomerRecord candidate = assignedCustomers.get((int) ((long) i * n / nbCandidates));
+				double sum = 0;
+				for (int j = 0; j < n; j++) {
+					CustomerRecord other = assignedCustomers.get(j);
+					if (other != candidate) {
+						sum += problem.getTravelCost(clusterIndex, candidate.location, other.index);
+					}
+				}
+				if (centralCustomer == null || sum < approximateCentreTravelCostToCustomers) {
+					centralCustomer = candidate;
+					approximateCentreTravelCostToCustomers = sum;
+				}
+			}
+		}
+
+		/**
+		 * @param current Can be null
+		 * @param candidate
+		 * @return The candidate if it has a lower travel cost as centre than the current, otherwise the current.
+		 *         Candidates are offered in list order so ties go to the first customer in the list.
+		 */
+		private CustomerRecord getMoreCentral(CustomerRecord current, CustomerRecord candidate) {
+			if (current == null || candidate.clusterTravelCostIfCustomerIsCentre < current.clusterTravelCostIfCustomerIsCentre) {
+				return candidate;
+			}
+			return current;
+		}
+
+		/**
+		 * Update the cost from the central customer, the running totals and the quantity.
+		 * The central customer must already be set.
+		 */
+		private void updateCost() {
 			cost.setZero();
-			Cluster cluster = problem.getClusters().get(clusterIndex);
-			double preferredPenalty =0;
+			double penalty = 0;
 			if (isImmutableCentre()) {
 				// set the cost using the sum from the fixed centre
 				cost.setCost(fixedCentreTravelCostToCustomers);
+			} else if (approximateCentre) {
+				// set the travel cost using the held centre, plus preferred cluster costs
+				cost.setCost(approximateCentreTravelCostToCustomers);
+				penalty = preferredPenalty;
 			} else {
-				// find the central customer and calculate preferred cluster costs
-				centralCustomer = null;
-				int n = assignedCustomers.size();
-				for (int i = 0; i < n; i++) {
-					CustomerRecord rec = assignedCustomers.get(i);
-					if (centralCustomer == null
-							|| rec.clusterTravelCostIfCustomerIsCentre < centralCustomer.clusterTravelCostIfCustomerIsCentre) {
-						centralCustomer = rec;
-					}
-					preferredPenalty += calcPreferredPenalty(clusterIndex,rec.customer);
-				}
-
-				// set the travel cost using the central customer
+				// set the travel cost using the central customer, plus preferred cluster costs
 				if (centralCustomer != null) {
 					cost.setCost(centralCustomer.clusterTravelCostIfCustomerIsCentre);
 				}
-
+				penalty = preferredPenalty;
 			}
 
 			// Add travel cost to the reference location if set
-			Location centre = getCentre();
-			cost.setCost(cost.getCost() + problem.getTargetToCentreTravelCost(centre, cluster)+ preferredPenalty);
+			double target = isImmutableCentre() ? fixedCentreTargetCost
+					: problem.getTargetToCentreTravelCost(getCentre(), clusterIndex, problemIndex);
+			cost.setCost(cost.getCost() + target + penalty);
 
 			// Calculate capacity violation
-			cost.setQuantityViolation(QuantityUtils.getAbsQuantityViolation(cluster, quantity,problem.getQuantityViolationType()));
+			cost.setQuantityViolation(problemIndex.getAbsQuantityViolation(clusterIndex, quantity));
 
 			if (!isValidState()) {
 				throw new RuntimeException();
@@ -213,9 +303,123 @@ final public class MutableSolution implements ImmutableSolution {
 
 		}
 
+		/**
+		 * Get this cluster's cost (travel, target centre and preferred cluster costs) if the removed customer
+		 * was removed and then the added customer inserted, without changing any state. Either can be null.
+		 * This mirrors {@link #remove(CustomerRecord)} followed by {@link #insert(CustomerRecord)},
+		 * including which customer is chosen as the centre when two have equal cost.
+		 * @param removed
+		 * @param added
+		 * @return
+		 */
+		private double evaluateCostAfterChange(CustomerRecord removed, CustomerRecord added) {
+			if (isImmutableCentre()) {
+				double travel = fixedCentreTravelCostToCustomers;
+				if (removed != null) {
+					travel -= getFixedLocationToCustomerTravelCost(removed);
+				}
+				if (added != null) {
+					travel += getFixedLocationToCustomerTravelCost(added);
+				}
+				return travel + fixedCentreTargetCost;
+			}
+
+			if (approximateCentre) {
+				// the centre is held fixed unless the cluster empties or was empty
+				CustomerRecord centre = centralCustomer;
+				double travel = approximateCentreTravelCostToCustomers;
+				double penalty = preferredPenalty;
+				if (removed != null) {
+					if (assignedCustomers.size() == 1) {
+						centre = null;
+						travel = 0;
+						penalty = 0;
+					} else {
+						travel -= problem.getTravelCost(clusterIndex, centre.location, removed.index);
+						penalty -= removed.getPreferredClusterPenalty(clusterIndex);
+					}
+				}
+				if (added != null) {
+					if (centre == null) {
+						centre = added;
+					} else {
+						travel += problem.getTravelCost(clusterIndex, centre.location, added.index);
+					}
+					penalty += added.getPreferredClusterPenalty(clusterIndex);
+				}
+				Location location = centre != null ? centre.location : null;
+				return travel + problem.getTargetToCentreTravelCost(location, clusterIndex, problemIndex) + penalty;
+			}
+
+			// find the central customer using the cached sums adjusted for the change
+			CustomerRecord newCentre = null;
+			double newCentreCost = 0;
+			double preferredPenalty = 0;
+			double addedSum = 0;
+			Location addedLocation = added != null ? added.location : null;
+			int n = assignedCustomers.size();
+			for (int i = 0; i < n; i++) {
+				CustomerRecord rec = assignedCustomers.get(i);
+				if (rec == removed) {
+					continue;
+				}
+
+				double sum = rec.clusterTravelCostIfCustomerIsCentre;
+				Location location = rec.location;
+				if (removed != null) {
+					sum -= problem.getTravelCost(clusterIndex, location, removed.index);
+				}
+				if (added != null) {
+					sum += problem.getTravelCost(clusterIndex, location, added.index);
+					addedSum += problem.getTravelCost(clusterIndex, addedLocation, rec.index);
+				}
+
+				if (newCentre == null || sum < newCentreCost) {
+					newCentre = rec;
+					newCentreCost = sum;
+				}
+				preferredPenalty += rec.getPreferredClusterPenalty(clusterIndex);
+			}
+
+			// an inserted customer goes at the end of the list
+			if (added != null) {
+				if (newCentre == null || addedSum < newCentreCost) {
+					newCentre = added;
+					newCentreCost = addedSum;
+				}
+				preferredPenalty += added.getPreferredClusterPenalty(clusterIndex);
+			}
+
+			Location centre = newCentre != null ? newCentre.location : null;
+			return newCentreCost + problem.getTargetToCentreTravelCost(centre, clusterIndex, problemIndex) + preferredPenalty;
+		}
+
+		/**
+		 * Get this cluster's quantity violation after removing and / or adding a customer, without changing any state.
+		 * @param removed Can be null
+		 * @param added Can be null
+		 * @return
+		 */
+		private double evaluateQuantityViolationAfterChange(CustomerRecord removed, CustomerRecord added) {
+			double newQuantity = quantity;
+			if (removed != null) {
+				newQuantity -= removed.getQuantity();
+			}
+			if (added != null) {
+				newQuantity += added.getQuantity();
+			}
+			return problemIndex.getAbsQuantityViolation(clusterIndex, newQuantity);
+		}
+
 		private double getFixedLocationToCustomerTravelCost(CustomerRecord customer) {
-			return Cluster.getFixedCentre(cluster) != null
-					? problem.getTravelCost(clusterIndex,Cluster.getFixedCentre(cluster), customer.customer) : 0;
+			return getFixedLocationToCustomerTravelCost(customer.index);
+		}
+
+		private double getFixedLocationToCustomerTravelCost(int customerIndex) {
+			if (fixedCentreCosts != null) {
+				return fixedCentreCosts[customerIndex];
+			}
+			return fixedCentre != null ? problem.getTravelCost(clusterIndex, fixedCentre, customerIndex) : 0;
 		}
 
 		private void insert(CustomerRecord newCustomer) {
@@ -229,16 +433,29 @@ final public class MutableSolution implements ImmutableSolution {
 			newCustomer.assignedCluster = this;
 			newCustomer.clusterTravelCostIfCustomerIsCentre = 0;
 
-			// update the distances on all customer records if not using immutable centres
-			if (!isImmutableCentre()) {
+			// update the distances on all customer records if not using immutable centres,
+			// finding the new central customer in the same pass
+			if (approximateCentre) {
+				if (centralCustomer == null) {
+					centralCustomer = newCustomer;
+				} else {
+					approximateCentreTravelCostToCustomers += problem.getTravelCost(clusterIndex,
+							centralCustomer.location, newCustomer.index);
+				}
+			} else if (!isImmutableCentre()) {
+				CustomerRecord newCentre = null;
 				int n = assignedCustomers.size();
 				for (int i = 0; i < n; i++) {
 					CustomerRecord other = assignedCustomers.get(i);
-					other.clusterTravelCostIfCustomerIsCentre += problem.getTravelCost(clusterIndex,other.customer.getLocation(),
-							newCustomer.customer);
+					other.clusterTravelCostIfCustomerIsCentre += problem.getTravelCost(clusterIndex,other.location,
+							newCustomer.index);
 					newCustomer.clusterTravelCostIfCustomerIsCentre += problem
-							.getTravelCost(clusterIndex,newCustomer.customer.getLocation(), other.customer);
+							.getTravelCost(clusterIndex,newCustomer.location, other.index);
+					newCentre = getMoreCentral(newCentre, other);
 				}
+
+				// the new customer goes at the end of the list
+				centralCustomer = getMoreCentral(newCentre, newCustomer);
 			}
 
 			fixedCentreTravelCostToCustomers += getFixedLocationToCustomerTravelCost(newCustomer);
@@ -246,8 +463,10 @@ final public class MutableSolution implements ImmutableSolution {
 			// add the customer including the quantity
 			assignedCustomers.add(newCustomer);
 			quantity += newCustomer.getQuantity();
+			preferredPenalty += newCustomer.getPreferredClusterPenalty(clusterIndex);
+			dirty = true;
 
-			updateCentreAndCost();
+			updateCost();
 		}
 
 		// private double getTravelCost(CustomerRecord cluster, CustomerRecord beingServed){
@@ -275,21 +494,37 @@ final public class MutableSolution implements ImmutableSolution {
 			// remove record
 			assignedCustomers.remove(indx);
 			customer2Remove.assignedCluster = null;
+			dirty = true;
 
-			// update distances for all if not using immutable centres
+			// update distances for all if not using immutable centres, finding the new central customer in the same pass
 			customer2Remove.clusterTravelCostIfCustomerIsCentre = 0;
-			if (isImmutableCentre() == false) {
+			if (approximateCentre) {
+				if (assignedCustomers.isEmpty()) {
+					centralCustomer = null;
+					approximateCentreTravelCostToCustomers = 0;
+				} else {
+					approximateCentreTravelCostToCustomers -= problem.getTravelCost(clusterIndex,
+							centralCustomer.location, customer2Remove.index);
+				}
+			} else if (isImmutableCentre() == false) {
+				CustomerRecord newCentre = null;
 				int n = assignedCustomers.size();
 				for (int i = 0; i < n; i++) {
 					CustomerRecord other = assignedCustomers.get(i);
-					other.clusterTravelCostIfCustomerIsCentre -= problem.getTravelCost(clusterIndex,other.customer.getLocation(),
-							customer2Remove.customer);
+					other.clusterTravelCostIfCustomerIsCentre -= problem.getTravelCost(clusterIndex,other.location,
+							customer2Remove.index);
+					newCentre = getMoreCentral(newCentre, other);
 				}
+				centralCustomer = newCentre;
 			}
 
 			fixedCentreTravelCostToCustomers -= getFixedLocationToCustomerTravelCost(customer2Remove);
 
-			updateCentreAndCost();
+			// keep the penalty total exact when the cluster empties
+			preferredPenalty = assignedCustomers.isEmpty() ? 0
+					: preferredPenalty - customer2Remove.getPreferredClusterPenalty(clusterIndex);
+
+			updateCost();
 		}
 	}
 
@@ -331,12 +566,13 @@ final public class MutableSolution implements ImmutableSolution {
 	private MutableSolution(Problem problem) {
 		// allocate all objects
 		this.problem = problem;
-		this.customers = new CustomerRecord[problem.getCustomers().size()];
+		this.problemIndex = ProblemIndex.get(problem);
+		this.customers = new CustomerRecord[problemIndex.getNbCustomers()];
 		for (int i = 0; i < customers.length; i++) {
 			customers[i] = new CustomerRecord(i);
 		}
 
-		this.clusters = new ClusterRecord[problem.getClusters().size()];
+		this.clusters = new ClusterRecord[problemIndex.getNbClusters()];
 		for (int i = 0; i < clusters.length; i++) {
 			clusters[i] = new ClusterRecord(i);
 		}
@@ -397,28 +633,44 @@ final public class MutableSolution implements ImmutableSolution {
 
 	/**
 	 * Get the cost of setting the customer to the cluster. If the cluster index =-1, then customer is unloaded.
+	 * The solution is not modified, so this is safe to call concurrently from several threads as long as
+	 * nothing is modifying the solution at the same time.
 	 * 
 	 * @param customerIndx
 	 * @param newClusterIndx
 	 * @param outCostAfterSet
 	 */
 	public void evaluateSet(int customerIndx, int newClusterIndx, Cost outCostAfterSet) {
-
-		// get the customer record
 		CustomerRecord customer = customers[customerIndx];
+		ClusterRecord original = customer.assignedCluster;
+		ClusterRecord destination = newClusterIndx == -1 ? null : clusters[newClusterIndx];
 
-		// save original cluster
-		int originalClusterIndx = customer.getClusterIndx();
-
-		// set new position
-		setCustomerToCluster(customerIndx, newClusterIndx);
-
-		// add new cost to the return object
 		outCostAfterSet.set(cost);
+		if (original == destination) {
+			return;
+		}
 
-		// revert
-		setCustomerToCluster(customerIndx, originalClusterIndx);
-
+		// same order of operations as setCustomerToCluster
+		double travel = outCostAfterSet.getCost();
+		double quantityViolation = outCostAfterSet.getQuantityViolation();
+		if (original != null) {
+			travel -= original.cost.getCost();
+			quantityViolation -= original.cost.getQuantityViolation();
+		}
+		if (destination != null) {
+			travel -= destination.cost.getCost();
+			quantityViolation -= destination.cost.getQuantityViolation();
+		}
+		if (original != null) {
+			travel += original.evaluateCostAfterChange(customer, null);
+			quantityViolation += original.evaluateQuantityViolationAfterChange(customer, null);
+		}
+		if (destination != null) {
+			travel += destination.evaluateCostAfterChange(null, customer);
+			quantityViolation += destination.evaluateQuantityViolationAfterChange(null, customer);
+		}
+		outCostAfterSet.setCost(travel);
+		outCostAfterSet.setQuantityViolation(quantityViolation);
 	}
 
 
@@ -445,70 +697,73 @@ final public class MutableSolution implements ImmutableSolution {
 			throw new RuntimeException("Can only swap customers already on customers");
 		}
 
-		Customer customer1 = problem.getCustomers().get(customerIndx1);
-		Customer customer2 = problem.getCustomers().get(customerIndx2);
+		double quantity1 = problemIndex.getQuantity(customerIndx1);
+		double quantity2 = problemIndex.getQuantity(customerIndx2);
 
 		ClusterRecord originalClustObj4Cust1 = clusters[originalClustIndx4Cust1];
 		ClusterRecord originalClustObj4Cust2 = clusters[originalClustIndx4Cust2];
 		
 		// get change in quantity violation
 		double quantViolation = outCost.getQuantityViolation();
-		quantViolation += originalClustObj4Cust1.getQuantityViolationChangeForQuantityChange(customer2.getQuantity() - customer1.getQuantity());
-		quantViolation += originalClustObj4Cust2.getQuantityViolationChangeForQuantityChange(customer1.getQuantity() - customer2.getQuantity());
+		quantViolation += originalClustObj4Cust1.getQuantityViolationChangeForQuantityChange(quantity2 - quantity1);
+		quantViolation += originalClustObj4Cust2.getQuantityViolationChangeForQuantityChange(quantity1 - quantity2);
 		outCost.setQuantityViolation(quantViolation);
 		
 		// get change in travel cost
 		double travelCost = outCost.getCost();
-		travelCost -= getCostWithCentreUnchanged( customer1, originalClustObj4Cust1);
+		travelCost -= getCostWithCentreUnchanged( customerIndx1, originalClustObj4Cust1);
 		
-		travelCost -= getCostWithCentreUnchanged( customer2, originalClustObj4Cust2);
+		travelCost -= getCostWithCentreUnchanged( customerIndx2, originalClustObj4Cust2);
 	
-		travelCost += getCostWithCentreUnchanged( customer2, originalClustObj4Cust1);
+		travelCost += getCostWithCentreUnchanged( customerIndx2, originalClustObj4Cust1);
 				
-		travelCost += getCostWithCentreUnchanged( customer1, originalClustObj4Cust2);
+		travelCost += getCostWithCentreUnchanged( customerIndx1, originalClustObj4Cust2);
 				
 		outCost.setCost(travelCost);
 		
 	}
 
-	private double getCostWithCentreUnchanged( Customer customer,
+	private double getCostWithCentreUnchanged( int customerIndx,
 			ClusterRecord clusterRec) {
-		return problem.getTravelCost(clusterRec.clusterIndex,clusterRec.getCentre(), customer)
-				+ calcPreferredPenalty(clusterRec.clusterIndex,customer);
+		double travel = clusterRec.isImmutableCentre() ? clusterRec.getFixedLocationToCustomerTravelCost(customerIndx)
+				: problem.getTravelCost(clusterRec.clusterIndex, clusterRec.getCentre(), customerIndx);
+		return travel + customers[customerIndx].getPreferredClusterPenalty(clusterRec.clusterIndex);
 	}
 
 	/**
-	 * Evaluate the swap between 2 customers currently on clusters
+	 * Evaluate the swap between 2 customers currently on clusters.
+	 * The solution is not modified, see {@link #evaluateSet(int, int, Cost)}.
 	 * 
 	 * @param customerIndx1
 	 * @param customerIndx2
 	 * @param outCostAfterSwap
 	 */
 	public void evaluateSwap(int customerIndx1, int customerIndx2, Cost outCostAfterSwap) {
+		CustomerRecord customer1 = customers[customerIndx1];
+		CustomerRecord customer2 = customers[customerIndx2];
+		ClusterRecord cluster1 = customer1.assignedCluster;
+		ClusterRecord cluster2 = customer2.assignedCluster;
 
-		// get current clusters
-		int originalCluster1 = customers[customerIndx1].getClusterIndx();
-		int originalCluster2 = customers[customerIndx2].getClusterIndx();
-		if (originalCluster1 == originalCluster2) {
-			outCostAfterSwap.set(cost);
+		outCostAfterSwap.set(cost);
+		if (cluster1 == cluster2) {
 			return;
 		}
 
-		if (originalCluster1 == -1 || originalCluster2 == -1) {
+		if (cluster1 == null || cluster2 == null) {
 			throw new RuntimeException();
 		}
 
-		// swap
-		setCustomerToCluster(customerIndx1, originalCluster2);
-		setCustomerToCluster(customerIndx2, originalCluster1);
-
-		// set new cost to the return object
-		outCostAfterSwap.set(cost);
+		double travel = outCostAfterSwap.getCost() - cluster1.cost.getCost() - cluster2.cost.getCost();
+		travel += cluster1.evaluateCostAfterChange(customer1, customer2);
+		travel += cluster2.evaluateCostAfterChange(customer2, customer1);
 
-		// finally revert
-		setCustomerToCluster(customerIndx1, originalCluster1);
-		setCustomerToCluster(customerIndx2, originalCluster2);
+		double quantityViolation = outCostAfterSwap.getQuantityViolation() - cluster1.cost.getQuantityViolation()
+				- cluster2.cost.getQuantityViolation();
+		quantityViolation += cluster1.evaluateQuantityViolationAfterChange(customer1, customer2);
+		quantityViolation += cluster2.evaluateQuantityViolationAfterChange(customer2, customer1);
 
+		outCostAfterSwap.setCost(travel);
+		outCostAfterSwap.setQuantityViolation(quantityViolation);
 	}
 
 	/*
@@ -580,6 +835,7 @@ final public class MutableSolution implements ImmutableSolution {
 			// do nothing
 			return;
 		}
+		nbMoves++;
 
 		// // check we're not moving a fixed centre to a different cluster
 		// int fixedClusterIndx = problem.getFixedClusterIndexByLocationIndex(customerIndx);
@@ -590,9 +846,11 @@ final public class MutableSolution implements ImmutableSolution {
 		// remove costs of involved clusters
 		if (original != null) {
 			cost.subtract(original.cost);
+			original.lastMoveNb = nbMoves;
 		}
 		if (destination != null) {
 			cost.subtract(destination.cost);
+			destination.lastMoveNb = nbMoves;
 		}
 
 		// remove if needed
@@ -613,6 +871,10 @@ final public class MutableSolution implements ImmutableSolution {
 			cost.add(destination.cost);
 		}
 
+		if (clusterAdjacency != null) {
+			clusterAdjacency.customerMoved(customerIndx, original != null ? original.clusterIndex : -1, cluster, this);
+		}
+
 		// debugCheck();
 
 	}
@@ -658,17 +920,63 @@ final public class MutableSolution implements ImmutableSolution {
 	 * cost can change.
 	 */
 	public void update() {
+		// Recalculating an unchanged cluster gives exactly the same values, so only changed clusters are recalculated
+		if (nbMoves == nbMovesAtLastUpdate) {
+			return;
+		}
+		update(false);
+	}
+
+	/**
+	 * Recalculate all clusters from scratch, even those which haven't changed since the last update
+	 */
+	public void forceUpdate() {
+		update(true);
+	}
+
+	private void update(boolean all) {
 		// assert countImmutableCentres()==0 || saveCostChecker();
 
 		cost.setZero();
 		for (ClusterRecord cluster : clusters) {
-			cluster.updateAll();
+			if (all || cluster.dirty) {
+				cluster.updateAll();
+			}
 			cost.add(cluster.cost);
 		}
+		nbMovesAtLastUpdate = nbMoves;
 
 		// assert countImmutableCentres()==0 ||isCostEqualToChecker();
 	}
 
+	/**
+	 * 
+	 * @return The number of times a customer has changed cluster since the solution was created. Can be used to
+	 *         check if the solution has changed.
+	 */
+	public long getNbMoves() {
+		return nbMoves;
+	}
+
+	/**
+	 * 
+	 * @return True if no customers have moved since the last update, so the cost, centres and quantities
+	 *         are the same as those of a new solution created from the assignment
+	 */
+	public boolean isUpdated() {
+		return nbMoves == nbMovesAtLastUpdate;
+	}
+
+	/**
+	 * 
+	 * @param clusterIndx
+	 * @return The value of {@link #getNbMoves()} when a customer last moved into or out of the cluster,
+	 *         or 0 if none have since the solution was created
+	 */
+	public long getClusterLastMoveNb(int clusterIndx) {
+		return clusters[clusterIndx].lastMoveNb;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
@@ -733,6 +1041,39 @@ final public class MutableSolution implements ImmutableSolution {
 		return ret;
 	}
 
+	/**
+	 * 
+	 * @return The attached cluster adjacency graph or null if none
+	 */
+	public ClusterAdjacencyGraph getClusterAdjacency() {
+		return clusterAdjacency;
+	}
+
+	/**
+	 * Attach a cluster adjacency graph built for this solution, which is then updated on every move.
+	 * It is not copied when the solution is copied.
+	 * @param clusterAdjacency Can be null
+	 */
+	public void setClusterAdjacency(ClusterAdjacencyGraph clusterAdjacency) {
+		this.clusterAdjacency = clusterAdjacency;
+	}
+
+	/**
+	 * 
+	 * @return The attached local search don't-look bits or null if none
+	 */
+	public DontLookBits getDontLookBits() {
+		return dontLookBits;
+	}
+
+	/**
+	 * Attach don't-look bits for this solution. They are not copied when the solution is copied.
+	 * @param dontLookBits Can be null
+	 */
+	public void setDontLookBits(DontLookBits dontLookBits) {
+		this.dontLookBits = dontLookBits;
+	}
+
 	@Override
 	public Problem getProblem() {
 		return problem;
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.optimiser.data;
+
+import java.util.Arrays;
+
+import com.opendoorlogistics.territorium.problem.Problem;
+import com.opendoorlogistics.territorium.problem.location.Location;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Compact read-only copy of a solution: the customer to cluster assignment, the customers of each
+ * cluster and each cluster's cached cost, centre and quantity. Taking a snapshot is O(n + p) and doesn't
+ * recalculate anything, unlike copying to a new {@link MutableSolution} which rebuilds every cluster.
+ * Snapshots never change so they can be shared freely (e.g. between solution bank slots).
+ * Create a {@link MutableSolution} from the snapshot when search needs to resume from it.
+ * @author Phil
+ *
+ */
+public final class SolutionSnapshot implements ImmutableSolution {
+	private final Problem problem;
+	private final int[] customersToClusters;
+	private final Cost cost;
+	private final Cost[] clusterCosts;
+	private final Location[] clusterCentres;
+	private final double[] clusterQuantities;
+
+	/** Customers of each cluster in index order, stored in CSR format */
+	private final int[] clusterStart;
+	private final int[] clusterCustomers;
+	private final int nbUnassigned;
+
+	/**
+	 * Snapshot the solution. A {@link MutableSolution} with customer moves since its last update is
+	 * first copied, so the snapshot has the same values as a new solution created from the assignment.
+	 * @param solution
+	 */
+	public SolutionSnapshot(ImmutableSolution solution) {
+		if (solution instanceof MutableSolution && !((MutableSolution) solution).isUpdated()) {
+			solution = new MutableSolution(solution);
+		}
+
+		problem = solution.getProblem();
+		customersToClusters = solution.getCustomersToClusters();
+		cost = new Cost(solution.getCost());
+
+		int p = problem.getClusters().size();
+		clusterCosts = new Cost[p];
+		clusterCentres = new Location[p];
+		clusterQuantities = new double[p];
+		for (int i = 0; i < p; i++) {
+			clusterCosts[i] = new Cost(solution.getClusterCost(i));
+			clusterCentres[i] = solution.getClusterCentre(i);
+			clusterQuantities[i] = solution.getClusterQuantity(i);
+		}
+
+		// count then fill, giving each cluster's customers in index order
+		clusterStart = new int[p + 1];
+		int unassigned = 0;
+		for (int cluster : customersToClusters) {
+			if (cluster >= 0) {
+				clusterStart[cluster + 1]++;
+			} else {
+				unassigned++;
+			}
+		}
+		nbUnassigned = unassigned;
+		for (int i = 0; i < p; i++) {
+			clusterStart[i + 1] += clusterStart[i];
+		}
+		clusterCustomers = new int[clusterStart[p]];
+		int[] next = Arrays.copyOf(clusterStart, p);
+		for (int i = 0; i < customersToClusters.length; i++) {
+			int cluster = customersToClusters[i];
+			if (cluster >= 0) {
+				clusterCustomers[next[cluster]++] = i;
+			}
+		}
+	}
+
+	/**
+	 * Snapshot the solution, or return it if it's already a snapshot
+	 * @param solution
+	 * @return
+	 */
+	public static SolutionSnapshot of(ImmutableSolution solution) {
+		return solution instanceof SolutionSnapshot ? (SolutionSnapshot) solution : new SolutionSnapshot(solution);
+	}
+
+	@Override
+	public Problem getProblem() {
+		return problem;
+	}
+
+	@Override
+	public int getClusterIndex(int customerIndx) {
+		return customersToClusters[customerIndx];
+	}
+
+	@Override
+	public int getCustomer(int clusterIndx, int indx) {
+		return clusterCustomers[clusterStart[clusterIndx] + indx];
+	}
+
+	@Override
+	public int getNbCustomers(int clusterIndx) {
+		return clusterStart[clusterIndx + 1] - clusterStart[clusterIndx];
+	}
+
+	@Override
+	public void getCustomers(int clusterIndx, TIntArrayList out) {
+		out.resetQuick();
+		int start = clusterStart[clusterIndx];
+		out.add(clusterCustomers, start, clusterStart[clusterIndx + 1] - start);
+	}
+
+	@Override
+	public int[] getCustomersToClusters() {
+		return customersToClusters.clone();
+	}
+
+	@Override
+	public Cost getCost() {
+		return cost;
+	}
+
+	@Override
+	public Location getClusterCentre(int i) {
+		return clusterCentres[i];
+	}
+
+	@Override
+	public Location[] getClusterCentres() {
+		return clusterCentres.clone();
+	}
+
+	@Override
+	public double getClusterQuantity(int clusterIndx) {
+		return clusterQuantities[clusterIndx];
+	}
+
+	@Override
+	public Cost getClusterCost(int clusterIndx) {
+		return clusterCosts[clusterIndx];
+	}
+
+	@Override
+	public int getNbUnassignedCustomers() {
+		return nbUnassigned;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(cost.toString() + System.lineSeparator());
+		for (int i = 0; i < clusterCentres.length; i++) {
+			builder.append("Cluster " + i + ", quantity " + clusterQuantities[i] + ", centre " + clusterCentres[i]
+					+ ", customers " + getNbCustomers(i) + System.lineSeparator());
+		}
+		return builder.toString();
+	}
+}
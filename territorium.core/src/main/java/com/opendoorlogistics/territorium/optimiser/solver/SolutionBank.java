@@ -22,7 +22,7 @@ import java.util.Random;
 
 import com.opendoorlogistics.territorium.optimiser.data.Cost;
 import com.opendoorlogistics.territorium.optimiser.data.ImmutableSolution;
-import com.opendoorlogistics.territorium.optimiser.data.MutableSolution;
+import com.opendoorlogistics.territorium.optimiser.data.SolutionSnapshot;
 import com.opendoorlogistics.territorium.optimiser.solver.SearchComponentsTags.TagType;
 import com.opendoorlogistics.territorium.problem.Problem;
 
@@ -30,6 +30,8 @@ import com.opendoorlogistics.territorium.problem.Problem;
  * Bank of solutions. 
  * Stores a main solution and optional alternate solutions if alternate optimisation comparators are enabled.
  * Only accepts new solutions if they are definitely improving (i.e. beyond error tolerance).
+ * Accepted solutions are held as {@link SolutionSnapshot}s, shared between slots and banks.
+ * Thread-safe, so a single bank can be shared by parallel islands.
  * @author Phil
  *
  */
@@ -38,7 +40,7 @@ public class SolutionBank {
 	private final Random random;
 	private final CostComparatorWithTags standardComparator;
 	private final List<CostComparatorWithTags> altComparators = new ArrayList<>();
-	private final MutableSolution[] solutions;
+	private final SolutionSnapshot[] solutions;
 	private final SearchComponentsTags[] sources;
 	private final long [] solutionNb;
 	
@@ -123,7 +125,7 @@ public class SolutionBank {
 		}
 		
 		int n = getNbSolutionSlots();
-		solutions = new MutableSolution[n];
+		solutions = new SolutionSnapshot[n];
 		sources = new SearchComponentsTags[n];
 		solutionNb = new long[n];
 		for(int i =0 ; i<n;i++){
@@ -132,19 +134,20 @@ public class SolutionBank {
 	}
 
 	/**
-	 * Accepts the solution if better, taking a deep copy
+	 * Accepts the solution if better, taking a snapshot of it (or sharing it if it's already a snapshot)
 	 * 
 	 * @param newSol
 	 * @param sourceSlot
 	 *            Source slot index if a source slot was used. -1 if not.
 	 * @return The number of slots which were improved
 	 */
-	public int accept(ImmutableSolution newSol, SearchComponentsTags source) {
+	public synchronized int accept(ImmutableSolution newSol, SearchComponentsTags source) {
 		if(newSol.getNbUnassignedCustomers()>0){
 			throw new RuntimeException("Never add a solution to the bank with unassigned customers");
 		}
 		
 		int nbImproved = 0;
+		SolutionSnapshot snapshot = null;
 		for (int i = 0; i < getNbSolutionSlots(); i++) {
 			ImmutableSolution existing = solutions[i];
 			boolean accept = existing == null;
@@ -159,8 +162,11 @@ public class SolutionBank {
 			}
 
 			if (accept) {
-				// take deep copy...
-				solutions[i] = new MutableSolution(problem, newSol.getCustomersToClusters());
+				// snapshot once, sharing it between all accepting slots
+				if (snapshot == null) {
+					snapshot = SolutionSnapshot.of(newSol);
+				}
+				solutions[i] = snapshot;
 				sources[i] = new SearchComponentsTags(source);
 				solutionNb[i] = solutionNb[i]+1;
 			}
@@ -183,11 +189,11 @@ public class SolutionBank {
 	 * @param i
 	 * @return
 	 */
-	public ImmutableSolution getSolutionSlot(int i) {
+	public synchronized ImmutableSolution getSolutionSlot(int i) {
 		return solutions[i];
 	}
 
-	public ImmutableSolution getStandardSol() {
+	public synchronized ImmutableSolution getStandardSol() {
 		return solutions[0];
 	}
 	
@@ -195,11 +201,11 @@ public class SolutionBank {
 		return standardComparator;
 	}
 
-	public long getStandardSolutionNb(){
+	public synchronized long getStandardSolutionNb(){
 		return solutionNb[0];
 	}
 	
-	public String toSingleLineSummary() {
+	public synchronized String toSingleLineSummary() {
 		StringBuilder builder = new StringBuilder();
 		for (int i = 0; i < getNbSolutionSlots(); i++) {
 			if (i > 0) {
@@ -215,7 +221,7 @@ public class SolutionBank {
 		return builder.toString();
 	}
 	
-	public SearchComponentsTags getSource(int i){
+	public synchronized SearchComponentsTags getSource(int i){
 		return sources[i];
 	}
 }
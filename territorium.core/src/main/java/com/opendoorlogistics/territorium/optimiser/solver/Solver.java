@@ -21,45 +21,115 @@ import java.util.DoubleSummaryStatistics;
 import java.util.List;
 import java.util.Random;
 import java.util.Stack;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import com.opendoorlogistics.territorium.optimiser.components.LocalSearch;
+import com.opendoorlogistics.territorium.optimiser.components.MinCostFlowCustomerAssignment;
 import com.opendoorlogistics.territorium.optimiser.components.ProblemSplitter;
 import com.opendoorlogistics.territorium.optimiser.components.RandomisedCentreSelector;
 import com.opendoorlogistics.territorium.optimiser.components.RandomisedWeightBasedCustomerAssignment;
 import com.opendoorlogistics.territorium.optimiser.components.Ruin;
+import com.opendoorlogistics.territorium.optimiser.components.RuinStatistics;
 import com.opendoorlogistics.territorium.optimiser.components.ProblemSplitter.Subproblem;
 import com.opendoorlogistics.territorium.optimiser.data.Cost;
+import com.opendoorlogistics.territorium.optimiser.data.Customer2CustomerClosestNgbMatrix;
 import com.opendoorlogistics.territorium.optimiser.data.Customer2CustomerClosestNgbMatrixImpl;
 import com.opendoorlogistics.territorium.optimiser.data.ImmutableSolution;
+import com.opendoorlogistics.territorium.optimiser.data.KNearestCustomer2CustomerNgbMatrix;
 import com.opendoorlogistics.territorium.optimiser.data.MutableSolution;
 import com.opendoorlogistics.territorium.optimiser.solver.ContinueCallback.ContinueOption;
 import com.opendoorlogistics.territorium.optimiser.solver.SearchComponentsTags.TagType;
+import com.opendoorlogistics.territorium.problem.FixedCentreCostTable;
 import com.opendoorlogistics.territorium.problem.Problem;
+import com.opendoorlogistics.territorium.problem.ProblemIndex;
+import com.opendoorlogistics.territorium.problem.ProblemIndex.ApproximateCentres;
+import com.opendoorlogistics.territorium.problem.TravelCostMatrix;
+import com.opendoorlogistics.territorium.problem.location.Location;
 import com.opendoorlogistics.territorium.utils.Pair;
 
 public class Solver {
+	/**
+	 * How often the calling thread polls the continue callback when work is running on other threads
+	 */
+	private static final long CALLBACK_POLL_INTERVAL_MILLIS = 100;
+
 	private final Problem problem;
 	private final SolverConfig config;
 	private final ContinueCallback continueCallback;
 	private final Random random;
-	private final Customer2CustomerClosestNgbMatrixImpl customer2CustomerClosestNgbMatrix;
+	private final Customer2CustomerClosestNgbMatrix customer2CustomerClosestNgbMatrix;
 	private final LocalSearch localSearch;
 	private final Ruin ruin;
+	private final RuinStatistics ruinStatistics;
 
 	public Solver(Problem problem, SolverConfig config, ContinueCallback continueCallback, Random random) {
+		this(prepareProblem(problem, config), config, continueCallback, random, null, null);
+	}
+
+	/**
+	 * Constructor used directly for islands, which share the problem and closest neighbour matrix
+	 * (both read-only during the search) but have their own random, ruin and local search.
+	 * @param problem
+	 * @param config
+	 * @param continueCallback
+	 * @param random
+	 * @param customer2CustomerClosestNgbMatrix Created if null
+	 * @param ruinStatistics Shared ruin statistics, created if null
+	 */
+	private Solver(Problem problem, SolverConfig config, ContinueCallback continueCallback, Random random,
+			Customer2CustomerClosestNgbMatrix customer2CustomerClosestNgbMatrix, RuinStatistics ruinStatistics) {
 		this.problem = problem;
 		this.config = config;
 		this.continueCallback = continueCallback;
 		this.random = random;
 
-		ruin = new Ruin(problem, config.getRuinConfig(), random);
-		customer2CustomerClosestNgbMatrix = new Customer2CustomerClosestNgbMatrixImpl(problem);
+		this.customer2CustomerClosestNgbMatrix = customer2CustomerClosestNgbMatrix != null
+				? customer2CustomerClosestNgbMatrix : createClosestNgbMatrix(problem, config);
+		ruin = new Ruin(problem, config.getRuinConfig(), random, this.customer2CustomerClosestNgbMatrix, ruinStatistics);
+		this.ruinStatistics = ruin.getStatistics();
 		localSearch = new LocalSearch(this.problem, this.config.getLocalSearchConfig(), this.customer2CustomerClosestNgbMatrix,
 				this.random);
 
 	}
 
+	private static Problem prepareProblem(Problem problem, SolverConfig config) {
+		// compile onto a shallow copy so we don't modify the caller's problem object
+		problem = new Problem(problem);
+		problem.setProblemIndex(ProblemIndex.compile(problem,
+				config.isApproximateCentres() ? ApproximateCentres.ALL : ApproximateCentres.PER_CLUSTER,
+				config.getApproximateCentreSampleSize()));
+		if (config.isPrecompileTravelCosts() && problem.getTravelCostMatrix() == null) {
+			problem.setTravelCostMatrix(TravelCostMatrix.compile(problem));
+		}
+		if (config.isPrecompileFixedCentreCosts() && problem.getFixedCentreCostTable() == null) {
+			problem.setFixedCentreCostTable(FixedCentreCostTable.compile(problem));
+		}
+		return problem;
+	}
+
+	/**
+	 * Use the full closest neighbour matrix for small problems and a sparse K-nearest one for large
+	 * @param problem
+	 * @param config
+	 * @return
+	 */
+	public static Customer2CustomerClosestNgbMatrix createClosestNgbMatrix(Problem problem, SolverConfig config) {
+		if (problem.getCustomers().size() > config.getSparseNearestNeighboursThreshold()) {
+			return new KNearestCustomer2CustomerNgbMatrix(problem, config.getNbNearestNeighbours());
+		}
+		return new Customer2CustomerClosestNgbMatrixImpl(problem);
+	}
+
 //	/**
 //	 * @return
 //	 */
@@ -107,12 +177,29 @@ public class Solver {
 
 	}
 
+	/**
+	 * Whether new solutions for the problem should be assigned using {@link MinCostFlowCustomerAssignment}
+	 * @param problem A problem with a compiled problem index
+	 * @param config
+	 * @return
+	 */
+	public static boolean isMinCostFlowAssignment(Problem problem, SolverConfig config) {
+		return config.isMinCostFlowAssignment() || (config.isMinCostFlowAssignmentForFixedCentres()
+				&& ProblemIndex.get(problem).hasOnlyFixedCentres());
+	}
+
 	public synchronized MutableSolution constructRandWeightBasedPlusLocalSearchSingleStepSol(Comparator<Cost> comparator) {
 		MutableSolution newSol;
-		// construct using rand weight
-		int[] initialAssigned = new RandomisedWeightBasedCustomerAssignment(problem, config.getWeightBasedAssigner(),
-				random).run(new RandomisedCentreSelector(problem, random, config.getCentreSelector()).run(null, null),
-						null);
+		// construct using random centres and then rand weight or min cost flow assignment
+		Location[] centres = new RandomisedCentreSelector(problem, random, config.getCentreSelector()).run(null, null);
+		int[] initialAssigned;
+		if (isMinCostFlowAssignment(problem, config)) {
+			initialAssigned = new MinCostFlowCustomerAssignment(problem, config.getMinCostFlowAssigner()).run(centres,
+					null);
+		} else {
+			initialAssigned = new RandomisedWeightBasedCustomerAssignment(problem, config.getWeightBasedAssigner(),
+					random).run(centres, null);
+		}
 		newSol = new MutableSolution(problem, initialAssigned);
 
 		// clean up with local search...
@@ -191,15 +278,165 @@ public class Solver {
 		}
 
 		if(!greedy){
-			while (state.isContinue() && state.nbOuterSteps < config.getNbOuterSteps()) {
-				runSingleOuterStep(state);
-				state.nbOuterSteps++;
-			}			
+			if (config.getNbIslands() > 1) {
+				runIslands(state);
+			} else {
+				while (state.isContinue() && state.nbOuterSteps < config.getNbOuterSteps()) {
+					runSingleOuterStep(state);
+					state.nbOuterSteps++;
+				}
+			}
 		}
 
+		if (problem.getProblemIndex().hasApproximateCentres()) {
+			return polishWithExactCentres(state, state.getBestSolution());
+		}
 		return state.getBestSolution();
 	}
 
+	/**
+	 * Recalculate the solution using exact centres for all clusters and, unless the solver has been stopped,
+	 * run local search with exact centres until a local optimum
+	 * @param state
+	 * @param solution
+	 * @return
+	 */
+	private ImmutableSolution polishWithExactCentres(SolverStateSummaryImpl state, ImmutableSolution solution) {
+		Problem exactProblem = new Problem(problem);
+		exactProblem.setProblemIndex(ProblemIndex.compile(exactProblem, ApproximateCentres.NONE,
+				config.getApproximateCentreSampleSize()));
+		MutableSolution ret = new MutableSolution(exactProblem, solution.getCustomersToClusters());
+		if (state.isContinue()) {
+			state.push("Polishing with exact centres");
+			LocalSearch exactLocalSearch = new LocalSearch(exactProblem, config.getLocalSearchConfig(),
+					customer2CustomerClosestNgbMatrix, random);
+			runUntilLocalOptimum(state, state.bank.getStandardComparator(), exactLocalSearch, ret, null);
+			state.pop();
+		}
+		return ret;
+	}
+
+	/**
+	 * Run the outer steps on several islands in parallel, one thread per island. Each island is a separate
+	 * solver with its own random, ruin, local search and solution bank. Islands regularly send their
+	 * solutions to the shared bank and take back its solutions, so good solutions found on one island
+	 * spread to the others. The outer step limit is shared between all islands.
+	 * The continue callback is only ever called from the calling thread.
+	 * Results are not reproducible between runs as they depend on thread timings.
+	 * @param state
+	 */
+	private void runIslands(SolverStateSummaryImpl state) {
+		int nbIslands = config.getNbIslands();
+		AtomicLong nbStepsStarted = new AtomicLong(state.nbOuterSteps);
+		AtomicLong nbStepsCompleted = new AtomicLong(state.nbOuterSteps);
+		AtomicBoolean stop = new AtomicBoolean();
+		ContinueCallback islandCallback = s -> stop.get() ? ContinueOption.FINISH_NOW : ContinueOption.KEEP_GOING;
+
+		state.push("Searching using " + nbIslands + " islands");
+		AtomicInteger threadNb = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(nbIslands, r -> {
+			Thread thread = new Thread(r, "territorium-island-" + threadNb.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < nbIslands; i++) {
+				Solver island = new Solver(problem, config, islandCallback, new Random(random.nextLong()),
+						customer2CustomerClosestNgbMatrix, ruinStatistics);
+				futures.add(executor.submit(() -> island.runIsland(state, nbStepsStarted, nbStepsCompleted)));
+			}
+
+			waitForTasks(futures, state, stop, () -> state.nbOuterSteps = nbStepsCompleted.get());
+		} finally {
+			stop.set(true);
+			executor.shutdown();
+		}
+
+		state.nbOuterSteps = nbStepsCompleted.get();
+		state.pop();
+	}
+
+	/**
+	 * Wait for tasks running on other threads to finish. While waiting the continue callback is polled
+	 * from this thread and the stop flag is set if it says to stop; the tasks should check the flag.
+	 * @param futures
+	 * @param state
+	 * @param stop
+	 * @param beforePoll Called before each poll of the continue callback, can be null
+	 */
+	private static void waitForTasks(List<? extends Future<?>> futures, SolverStateSummaryImpl state, AtomicBoolean stop,
+			Runnable beforePoll) {
+		try {
+			for (Future<?> future : futures) {
+				while (true) {
+					try {
+						future.get(CALLBACK_POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+						break;
+					} catch (TimeoutException e) {
+						if (beforePoll != null) {
+							beforePoll.run();
+						}
+						if (!stop.get() && !state.isContinue()) {
+							stop.set(true);
+						}
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			stop.set(true);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			stop.set(true);
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Run outer steps on this solver, as an island, until the shared step limit is reached or we're told to stop
+	 * @param shared
+	 * @param nbStepsStarted
+	 * @param nbStepsCompleted
+	 */
+	private synchronized void runIsland(SolverStateSummaryImpl shared, AtomicLong nbStepsStarted, AtomicLong nbStepsCompleted) {
+		SolverStateSummaryImpl state = new SolverStateSummaryImpl(
+				new SolutionBank(config.getSolutionBankConfig(), problem, random), shared.outerStepTimingsSecs);
+		exchangeSolutions(shared.bank, state.bank);
+
+		int migrationInterval = Math.max(1, config.getIslandMigrationInterval());
+		while (state.isContinue() && nbStepsStarted.getAndIncrement() < config.getNbOuterSteps()) {
+			runSingleOuterStep(state);
+			state.nbOuterSteps++;
+			nbStepsCompleted.incrementAndGet();
+			if (state.nbOuterSteps % migrationInterval == 0) {
+				exchangeSolutions(shared.bank, state.bank);
+			}
+		}
+
+		exchangeSolutions(shared.bank, state.bank);
+	}
+
+	/**
+	 * Send the island's solutions to the shared bank and then take back the shared bank's solutions
+	 * @param shared
+	 * @param island
+	 */
+	private static void exchangeSolutions(SolutionBank shared, SolutionBank island) {
+		for (int i = 0; i < island.getNbSolutionSlots(); i++) {
+			ImmutableSolution sol = island.getSolutionSlot(i);
+			if (sol != null) {
+				shared.accept(sol, island.getSource(i));
+			}
+		}
+
+		for (int i = 0; i < shared.getNbSolutionSlots(); i++) {
+			ImmutableSolution sol = shared.getSolutionSlot(i);
+			if (sol != null) {
+				island.accept(sol, shared.getSource(i));
+			}
+		}
+	}
+
 	/**
 	 * @return
 	 */
@@ -210,10 +447,26 @@ public class Solver {
 	private class SolverStateSummaryImpl implements SolverStateSummary {
 		final SolutionBank bank;
 		private boolean keepGoing = true;
-		private DoubleSummaryStatistics outerStepTimingsSecs = new DoubleSummaryStatistics();
+
+		/**
+		 * Shared between islands, so always synchronise on it
+		 */
+		private final DoubleSummaryStatistics outerStepTimingsSecs;
+
+		private final ContinueCallback callback;
 
 		SolverStateSummaryImpl(SolutionBank bank) {
+			this(bank, new DoubleSummaryStatistics());
+		}
+
+		SolverStateSummaryImpl(SolutionBank bank, DoubleSummaryStatistics outerStepTimingsSecs) {
+			this(bank, outerStepTimingsSecs, continueCallback);
+		}
+
+		SolverStateSummaryImpl(SolutionBank bank, DoubleSummaryStatistics outerStepTimingsSecs, ContinueCallback callback) {
 			this.bank = bank;
+			this.outerStepTimingsSecs = outerStepTimingsSecs;
+			this.callback = callback;
 		}
 
 		long nbOuterSteps;
@@ -247,8 +500,8 @@ public class Solver {
 				return false;
 			}
 
-			if (continueCallback != null) {
-				keepGoing = continueCallback.continueOptimisation(this) == ContinueOption.KEEP_GOING;
+			if (callback != null) {
+				keepGoing = callback.continueOptimisation(this) == ContinueOption.KEEP_GOING;
 			}
 			return keepGoing;
 		}
@@ -263,9 +516,30 @@ public class Solver {
 			return bank.getStandardSolutionNb();
 		}
 
+		/**
+		 * @return A copy of the statistics
+		 */
+		@Override
+		public RuinStatistics getRuinStatistics() {
+			return ruinStatistics.copy();
+		}
+
+		/**
+		 * @return A copy of the timings
+		 */
 		@Override
 		public DoubleSummaryStatistics getOuterStepTimingsInSeconds() {
-			return outerStepTimingsSecs;
+			DoubleSummaryStatistics ret = new DoubleSummaryStatistics();
+			synchronized (outerStepTimingsSecs) {
+				ret.combine(outerStepTimingsSecs);
+			}
+			return ret;
+		}
+
+		void recordOuterStepTiming(double durationSecs) {
+			synchronized (outerStepTimingsSecs) {
+				outerStepTimingsSecs.accept(durationSecs);
+			}
 		}
 	}
 
@@ -282,7 +556,7 @@ public class Solver {
 		}
 		long end = System.currentTimeMillis();
 		double durationSecs = 0.001*(end - start);
-		state.getOuterStepTimingsInSeconds().accept(durationSecs);
+		state.recordOuterStepTiming(durationSecs);
 
 	}
 
@@ -339,8 +613,17 @@ public class Solver {
 		// Simple ruin with no splitting
 		if (nbSubproblems == 1) {
 			CostComparatorWithTags comparator = bank.getComparatorForSlot(random.nextInt(bank.getNbSolutionSlots()));
-			ruinRecreate(state, initialSol, ruin, localSearch, comparator, newSol -> bank.accept(newSol,
+			ImmutableSolution bestBefore = bank.getStandardSol();
+			int[] nbImproved = new int[1];
+			ruinRecreate(state, initialSol, ruin, localSearch, comparator, newSol -> nbImproved[0] += bank.accept(newSol,
 					new SearchComponentsTags(TagType.RUIN_RECREATE, TagType.LS_OPT).addTags(comparator.getTags())));
+
+			// with islands the best may also have been changed by another island, so only count it as
+			// a new best if it beats the best from before the ruin and this ruin improved something
+			ImmutableSolution bestAfter = bank.getStandardSol();
+			boolean newBest = nbImproved[0] > 0 && bestBefore != null && bestAfter != null
+					&& bank.getStandardComparator().compare(bestAfter.getCost(), bestBefore.getCost()) < 0;
+			ruin.reportOutcome(nbImproved[0] > 0, newBest);
 			return;
 		}
 
@@ -357,42 +640,103 @@ public class Solver {
 					subproblems.get(i).getSolution()));
 		}
 
-		for (int i = 0; i < subproblems.size() && state.isContinue(); i++) {
-			Subproblem subproblem = subproblems.get(i);
-			state.push("Subproblem " + (i + 1) + "/" + subproblems.size());
-			Ruin spRuin = new Ruin(subproblem.getProblem(), config.getRuinConfig(), random);
-			LocalSearch spLocalSearch = new LocalSearch(subproblem.getProblem(), config.getLocalSearchConfig(),
-					subproblem.getCustomer2CustomerClosestNgbMatrix(), random);
+		// Draw a seed for each subproblem up front, so the result is the same whether they run in parallel or not
+		int nbSp = subproblems.size();
+		long[] seeds = new long[nbSp];
+		for (int i = 0; i < nbSp; i++) {
+			seeds[i] = random.nextLong();
+		}
 
-			// the subproblem should have its own solution bank we accept and reject from 
-			SolutionBank subproblemSolutionBank = new SolutionBank(config.getSolutionBankConfig(), subproblem.getProblem(), random);
-			subproblemSolutionBank.accept(subproblem.getSolution(), new SearchComponentsTags());
-			CostComparatorWithTags comparator = subproblemSolutionBank.getComparatorForSlot(random.nextInt(subproblemSolutionBank.getNbSolutionSlots()));
-			
-			// get new sol and accept/reject it by placing in the bank
-			ImmutableSolution newSpSol = ruinRecreate(state, subproblem.getSolution(), spRuin, spLocalSearch,
-					comparator, null);
-			subproblemSolutionBank.accept(newSpSol, new SearchComponentsTags().addTags(comparator.getTags()));
-			newSpSol = subproblemSolutionBank.getStandardSol();
-
-//			CostComparatorWithTags comparator = bank.getComparatorForSlot(random.nextInt(bank.getNbSolutionSlots()));			
-//			ImmutableSolution newSpSol = ruinRecreate(state, subproblem.getSolution(), spRuin, spLocalSearch,
-//					comparator, null);
-					
-			// see if we have an improving solution (log individually for each subproblem - helps to analyse the
-			// algorithm)
-			subproblemSolutions.get(i).setB(newSpSol);
-			MutableSolution newSol = ProblemSplitter.combineSubProblemSolutions(problem, subproblemSolutions);
-			bank.accept(newSol, new SearchComponentsTags(TagType.SPLIT, TagType.RUIN_RECREATE, TagType.LS_OPT)
-					.addTags(comparator.getTags()));
+		// Run each subproblem, in parallel if configured. Only this thread calls the continue callback.
+		List<Pair<ImmutableSolution, CostComparatorWithTags>> results = new ArrayList<>();
+		if (config.isParallelSubproblems()) {
+			state.push("Solving " + nbSp + " subproblems in parallel");
+			AtomicBoolean stop = new AtomicBoolean();
+			ContinueCallback workerCallback = s -> stop.get() ? ContinueOption.FINISH_NOW : ContinueOption.KEEP_GOING;
+			List<Future<Pair<ImmutableSolution, CostComparatorWithTags>>> futures = new ArrayList<>();
+			try {
+				for (int i = 0; i < nbSp; i++) {
+					Subproblem subproblem = subproblems.get(i);
+					long seed = seeds[i];
+					futures.add(ForkJoinPool.commonPool().submit(() -> solveSubproblem(
+							new SolverStateSummaryImpl(null, state.outerStepTimingsSecs, workerCallback), subproblem, seed)));
+				}
+				waitForTasks(futures, state, stop, null);
+			} finally {
+				stop.set(true);
+			}
+			for (Future<Pair<ImmutableSolution, CostComparatorWithTags>> future : futures) {
+				results.add(getCompleted(future));
+			}
 			state.pop();
+		} else {
+			for (int i = 0; i < nbSp && state.isContinue(); i++) {
+				state.push("Subproblem " + (i + 1) + "/" + nbSp);
+				results.add(solveSubproblem(state, subproblems.get(i), seeds[i]));
+				state.pop();
+			}
+		}
 
+		// Recombine in subproblem order, seeing if we have an improving solution after each one
+		// (log individually for each subproblem - helps to analyse the algorithm)
+		for (int i = 0; i < results.size(); i++) {
+			Pair<ImmutableSolution, CostComparatorWithTags> result = results.get(i);
+			if (result == null) {
+				continue;
+			}
+			subproblemSolutions.get(i).setB(result.getA());
+			MutableSolution newSol = ProblemSplitter.combineSubProblemSolutions(problem, subproblemSolutions);
+			bank.accept(newSol, new SearchComponentsTags(TagType.SPLIT, TagType.RUIN_RECREATE, TagType.LS_OPT)
+					.addTags(result.getB().getTags()));
 		}
 
 		state.pop();
 
 	}
 
+	/**
+	 * Ruin and recreate a subproblem using its own random, ruin, local search and solution bank,
+	 * so subproblems can be solved in parallel.
+	 * @param state
+	 * @param subproblem
+	 * @param seed
+	 * @return The subproblem's best solution and the comparator used, or null if stopped before we had a new solution
+	 */
+	private Pair<ImmutableSolution, CostComparatorWithTags> solveSubproblem(SolverStateSummaryImpl state,
+			Subproblem subproblem, long seed) {
+		Random spRandom = new Random(seed);
+		Ruin spRuin = new Ruin(subproblem.getProblem(), config.getRuinConfig(), spRandom,
+				subproblem.getCustomer2CustomerClosestNgbMatrix(), null);
+		LocalSearch spLocalSearch = new LocalSearch(subproblem.getProblem(), config.getLocalSearchConfig(),
+				subproblem.getCustomer2CustomerClosestNgbMatrix(), spRandom);
+
+		// the subproblem should have its own solution bank we accept and reject from 
+		SolutionBank subproblemSolutionBank = new SolutionBank(config.getSolutionBankConfig(), subproblem.getProblem(), spRandom);
+		subproblemSolutionBank.accept(subproblem.getSolution(), new SearchComponentsTags());
+		CostComparatorWithTags comparator = subproblemSolutionBank.getComparatorForSlot(spRandom.nextInt(subproblemSolutionBank.getNbSolutionSlots()));
+		
+		// get new sol and accept/reject it by placing in the bank
+		ImmutableSolution newSpSol = ruinRecreate(state, subproblem.getSolution(), spRuin, spLocalSearch,
+				comparator, null);
+		if (newSpSol == null || newSpSol.getNbUnassignedCustomers() > 0) {
+			// stopped part way through
+			return null;
+		}
+		subproblemSolutionBank.accept(newSpSol, new SearchComponentsTags().addTags(comparator.getTags()));
+		return new Pair<>(subproblemSolutionBank.getStandardSol(), comparator);
+	}
+
+	private static <T> T getCompleted(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
 	private static void runUntilLocalOptimum(SolverStateSummaryImpl state, CostComparatorWithTags comparator,
 			LocalSearch localSearch, MutableSolution newSol, Consumer<MutableSolution> stepEndedListener) {
 		int innerStep = 1;
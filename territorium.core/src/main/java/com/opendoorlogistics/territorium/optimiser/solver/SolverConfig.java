@@ -16,11 +16,14 @@
 package com.opendoorlogistics.territorium.optimiser.solver;
 
 import com.opendoorlogistics.territorium.optimiser.components.LocalSearch.LocalSearchConfig;
+import com.opendoorlogistics.territorium.optimiser.components.MinCostFlowCustomerAssignment;
 import com.opendoorlogistics.territorium.optimiser.components.ProblemSplitter.ProblemSplitterConfig;
 import com.opendoorlogistics.territorium.optimiser.components.RandomisedCentreSelector;
 import com.opendoorlogistics.territorium.optimiser.components.RandomisedWeightBasedCustomerAssignment;
 import com.opendoorlogistics.territorium.optimiser.components.Ruin.RuinConfig;
 import com.opendoorlogistics.territorium.optimiser.solver.SolutionBank.SolutionBankConfig;
+import com.opendoorlogistics.territorium.problem.Cluster;
+import com.opendoorlogistics.territorium.problem.ProblemIndex;
 
 public class SolverConfig {
 	public static int DEFAULT_NB_OUTER_STEPS = 1000;
@@ -30,11 +33,23 @@ public class SolverConfig {
 	
 	private RandomisedCentreSelector.Config centreSelector = new RandomisedCentreSelector.Config();
 	private RandomisedWeightBasedCustomerAssignment.Config weightBasedAssigner = new RandomisedWeightBasedCustomerAssignment.Config ();
+	private MinCostFlowCustomerAssignment.Config minCostFlowAssigner = new MinCostFlowCustomerAssignment.Config();
+	private boolean minCostFlowAssignment = false;
+	private boolean minCostFlowAssignmentForFixedCentres = true;
 	private RuinConfig ruinConfig = new RuinConfig();
 	private LocalSearchConfig localSearchConfig = new LocalSearchConfig();
 	private SolutionBankConfig solutionBankConfig = new SolutionBankConfig();
 	private ProblemSplitterConfig problemSplitterConfig = new ProblemSplitterConfig();
 	private double splitProblemProbability=0.5;
+	private boolean precompileTravelCosts = false;
+	private boolean precompileFixedCentreCosts = true;
+	private int sparseNearestNeighboursThreshold = 2000;
+	private int nbNearestNeighbours = 100;
+	private int nbIslands = 1;
+	private int islandMigrationInterval = 10;
+	private boolean parallelSubproblems = true;
+	private boolean approximateCentres = false;
+	private int approximateCentreSampleSize = ProblemIndex.DEFAULT_APPROXIMATE_CENTRE_SAMPLE_SIZE;
 	
 	public RandomisedCentreSelector.Config getCentreSelector() {
 		return centreSelector;
@@ -48,6 +63,38 @@ public class SolverConfig {
 	public void setWeightBasedAssigner(RandomisedWeightBasedCustomerAssignment.Config weightBasedAssigner) {
 		this.weightBasedAssigner = weightBasedAssigner;
 	}
+	public MinCostFlowCustomerAssignment.Config getMinCostFlowAssigner() {
+		return minCostFlowAssigner;
+	}
+	public void setMinCostFlowAssigner(MinCostFlowCustomerAssignment.Config minCostFlowAssigner) {
+		this.minCostFlowAssigner = minCostFlowAssigner;
+	}
+	public boolean isMinCostFlowAssignment() {
+		return minCostFlowAssignment;
+	}
+	/**
+	 * If true, new solutions (including the problem splitter's split into subproblems) assign customers to the
+	 * randomly selected centres using {@link MinCostFlowCustomerAssignment} instead of
+	 * {@link RandomisedWeightBasedCustomerAssignment}. The flow minimises the problem's quantity violation type,
+	 * linear or squared, before travel cost.
+	 * @param minCostFlowAssignment
+	 */
+	public void setMinCostFlowAssignment(boolean minCostFlowAssignment) {
+		this.minCostFlowAssignment = minCostFlowAssignment;
+	}
+	public boolean isMinCostFlowAssignmentForFixedCentres() {
+		return minCostFlowAssignmentForFixedCentres;
+	}
+	/**
+	 * If true (the default), problems where every cluster has a fixed centre always use
+	 * {@link MinCostFlowCustomerAssignment} for new solutions and for the problem splitter's split, even when
+	 * {@link #setMinCostFlowAssignment(boolean)} is off. With all centres fixed the assignment is a transportation
+	 * problem which the flow solves exactly.
+	 * @param minCostFlowAssignmentForFixedCentres
+	 */
+	public void setMinCostFlowAssignmentForFixedCentres(boolean minCostFlowAssignmentForFixedCentres) {
+		this.minCostFlowAssignmentForFixedCentres = minCostFlowAssignmentForFixedCentres;
+	}
 	public long getRandomSeed() {
 		return randomSeed;
 	}
@@ -96,6 +143,100 @@ public class SolverConfig {
 	public void setSplitProblemProbability(double splitProblemProbability) {
 		this.splitProblemProbability = splitProblemProbability;
 	}
+	public boolean isPrecompileTravelCosts() {
+		return precompileTravelCosts;
+	}
+	/**
+	 * If true the solver compiles a dense location-by-customer travel cost matrix before solving,
+	 * trading memory (8 bytes per location-customer pair) for faster cost lookups.
+	 * @param precompileTravelCosts
+	 */
+	public void setPrecompileTravelCosts(boolean precompileTravelCosts) {
+		this.precompileTravelCosts = precompileTravelCosts;
+	}
+	public boolean isPrecompileFixedCentreCosts() {
+		return precompileFixedCentreCosts;
+	}
+	/**
+	 * If true (the default) and any cluster has a fixed centre, the solver compiles the travel cost from each
+	 * fixed centre to each customer before solving (8 bytes per customer per fixed-centre cluster),
+	 * so moves in and out of fixed-centre clusters are evaluated by table lookup.
+	 * @param precompileFixedCentreCosts
+	 */
+	public void setPrecompileFixedCentreCosts(boolean precompileFixedCentreCosts) {
+		this.precompileFixedCentreCosts = precompileFixedCentreCosts;
+	}
+	public int getSparseNearestNeighboursThreshold() {
+		return sparseNearestNeighboursThreshold;
+	}
+	/**
+	 * Problems with more customers than this only store the closest {@link #getNbNearestNeighbours()}
+	 * neighbours of each customer instead of a full customer-to-customer ordering
+	 * @param sparseNearestNeighboursThreshold
+	 */
+	public void setSparseNearestNeighboursThreshold(int sparseNearestNeighboursThreshold) {
+		this.sparseNearestNeighboursThreshold = sparseNearestNeighboursThreshold;
+	}
+	public int getNbNearestNeighbours() {
+		return nbNearestNeighbours;
+	}
+	public void setNbNearestNeighbours(int nbNearestNeighbours) {
+		this.nbNearestNeighbours = nbNearestNeighbours;
+	}
+	public int getNbIslands() {
+		return nbIslands;
+	}
+	/**
+	 * If more than 1, the outer steps are run in parallel on this many islands, each on its own thread.
+	 * Results then depend on thread timings and are not reproducible for a given random seed.
+	 * @param nbIslands
+	 */
+	public void setNbIslands(int nbIslands) {
+		this.nbIslands = nbIslands;
+	}
+	public int getIslandMigrationInterval() {
+		return islandMigrationInterval;
+	}
+	/**
+	 * Number of outer steps an island runs between exchanging solutions with the other islands
+	 * @param islandMigrationInterval
+	 */
+	public void setIslandMigrationInterval(int islandMigrationInterval) {
+		this.islandMigrationInterval = islandMigrationInterval;
+	}
+	public boolean isParallelSubproblems() {
+		return parallelSubproblems;
+	}
+	/**
+	 * If true the subproblems of a split ruin-recreate step are solved in parallel on the common fork-join pool.
+	 * Each subproblem gets its own random seed so the result is the same either way.
+	 * @param parallelSubproblems
+	 */
+	public void setParallelSubproblems(boolean parallelSubproblems) {
+		this.parallelSubproblems = parallelSubproblems;
+	}
+	public boolean isApproximateCentres() {
+		return approximateCentres;
+	}
+	/**
+	 * If true every cluster without a fixed centre uses an approximate centre during the search, otherwise only
+	 * those with {@link Cluster#isApproximateCentre()} set. The returned solution always has exact centres,
+	 * see {@link ProblemIndex.ApproximateCentres}.
+	 * @param approximateCentres
+	 */
+	public void setApproximateCentres(boolean approximateCentres) {
+		this.approximateCentres = approximateCentres;
+	}
+	public int getApproximateCentreSampleSize() {
+		return approximateCentreSampleSize;
+	}
+	/**
+	 * Number of customers tried as an approximate centre when it's re-chosen
+	 * @param approximateCentreSampleSize
+	 */
+	public void setApproximateCentreSampleSize(int approximateCentreSampleSize) {
+		this.approximateCentreSampleSize = approximateCentreSampleSize;
+	}
 	
 	
 	
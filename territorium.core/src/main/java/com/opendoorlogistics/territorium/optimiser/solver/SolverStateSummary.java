@@ -18,6 +18,7 @@ package com.opendoorlogistics.territorium.optimiser.solver;
 import java.util.DoubleSummaryStatistics;
 import java.util.Stack;
 
+import com.opendoorlogistics.territorium.optimiser.components.RuinStatistics;
 import com.opendoorlogistics.territorium.optimiser.data.ImmutableSolution;
 
 public interface SolverStateSummary {
@@ -38,5 +39,10 @@ public interface SolverStateSummary {
 	SearchComponentsTags getBestSolutionTags();
 	
 	long getBestSolutionNb();
+
+	/**
+	 * @return How often each ruin operator was used and improved the solution bank
+	 */
+	RuinStatistics getRuinStatistics();
 }
 
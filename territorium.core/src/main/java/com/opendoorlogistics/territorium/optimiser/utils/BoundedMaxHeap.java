@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.optimiser.utils;
+
+/**
+ * Keeps the k smallest (key, id) pairs offered to it, using a fixed-size binary max-heap
+ * on primitive arrays so no objects are allocated per offer.
+ * Ties on key are broken by the smaller id, so results are deterministic.
+ * @author Phil
+ *
+ */
+public class BoundedMaxHeap {
+	private int capacity;
+	private double[] keys;
+	private int[] ids;
+	private int size;
+
+	public BoundedMaxHeap(int capacity) {
+		this.capacity = capacity;
+		this.keys = new double[capacity];
+		this.ids = new int[capacity];
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Clear the heap and change its capacity, only allocating if it's larger than any previous capacity
+	 * @param capacity
+	 */
+	public void clear(int capacity) {
+		if (capacity > keys.length) {
+			keys = new double[capacity];
+			ids = new int[capacity];
+		}
+		this.capacity = capacity;
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isFull() {
+		return size == capacity;
+	}
+
+	/**
+	 * @return The largest key held, or positive infinity if the heap is not yet full
+	 */
+	public double getWorstKey() {
+		return size < capacity ? Double.POSITIVE_INFINITY : keys[0];
+	}
+
+	/**
+	 * Offer the pair, keeping it only if it's amongst the k smallest seen so far
+	 * @param key
+	 * @param id
+	 */
+	public void offer(double key, int id) {
+		if (capacity == 0) {
+			return;
+		}
+
+		if (size < capacity) {
+			// sift up
+			int i = size++;
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (!greater(key, id, keys[parent], ids[parent])) {
+					break;
+				}
+				keys[i] = keys[parent];
+				ids[i] = ids[parent];
+				i = parent;
+			}
+			keys[i] = key;
+			ids[i] = id;
+		} else if (greater(keys[0], ids[0], key, id)) {
+			siftDownFromRoot(key, id, size);
+		}
+	}
+
+	/**
+	 * Remove all entries, writing their ids into the array in ascending key order.
+	 * @param out Must have length >= size()
+	 * @return The number of ids written
+	 */
+	public int drainAscending(int[] out) {
+		int n = size;
+		for (int last = n - 1; last >= 0; last--) {
+			out[last] = ids[0];
+			double key = keys[last];
+			int id = ids[last];
+			siftDownFromRoot(key, id, last);
+		}
+		size = 0;
+		return n;
+	}
+
+	private void siftDownFromRoot(double key, int id, int n) {
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= n) {
+				break;
+			}
+			if (child + 1 < n && greater(keys[child + 1], ids[child + 1], keys[child], ids[child])) {
+				child++;
+			}
+			if (!greater(keys[child], ids[child], key, id)) {
+				break;
+			}
+			keys[i] = keys[child];
+			ids[i] = ids[child];
+			i = child;
+		}
+		if (n > 0) {
+			keys[i] = key;
+			ids[i] = id;
+		}
+	}
+
+	private static boolean greater(double key1, int id1, double key2, int id2) {
+		return key1 > key2 || (key1 == key2 && id1 > id2);
+	}
+}
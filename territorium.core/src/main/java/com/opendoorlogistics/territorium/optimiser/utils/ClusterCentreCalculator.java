@@ -46,7 +46,7 @@ public class ClusterCentreCalculator {
 			Customer ci = problem.getCustomers().get(i);
 			double cost=0;
 			for(int j:assignedCustomers){
-				cost += problem.getTravelCost(clusterIndex,ci.getLocation(), problem.getCustomers().get(j));
+				cost += problem.getTravelCost(clusterIndex,ci.getLocation(), j);
 			}
 			
 			if(cost < minCost){
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.optimiser.utils;
+
+/**
+ * Static KD-tree over points of any dimension, for k-nearest neighbour queries
+ * by Euclidean distance. The tree is stored implicitly in a permutation array:
+ * each node is the median element of its index range, with the lower half of the
+ * range on one side of the split and the upper half on the other.
+ * @author Phil
+ *
+ */
+public class KDTree {
+	private final int dimensions;
+	private final double[] coords;
+	private final int[] perm;
+	private final byte[] splitAxis;
+
+	/**
+	 *
+	 * @param dimensions
+	 * @param coords Point coordinates packed as [point * dimensions + axis]. Not copied.
+	 */
+	public KDTree(int dimensions, double[] coords) {
+		if (dimensions < 1 || dimensions > Byte.MAX_VALUE || coords.length % dimensions != 0) {
+			throw new IllegalArgumentException("Invalid KD-tree dimensions");
+		}
+		this.dimensions = dimensions;
+		this.coords = coords;
+		int n = coords.length / dimensions;
+		perm = new int[n];
+		for (int i = 0; i < n; i++) {
+			perm[i] = i;
+		}
+		splitAxis = new byte[n];
+		build(0, n);
+	}
+
+	public int size() {
+		return perm.length;
+	}
+
+	private void build(int lo, int hi) {
+		while (hi - lo > 1) {
+			// split on the axis with the widest spread
+			int axis = 0;
+			double bestSpread = -1;
+			for (int a = 0; a < dimensions; a++) {
+				double min = Double.POSITIVE_INFINITY;
+				double max = Double.NEGATIVE_INFINITY;
+				for (int i = lo; i < hi; i++) {
+					double v = coords[perm[i] * dimensions + a];
+					min = Math.min(min, v);
+					max = Math.max(max, v);
+				}
+				if (max - min > bestSpread) {
+					bestSpread = max - min;
+					axis = a;
+				}
+			}
+
+			int mid = (lo + hi) >>> 1;
+			select(lo, hi - 1, mid, axis);
+			splitAxis[mid] = (byte) axis;
+			build(lo, mid);
+			lo = mid + 1;
+		}
+	}
+
+	/**
+	 * Quickselect so perm[k] holds the point with the k-th smallest coordinate on the axis
+	 */
+	private void select(int left, int right, int k, int axis) {
+		while (right > left) {
+			double pivot = coords[perm[(left + right) >>> 1] * dimensions + axis];
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (coords[perm[i] * dimensions + axis] < pivot) {
+					i++;
+				}
+				while (coords[perm[j] * dimensions + axis] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					int tmp = perm[i];
+					perm[i] = perm[j];
+					perm[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				right = j;
+			} else if (k >= i) {
+				left = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Find the nearest points to the query point. Results are offered to the heap
+	 * using squared Euclidean distance as the key and the point index as the id.
+	 * @param query
+	 * @param heap Should be cleared beforehand; its capacity sets the number of neighbours found
+	 */
+	public void nearest(double[] query, BoundedMaxHeap heap) {
+		nearest(query, heap, 0, perm.length);
+	}
+
+	private void nearest(double[] query, BoundedMaxHeap heap, int lo, int hi) {
+		while (hi > lo) {
+			int mid = (lo + hi) >>> 1;
+			int point = perm[mid];
+			double dist2 = 0;
+			int offset = point * dimensions;
+			for (int a = 0; a < dimensions; a++) {
+				double d = query[a] - coords[offset + a];
+				dist2 += d * d;
+			}
+			heap.offer(dist2, point);
+
+			if (hi - lo == 1) {
+				return;
+			}
+
+			int axis = splitAxis[mid];
+			double diff = query[axis] - coords[offset + axis];
+			int nearLo, nearHi, farLo, farHi;
+			if (diff < 0) {
+				nearLo = lo;
+				nearHi = mid;
+				farLo = mid + 1;
+				farHi = hi;
+			} else {
+				nearLo = mid + 1;
+				nearHi = hi;
+				farLo = lo;
+				farHi = mid;
+			}
+
+			nearest(query, heap, nearLo, nearHi);
+
+			// only search the far side if it could hold something closer than our worst
+			if (diff * diff > heap.getWorstKey()) {
+				return;
+			}
+			lo = farLo;
+			hi = farHi;
+		}
+	}
+}
@@ -17,13 +17,13 @@ package com.opendoorlogistics.territorium.optimiser.utils;
 
 import com.opendoorlogistics.territorium.optimiser.data.Cost;
 import com.opendoorlogistics.territorium.optimiser.data.ImmutableSolution;
-import com.opendoorlogistics.territorium.optimiser.data.MutableSolution;
+import com.opendoorlogistics.territorium.optimiser.data.SolutionSnapshot;
 
 public class SolutionImprovementChecker {
 	private final ImmutableSolution refSolution;
 	public SolutionImprovementChecker(ImmutableSolution solution){
-		// take deep copy
-		refSolution = new MutableSolution(solution);
+		// snapshot rather than deep copy, as only the cost is needed
+		refSolution = new SolutionSnapshot(solution);
 	}
 	
 	/**
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.problem;
+
+import java.util.List;
+
+import com.opendoorlogistics.territorium.problem.location.Location;
+
+/**
+ * Base class for travel matrices which calculate distance on-the-fly from coordinates held in a packed
+ * primitive array indexed by location index, so memory is O(number of locations) not O(n^2)
+ * and nothing is allocated per call except in {@link #get(int, int)}. Time is distance divided by a fixed speed.
+ * @author Phil
+ *
+ */
+public abstract class AnalyticTravelMatrix implements TravelMatrix {
+	private final int nbLocations;
+	private final double invSpeed;
+
+	protected AnalyticTravelMatrix(int nbLocations, double speed) {
+		if (!(speed > 0) || Double.isInfinite(speed)) {
+			throw new IllegalArgumentException("Speed must be positive and finite");
+		}
+		this.nbLocations = nbLocations;
+		this.invSpeed = 1.0 / speed;
+	}
+
+	public int getNbLocations() {
+		return nbLocations;
+	}
+
+	/**
+	 * Returns a new {@link DistanceTime} object each call. Solver code should
+	 * use {@link #getDistance(int, int)} and {@link #getTime(int, int)} instead.
+	 */
+	@Override
+	public DistanceTime get(int fromLocationIndex, int toLocationIndex) {
+		double distance = getDistance(fromLocationIndex, toLocationIndex);
+		return new DistanceTime(distance, distance * invSpeed);
+	}
+
+	@Override
+	public double getTime(int fromLocationIndex, int toLocationIndex) {
+		return getDistance(fromLocationIndex, toLocationIndex) * invSpeed;
+	}
+
+	/**
+	 * Get the number of locations needed to hold all the problem's locations, i.e. max location index + 1
+	 * @param locations
+	 * @param locationClass All locations must be of this class
+	 * @return
+	 */
+	static int getNbLocations(List<Location> locations, Class<? extends Location> locationClass) {
+		int maxLocIndx = -1;
+		for (Location location : locations) {
+			if (!locationClass.isInstance(location)) {
+				throw new IllegalArgumentException("All locations must be " + locationClass.getSimpleName()
+						+ " but found " + location);
+			}
+			if (location.getIndex() < 0) {
+				throw new IllegalArgumentException("Negative location index for " + location);
+			}
+			maxLocIndx = Math.max(location.getIndex(), maxLocIndx);
+		}
+		return maxLocIndx + 1;
+	}
+}
@@ -57,6 +57,11 @@ public class ArrayBasedTravelMatrix extends ObjectWithJSONToString implements Tr
 		this.matrix = matrix;
 	}
 
+	/**
+	 * @deprecated Use {@link FlatArrayTravelMatrix#buildForXYProblem(Problem, double)},
+	 * which doesn't hold an object per location pair.
+	 */
+	@Deprecated
 	public static ArrayBasedTravelMatrix buildForXYProblem(Problem problem, double speed){
 		int maxLocIndx = 0;
 		List<Location> locs = Problem.getAllLocations(problem);
@@ -12,6 +12,7 @@ public class Cluster extends HasUserIndx{
 	private double maxQuantity=1;
 	private double minQuantity;
 	private boolean fixCentreToTarget;
+	private boolean approximateCentre;
 	//private Location fixedLocation;
 	private Location targetCentre;
 	private double targetCentreCostPerUnitDistance=0;
@@ -72,6 +73,19 @@ public class Cluster extends HasUserIndx{
 	public void setFixCentreToTarget(boolean fixCentreToTarget) {
 		this.fixCentreToTarget = fixCentreToTarget;
 	}
+
+	public boolean isApproximateCentre() {
+		return approximateCentre;
+	}
+
+	/**
+	 * If true (and the centre isn't fixed) the solver approximates the cluster's centre during the search,
+	 * which is much faster for very large clusters. See {@link ProblemIndex.ApproximateCentres}.
+	 * @param approximateCentre
+	 */
+	public void setApproximateCentre(boolean approximateCentre) {
+		this.approximateCentre = approximateCentre;
+	}
 	
 	/**
 	 * Return the target centre if fix centre to target is on
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.problem;
+
+import java.util.List;
+
+import com.opendoorlogistics.territorium.problem.location.Location;
+import com.opendoorlogistics.territorium.problem.location.XYLocation;
+
+/**
+ * Straight-line distance between {@link XYLocation} coordinates, calculated on-the-fly.
+ * Gives the same values as {@link FlatArrayTravelMatrix#buildForXYProblem(Problem, double)}
+ * without storing n^2 entries.
+ * @author Phil
+ *
+ */
+public final class EuclideanTravelMatrix extends AnalyticTravelMatrix {
+	/**
+	 * x and y interleaved, so a location's coordinates share a cache line
+	 */
+	private final double[] xy;
+
+	/**
+	 * 
+	 * @param x x by location index
+	 * @param y y by location index
+	 * @param speed Used to calculate time from distance
+	 */
+	public EuclideanTravelMatrix(double[] x, double[] y, double speed) {
+		super(x.length, speed);
+		if (x.length != y.length) {
+			throw new IllegalArgumentException("x and y arrays must be the same length");
+		}
+		xy = new double[2 * x.length];
+		for (int i = 0; i < x.length; i++) {
+			xy[2 * i] = x[i];
+			xy[2 * i + 1] = y[i];
+		}
+	}
+
+	@Override
+	public double getDistance(int fromLocationIndex, int toLocationIndex) {
+		int from = 2 * fromLocationIndex;
+		int to = 2 * toLocationIndex;
+		double dx = xy[from] - xy[to];
+		double dy = xy[from + 1] - xy[to + 1];
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Build for a problem where all locations are {@link XYLocation}
+	 * @param problem
+	 * @param speed Used to calculate time from distance
+	 * @return
+	 */
+	public static EuclideanTravelMatrix buildForXYProblem(Problem problem, double speed) {
+		List<Location> locations = Problem.getAllLocations(problem);
+		int n = getNbLocations(locations, XYLocation.class);
+		double[] x = new double[n];
+		double[] y = new double[n];
+		for (Location location : locations) {
+			XYLocation xyLocation = (XYLocation) location;
+			x[location.getIndex()] = xyLocation.getX();
+			y[location.getIndex()] = xyLocation.getY();
+		}
+		return new EuclideanTravelMatrix(x, y, speed);
+	}
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.problem;
+
+/**
+ * Customer travel costs from each fixed centre (see {@link Cluster#getFixedCentre(Cluster)}), stored as one row
+ * per cluster. A customer's cost in a fixed-centre cluster doesn't depend on the other customers, so with the
+ * table a move in or out of the cluster is evaluated with a single array read.
+ * Costs include the preferred cluster multiplier and are exactly those returned by
+ * {@link Problem#getTravelCost(int, com.opendoorlogistics.territorium.problem.location.Location, int)}.
+ * The table takes 8 bytes per customer per fixed-centre cluster. Like {@link TravelCostMatrix}, it's a
+ * snapshot and must be recompiled if the customers, clusters or travel matrix change.
+ * @author Phil
+ *
+ */
+public final class FixedCentreCostTable {
+	private final double[][] costs;
+
+	private FixedCentreCostTable(double[][] costs) {
+		this.costs = costs;
+	}
+
+	/**
+	 * 
+	 * @param clusterIndex
+	 * @return Travel cost from the cluster's fixed centre to each customer, or null if the cluster's centre isn't fixed.
+	 *         The returned array must not be modified.
+	 */
+	public double[] getCosts(int clusterIndex) {
+		return costs[clusterIndex];
+	}
+
+	/**
+	 * Compile the table using the problem's compiled index (or a new one if it doesn't have one)
+	 * and its current travel costs
+	 * @param problem
+	 * @return The table or null if no cluster has a fixed centre
+	 */
+	public static FixedCentreCostTable compile(Problem problem) {
+		ProblemIndex index = ProblemIndex.get(problem);
+		if (!index.hasFixedCentres()) {
+			return null;
+		}
+
+		int nbCustomers = index.getNbCustomers();
+		double[][] costs = new double[index.getNbClusters()][];
+		for (int clusterIndex = 0; clusterIndex < costs.length; clusterIndex++) {
+			if (index.getFixedCentre(clusterIndex) != null) {
+				double[] row = new double[nbCustomers];
+				for (int i = 0; i < nbCustomers; i++) {
+					row[i] = problem.getTravelCost(clusterIndex, index.getFixedCentre(clusterIndex), i);
+				}
+				costs[clusterIndex] = row;
+			}
+		}
+		return new FixedCentreCostTable(costs);
+	}
+}
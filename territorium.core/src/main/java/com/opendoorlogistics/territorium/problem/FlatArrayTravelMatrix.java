@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.problem;
+
+import java.util.List;
+
+import com.opendoorlogistics.territorium.problem.location.Location;
+import com.opendoorlogistics.territorium.problem.location.XYLocation;
+
+/**
+ * Travel matrix stored as two flat row-major primitive arrays (distance and time),
+ * so there's no per-pair object and lookups are a single array load.
+ * Build it using {@link Builder}.
+ * @author Phil
+ *
+ */
+public class FlatArrayTravelMatrix implements TravelMatrix {
+	private final int nbLocations;
+	private final double[] distances;
+	private final double[] times;
+
+	private FlatArrayTravelMatrix(int nbLocations, double[] distances, double[] times) {
+		this.nbLocations = nbLocations;
+		this.distances = distances;
+		this.times = times;
+	}
+
+	public int getNbLocations() {
+		return nbLocations;
+	}
+
+	/**
+	 * Returns a new {@link DistanceTime} object each call. Solver code should
+	 * use {@link #getDistance(int, int)} and {@link #getTime(int, int)} instead.
+	 */
+	@Override
+	public DistanceTime get(int fromLocationIndex, int toLocationIndex) {
+		int i = fromLocationIndex * nbLocations + toLocationIndex;
+		return new DistanceTime(distances[i], times[i]);
+	}
+
+	@Override
+	public double getDistance(int fromLocationIndex, int toLocationIndex) {
+		return distances[fromLocationIndex * nbLocations + toLocationIndex];
+	}
+
+	@Override
+	public double getTime(int fromLocationIndex, int toLocationIndex) {
+		return times[fromLocationIndex * nbLocations + toLocationIndex];
+	}
+
+	public static class Builder {
+		private final int nbLocations;
+		private double[] distances;
+		private double[] times;
+
+		/**
+		 *
+		 * @param nbLocations Number of locations, i.e. the max location index + 1
+		 */
+		public Builder(int nbLocations) {
+			if (nbLocations < 0) {
+				throw new IllegalArgumentException("Number of locations cannot be negative");
+			}
+			long size = (long) nbLocations * nbLocations;
+			if (size > Integer.MAX_VALUE - 8) {
+				throw new IllegalArgumentException("Too many locations (" + nbLocations
+						+ ") for an in-memory flat array travel matrix; use a file-based matrix instead");
+			}
+			this.nbLocations = nbLocations;
+			this.distances = new double[(int) size];
+			this.times = new double[(int) size];
+		}
+
+		public Builder set(int fromLocationIndex, int toLocationIndex, double distance, double time) {
+			int i = index(fromLocationIndex, toLocationIndex);
+			distances[i] = distance;
+			times[i] = time;
+			return this;
+		}
+
+		public Builder setDistance(int fromLocationIndex, int toLocationIndex, double distance) {
+			distances[index(fromLocationIndex, toLocationIndex)] = distance;
+			return this;
+		}
+
+		public Builder setTime(int fromLocationIndex, int toLocationIndex, double time) {
+			times[index(fromLocationIndex, toLocationIndex)] = time;
+			return this;
+		}
+
+		public int getNbLocations() {
+			return nbLocations;
+		}
+
+		/**
+		 * Build the matrix. The builder hands its arrays over to the matrix
+		 * and cannot be used afterwards.
+		 * @return
+		 */
+		public FlatArrayTravelMatrix build() {
+			if (distances == null) {
+				throw new IllegalStateException("Builder has already been used");
+			}
+			FlatArrayTravelMatrix ret = new FlatArrayTravelMatrix(nbLocations, distances, times);
+			distances = null;
+			times = null;
+			return ret;
+		}
+
+		private int index(int fromLocationIndex, int toLocationIndex) {
+			if (distances == null) {
+				throw new IllegalStateException("Builder has already been used");
+			}
+			return fromLocationIndex * nbLocations + toLocationIndex;
+		}
+	}
+
+	/**
+	 * Build a straight-line distance matrix for a problem where all locations are {@link XYLocation}
+	 * @param problem
+	 * @param speed Used to calculate time from distance
+	 * @return
+	 */
+	public static FlatArrayTravelMatrix buildForXYProblem(Problem problem, double speed) {
+		int maxLocIndx = 0;
+		List<Location> locs = Problem.getAllLocations(problem);
+		for (Location location : locs) {
+			maxLocIndx = Math.max(location.getIndex(), maxLocIndx);
+		}
+		Builder builder = new Builder(maxLocIndx + 1);
+
+		double invSpeed = 1.0 / speed;
+		for (Location from : locs) {
+			XYLocation xyFrom = (XYLocation) from;
+			for (Location to : locs) {
+				XYLocation xyTo = (XYLocation) to;
+				double dx = xyFrom.getX() - xyTo.getX();
+				double dy = xyFrom.getY() - xyTo.getY();
+				double distance = Math.sqrt(dx * dx + dy * dy);
+				builder.set(xyFrom.getIndex(), xyTo.getIndex(), distance, distance * invSpeed);
+			}
+		}
+		return builder.build();
+	}
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.problem;
+
+import java.util.List;
+
+import com.opendoorlogistics.territorium.problem.location.LatLongLocation;
+import com.opendoorlogistics.territorium.problem.location.Location;
+
+/**
+ * Great-circle distance in metres between {@link LatLongLocation} coordinates (in degrees) using the
+ * haversine formula, calculated on-the-fly. Latitude and longitude are stored in radians
+ * alongside the cosine of the latitude so only the half-angle sines are calculated per call.
+ * @author Phil
+ *
+ */
+public final class HaversineTravelMatrix extends AnalyticTravelMatrix {
+	/**
+	 * Mean earth radius
+	 */
+	public static final double EARTH_RADIUS_METRES = 6371008.8;
+
+	private static final int STRIDE = 3;
+
+	/**
+	 * Latitude (radians), longitude (radians) and cos(latitude) interleaved by location index
+	 */
+	private final double[] packed;
+	private final double radius;
+
+	/**
+	 * 
+	 * @param latitudes Latitude in degrees by location index
+	 * @param longitudes Longitude in degrees by location index
+	 * @param speed Speed in metres per unit time, used to calculate time from distance
+	 */
+	public HaversineTravelMatrix(double[] latitudes, double[] longitudes, double speed) {
+		this(latitudes, longitudes, speed, EARTH_RADIUS_METRES);
+	}
+
+	/**
+	 * 
+	 * @param latitudes Latitude in degrees by location index
+	 * @param longitudes Longitude in degrees by location index
+	 * @param speed Used to calculate time from distance
+	 * @param radius Sphere radius, which sets the distance units
+	 */
+	public HaversineTravelMatrix(double[] latitudes, double[] longitudes, double speed, double radius) {
+		super(latitudes.length, speed);
+		if (latitudes.length != longitudes.length) {
+			throw new IllegalArgumentException("Latitude and longitude arrays must be the same length");
+		}
+		this.radius = radius;
+		packed = new double[STRIDE * latitudes.length];
+		for (int i = 0; i < latitudes.length; i++) {
+			double lat = Math.toRadians(latitudes[i]);
+			packed[STRIDE * i] = lat;
+			packed[STRIDE * i + 1] = Math.toRadians(longitudes[i]);
+			packed[STRIDE * i + 2] = Math.cos(lat);
+		}
+	}
+
+	@Override
+	public double getDistance(int fromLocationIndex, int toLocationIndex) {
+		if (fromLocationIndex == toLocationIndex) {
+			return 0;
+		}
+		int from = STRIDE * fromLocationIndex;
+		int to = STRIDE * toLocationIndex;
+		double sinHalfDLat = Math.sin(0.5 * (packed[to] - packed[from]));
+		double sinHalfDLng = Math.sin(0.5 * (packed[to + 1] - packed[from + 1]));
+		double h = sinHalfDLat * sinHalfDLat + packed[from + 2] * packed[to + 2] * sinHalfDLng * sinHalfDLng;
+		return 2 * radius * Math.asin(Math.min(1, Math.sqrt(h)));
+	}
+
+	/**
+	 * Build for a problem where all locations are {@link LatLongLocation}
+	 * @param problem
+	 * @param speed Speed in metres per unit time, used to calculate time from distance
+	 * @return
+	 */
+	public static HaversineTravelMatrix buildForLatLongProblem(Problem problem, double speed) {
+		List<Location> locations = Problem.getAllLocations(problem);
+		int n = getNbLocations(locations, LatLongLocation.class);
+		double[] lats = new double[n];
+		double[] lngs = new double[n];
+		for (Location location : locations) {
+			LatLongLocation ll = (LatLongLocation) location;
+			lats[location.getIndex()] = ll.getLatitude();
+			lngs[location.getIndex()] = ll.getLongitude();
+		}
+		return new HaversineTravelMatrix(lats, lngs, speed);
+	}
+}
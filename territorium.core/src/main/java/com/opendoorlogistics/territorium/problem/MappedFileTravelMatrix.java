@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.problem;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import com.opendoorlogistics.territorium.problem.TravelMatrixFileFormat.Header;
+import com.opendoorlogistics.territorium.problem.TravelMatrixFileFormat.Precision;
+
+/**
+ * Read-only travel matrix backed by a memory-mapped file in the {@link TravelMatrixFileFormat}.
+ * The matrix lives outside the Java heap so it can exceed the 2^31 array limit, opening is
+ * near-instant and the OS page cache is shared between JVMs reading the same file.
+ * As a single mapping is limited to 2GB, the file is mapped as several segments and
+ * addressed using long offsets.
+ * @author Phil
+ *
+ */
+public class MappedFileTravelMatrix implements TravelMatrix, Closeable {
+	public static final int DEFAULT_SEGMENT_SIZE_BITS = 30;
+
+	private final FileChannel channel;
+	private final Header header;
+	private final MappedByteBuffer[] segments;
+	private final int segmentSizeBits;
+	private final long segmentMask;
+	private final long n;
+	private final boolean float32;
+	private final int valueSizeBits;
+	private final long timeBlockOffset;
+
+	private MappedFileTravelMatrix(FileChannel channel, Header header, int segmentSizeBits) throws IOException {
+		this.channel = channel;
+		this.header = header;
+		this.segmentSizeBits = segmentSizeBits;
+		this.segmentMask = (1L << segmentSizeBits) - 1;
+		this.n = header.getNbLocations();
+		this.float32 = header.getPrecision() == Precision.FLOAT32;
+		this.valueSizeBits = float32 ? 2 : 3;
+		this.timeBlockOffset = TravelMatrixFileFormat.HEADER_SIZE + header.getBlockSize();
+
+		long fileSize = header.getFileSize();
+		if (channel.size() < fileSize) {
+			throw new IOException("Travel matrix file is truncated, expected " + fileSize + " bytes but found " + channel.size());
+		}
+
+		// map the whole file (including header) so value offsets are simple file offsets
+		long segmentSize = 1L << segmentSizeBits;
+		int nbSegments = (int) ((fileSize + segmentSize - 1) >>> segmentSizeBits);
+		segments = new MappedByteBuffer[nbSegments];
+		for (int i = 0; i < nbSegments; i++) {
+			long start = (long) i << segmentSizeBits;
+			long size = Math.min(segmentSize, fileSize - start);
+			segments[i] = channel.map(MapMode.READ_ONLY, start, size);
+			segments[i].order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+	/**
+	 * Open the file with the default segment size
+	 * @param file
+	 * @param verifyChecksum If true all data is read and checked against the header checksum,
+	 * which loses the near-instant startup on very large files
+	 * @return
+	 * @throws IOException
+	 */
+	public static MappedFileTravelMatrix open(File file, boolean verifyChecksum) throws IOException {
+		return open(file, verifyChecksum, DEFAULT_SEGMENT_SIZE_BITS);
+	}
+
+	/**
+	 * Open the file using segments of 2^segmentSizeBits bytes. Smaller segments are mainly useful for testing.
+	 * @param file
+	 * @param verifyChecksum
+	 * @param segmentSizeBits Between 3 and 30 inclusive
+	 * @return
+	 * @throws IOException
+	 */
+	public static MappedFileTravelMatrix open(File file, boolean verifyChecksum, int segmentSizeBits) throws IOException {
+		if (segmentSizeBits < 3 || segmentSizeBits > 30) {
+			throw new IllegalArgumentException("Segment size bits must be between 3 and 30");
+		}
+
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer headerBuffer = ByteBuffer.allocate(TravelMatrixFileFormat.HEADER_SIZE);
+			while (headerBuffer.hasRemaining() && channel.read(headerBuffer) >= 0) {
+			}
+			((Buffer) headerBuffer).flip();
+			MappedFileTravelMatrix ret = new MappedFileTravelMatrix(channel, Header.read(headerBuffer), segmentSizeBits);
+			if (verifyChecksum && ret.calculateChecksum() != ret.header.getChecksum()) {
+				throw new IOException("Travel matrix file checksum does not match, file may be corrupt");
+			}
+			return ret;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private long calculateChecksum() {
+		CRC32 crc = new CRC32();
+		long start = TravelMatrixFileFormat.HEADER_SIZE;
+		long end = header.getFileSize();
+		for (int i = 0; i < segments.length; i++) {
+			long segmentStart = (long) i << segmentSizeBits;
+			ByteBuffer view = ((ByteBuffer) segments[i]).duplicate();
+			((Buffer) view).position((int) Math.max(0, start - segmentStart));
+			((Buffer) view).limit((int) Math.min(view.capacity(), end - segmentStart));
+			if (view.hasRemaining()) {
+				crc.update(view);
+			}
+		}
+		return crc.getValue();
+	}
+
+	public Header getHeader() {
+		return header;
+	}
+
+	public int getNbLocations() {
+		return header.getNbLocations();
+	}
+
+	private double read(long offset) {
+		// values never straddle segments as segments are a power of 2 and values are aligned
+		ByteBuffer segment = segments[(int) (offset >>> segmentSizeBits)];
+		int position = (int) (offset & segmentMask);
+		return float32 ? segment.getFloat(position) : segment.getDouble(position);
+	}
+
+	@Override
+	public double getDistance(int fromLocationIndex, int toLocationIndex) {
+		return read(TravelMatrixFileFormat.HEADER_SIZE + ((fromLocationIndex * n + toLocationIndex) << valueSizeBits));
+	}
+
+	@Override
+	public double getTime(int fromLocationIndex, int toLocationIndex) {
+		return read(timeBlockOffset + ((fromLocationIndex * n + toLocationIndex) << valueSizeBits));
+	}
+
+	@Override
+	public DistanceTime get(int fromLocationIndex, int toLocationIndex) {
+		return new DistanceTime(getDistance(fromLocationIndex, toLocationIndex), getTime(fromLocationIndex, toLocationIndex));
+	}
+
+	/**
+	 * Close the underlying file. The JVM releases the mapped memory itself once the matrix is garbage collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -18,6 +18,7 @@ package com.opendoorlogistics.territorium.problem;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.opendoorlogistics.territorium.problem.location.Location;
 
 public class Problem extends ObjectWithJSONToString{
@@ -25,6 +26,9 @@ public class Problem extends ObjectWithJSONToString{
 	private List<Customer> customers = new ArrayList<>();
 	private List<Cluster> clusters= new ArrayList<>();
 	private TravelMatrix travelMatrix=null;
+	private TravelCostMatrix travelCostMatrix=null;
+	private ProblemIndex problemIndex=null;
+	private FixedCentreCostTable fixedCentreCostTable=null;
 
 	public enum QuantityViolationType{
 		LINEAR,
@@ -39,14 +43,30 @@ public class Problem extends ObjectWithJSONToString{
 	}
 
 	public Problem(){}
+
+	/**
+	 * Shallow copy constructor. Customers, clusters and the travel matrix are shared with the original.
+	 * @param copyThis
+	 */
+	public Problem(Problem copyThis) {
+		this.quantityViolationType = copyThis.quantityViolationType;
+		this.customers = copyThis.customers;
+		this.clusters = copyThis.clusters;
+		this.travelMatrix = copyThis.travelMatrix;
+		this.travelCostMatrix = copyThis.travelCostMatrix;
+		this.problemIndex = copyThis.problemIndex;
+		this.fixedCentreCostTable = copyThis.fixedCentreCostTable;
+	}
 	
 	public TravelMatrix getTravelMatrix() {
 		return travelMatrix;
 	}
 
 	public double getTravelCost(int assignedClusterIndexOrMinus1,Location clusterLocation, Customer customer) {
-		DistanceTime dt = getTravel(clusterLocation, customer);
-		double cost= dt.getDistance() * customer.getCostPerUnitDistance() + dt.getTime() * customer.getCostPerUnitTime();
+		// read distance and time as primitives so we don't fetch a DistanceTime object
+		int from = clusterLocation.getIndex();
+		int to = customer.getLocation().getIndex();
+		double cost= travelMatrix.getDistance(from, to) * customer.getCostPerUnitDistance() + travelMatrix.getTime(from, to) * customer.getCostPerUnitTime();
 		if(assignedClusterIndexOrMinus1!=-1 && customer.getPreferredClusterIndex()!=-1) {
 			
 			// reduce the travel cost if its assigned to its preferred cluster
@@ -57,6 +77,46 @@ public class Problem extends ObjectWithJSONToString{
 		return cost;
 	}
 
+	/**
+	 * Same as {@link #getTravelCost(int, Location, Customer)} but taking the customer index,
+	 * so the cost can be read straight from the precompiled {@link TravelCostMatrix} if one is set.
+	 * @param assignedClusterIndexOrMinus1
+	 * @param clusterLocation
+	 * @param customerIndex
+	 * @return
+	 */
+	public double getTravelCost(int assignedClusterIndexOrMinus1,Location clusterLocation, int customerIndex) {
+		ProblemIndex index = problemIndex;
+		if(index==null) {
+			if(travelCostMatrix==null) {
+				return getTravelCost(assignedClusterIndexOrMinus1, clusterLocation, customers.get(customerIndex));
+			}
+			
+			double cost = travelCostMatrix.getCost(clusterLocation.getIndex(), customerIndex);
+			if(assignedClusterIndexOrMinus1!=-1) {
+				Customer customer = customers.get(customerIndex);
+				if(assignedClusterIndexOrMinus1==customer.getPreferredClusterIndex()) {
+					cost *= customer.getTravelCostMultiplier4PreferredClusterIndex();
+				}
+			}
+			return cost;
+		}
+
+		// same calculation as above but reading the customer fields from the compiled index
+		int from = clusterLocation.getIndex();
+		double cost;
+		if(travelCostMatrix!=null) {
+			cost = travelCostMatrix.getCost(from, customerIndex);
+		}else {
+			int to = index.getLocationIndex(customerIndex);
+			cost = travelMatrix.getDistance(from, to) * index.getCostPerUnitDistance(customerIndex) + travelMatrix.getTime(from, to) * index.getCostPerUnitTime(customerIndex);
+		}
+		if(assignedClusterIndexOrMinus1!=-1 && assignedClusterIndexOrMinus1==index.getPreferredClusterIndex(customerIndex)) {
+			cost *= index.getTravelCostMultiplier4PreferredClusterIndex(customerIndex);
+		}
+		return cost;
+	}
+
 
 	/**
 	 * 
@@ -78,10 +138,30 @@ public class Problem extends ObjectWithJSONToString{
 	 * @return
 	 */
 	public double getTargetToCentreTravelCost(Location clusterCentre, Cluster cluster){
-		DistanceTime dt = getTargetToCentreTravel(clusterCentre, cluster);
-		if(dt!=null){
-			return cluster.getTargetCentreCostPerUnitDistance() * dt.getDistance()
-					+ cluster.getTargetCentreCostPerUnitTime() * dt.getTime();
+		if (clusterCentre != null && cluster.getTargetCentre() != null) {
+			int from = cluster.getTargetCentre().getIndex();
+			int to = clusterCentre.getIndex();
+			return cluster.getTargetCentreCostPerUnitDistance() * travelMatrix.getDistance(from, to)
+					+ cluster.getTargetCentreCostPerUnitTime() * travelMatrix.getTime(from, to);
+		}
+		return 0;
+	}
+
+	/**
+	 * Same as {@link #getTargetToCentreTravelCost(Location, Cluster)} but reading the cluster from the
+	 * compiled {@link ProblemIndex}
+	 * @param clusterCentre Can be null (0 is returned)
+	 * @param clusterIndex
+	 * @param index
+	 * @return
+	 */
+	public double getTargetToCentreTravelCost(Location clusterCentre, int clusterIndex, ProblemIndex index){
+		Location target = index.getTargetCentre(clusterIndex);
+		if (clusterCentre != null && target != null) {
+			int from = target.getIndex();
+			int to = clusterCentre.getIndex();
+			return index.getTargetCentreCostPerUnitDistance(clusterIndex) * travelMatrix.getDistance(from, to)
+					+ index.getTargetCentreCostPerUnitTime(clusterIndex) * travelMatrix.getTime(from, to);
 		}
 		return 0;
 	}
@@ -101,16 +181,80 @@ public class Problem extends ObjectWithJSONToString{
 
 	public void setCustomers(List<Customer> customers) {
 		this.customers = customers;
+		this.travelCostMatrix = null;
+		this.problemIndex = null;
+		this.fixedCentreCostTable = null;
 	}
 
 	public void setClusters(List<Cluster> clusters) {
 		this.clusters = clusters;
+		this.problemIndex = null;
+		this.fixedCentreCostTable = null;
 	}
 
 	public void setTravelMatrix(TravelMatrix travelMatrix) {
 		this.travelMatrix = travelMatrix;
+		this.travelCostMatrix = null;
+		this.fixedCentreCostTable = null;
+	}
+
+	/**
+	 * 
+	 * @return The precompiled travel costs or null if not compiled
+	 */
+	@JsonIgnore
+	public TravelCostMatrix getTravelCostMatrix() {
+		return travelCostMatrix;
+	}
+
+	/**
+	 * Set precompiled travel costs, see {@link TravelCostMatrix#compile(Problem)}.
+	 * Setting the customers or travel matrix afterwards clears them.
+	 * @param travelCostMatrix Can be null
+	 */
+	@JsonIgnore
+	public void setTravelCostMatrix(TravelCostMatrix travelCostMatrix) {
+		this.travelCostMatrix = travelCostMatrix;
 	}
 	
+	/**
+	 * 
+	 * @return The compiled problem index or null if not compiled
+	 */
+	@JsonIgnore
+	public ProblemIndex getProblemIndex() {
+		return problemIndex;
+	}
+
+	/**
+	 * Set the compiled problem index, see {@link ProblemIndex#compile(Problem)}.
+	 * Setting the customers, clusters or quantity violation type afterwards clears it.
+	 * @param problemIndex Can be null
+	 */
+	@JsonIgnore
+	public void setProblemIndex(ProblemIndex problemIndex) {
+		this.problemIndex = problemIndex;
+	}
+
+	/**
+	 * 
+	 * @return The precompiled fixed centre travel costs or null if not compiled
+	 */
+	@JsonIgnore
+	public FixedCentreCostTable getFixedCentreCostTable() {
+		return fixedCentreCostTable;
+	}
+
+	/**
+	 * Set precompiled fixed centre travel costs, see {@link FixedCentreCostTable#compile(Problem)}.
+	 * Setting the customers, clusters or travel matrix afterwards clears them.
+	 * @param fixedCentreCostTable Can be null
+	 */
+	@JsonIgnore
+	public void setFixedCentreCostTable(FixedCentreCostTable fixedCentreCostTable) {
+		this.fixedCentreCostTable = fixedCentreCostTable;
+	}
+
 	public static List<Location> getAllLocations(Problem problem){
 		ArrayList<Location> ret = new ArrayList<>();
 		problem.getCustomers().forEach(c->ret.add(c.getLocation()));
@@ -128,6 +272,7 @@ public class Problem extends ObjectWithJSONToString{
 
 	public void setQuantityViolationType(QuantityViolationType quantityViolationType) {
 		this.quantityViolationType = quantityViolationType;
+		this.problemIndex = null;
 	}
 	
 
@@ -0,0 +1,343 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.problem;
+
+import java.util.List;
+
+import com.opendoorlogistics.territorium.problem.Problem.QuantityViolationType;
+import com.opendoorlogistics.territorium.problem.location.Location;
+
+/**
+ * Immutable struct-of-arrays snapshot of the customer and cluster fields the solver reads in its inner loops,
+ * so they're read from primitive arrays instead of going through the customer and cluster lists and objects.
+ * Like {@link TravelCostMatrix}, it's a snapshot and must be recompiled if the customers or clusters change.
+ * @author Phil
+ *
+ */
+public final class ProblemIndex {
+	public static final int DEFAULT_APPROXIMATE_CENTRE_SAMPLE_SIZE = 50;
+
+	/**
+	 * Which clusters use an approximate centre. Approximate centres are held fixed as customers move in and out,
+	 * so moves cost O(1) to evaluate as they do for a fixed centre, instead of O(m) for a cluster of m customers.
+	 * When the solution is updated the centre is re-chosen as the best of a sample of the cluster's customers
+	 * (evenly spaced by customer index), costing O(sample size * m) instead of O(m * m).
+	 * Clusters with a fixed centre never use an approximate centre.
+	 */
+	public enum ApproximateCentres {
+		/** Clusters with {@link Cluster#isApproximateCentre()} set */
+		PER_CLUSTER,
+
+		/** All clusters */
+		ALL,
+
+		/** No clusters, even those with {@link Cluster#isApproximateCentre()} set */
+		NONE
+	}
+
+	private final QuantityViolationType quantityViolationType;
+	private final ApproximateCentres approximateCentres;
+	private final int approximateCentreSampleSize;
+
+	// customers
+	private final int nbCustomers;
+	private final double[] quantity;
+	private final Location[] location;
+	private final int[] locationIndex;
+	private final double[] costPerDistance;
+	private final double[] costPerTime;
+	private final int[] preferredCluster;
+	private final double[] preferredClusterMultiplier;
+	private final double[] preferredPenalty;
+
+	// clusters
+	private final int nbClusters;
+	private final double[] minQuantity;
+	private final double[] maxQuantity;
+	private final Location[] targetCentre;
+	private final double[] targetCostPerDistance;
+	private final double[] targetCostPerTime;
+	private final Location[] fixedCentre;
+	private final int[] fixedCentreLocationIndex;
+	private final boolean[] approximateCentre;
+
+	private ProblemIndex(Problem problem, ApproximateCentres approximateCentres, int approximateCentreSampleSize) {
+		if (approximateCentreSampleSize < 1) {
+			throw new IllegalArgumentException("Approximate centre sample size must be at least 1");
+		}
+		quantityViolationType = problem.getQuantityViolationType();
+		this.approximateCentres = approximateCentres;
+		this.approximateCentreSampleSize = approximateCentreSampleSize;
+
+		List<Customer> customers = problem.getCustomers();
+		nbCustomers = customers.size();
+		quantity = new double[nbCustomers];
+		location = new Location[nbCustomers];
+		locationIndex = new int[nbCustomers];
+		costPerDistance = new double[nbCustomers];
+		costPerTime = new double[nbCustomers];
+		preferredCluster = new int[nbCustomers];
+		preferredClusterMultiplier = new double[nbCustomers];
+		preferredPenalty = new double[nbCustomers];
+		for (int i = 0; i < nbCustomers; i++) {
+			Customer customer = customers.get(i);
+			quantity[i] = customer.getQuantity();
+			location[i] = customer.getLocation();
+			locationIndex[i] = customer.getLocation().getIndex();
+			costPerDistance[i] = customer.getCostPerUnitDistance();
+			costPerTime[i] = customer.getCostPerUnitTime();
+			preferredCluster[i] = customer.getPreferredClusterIndex();
+			preferredClusterMultiplier[i] = customer.getTravelCostMultiplier4PreferredClusterIndex();
+			preferredPenalty[i] = customer.getPreferredClusterPenaltyCost();
+		}
+
+		List<Cluster> clusters = problem.getClusters();
+		nbClusters = clusters.size();
+		minQuantity = new double[nbClusters];
+		maxQuantity = new double[nbClusters];
+		targetCentre = new Location[nbClusters];
+		targetCostPerDistance = new double[nbClusters];
+		targetCostPerTime = new double[nbClusters];
+		fixedCentre = new Location[nbClusters];
+		fixedCentreLocationIndex = new int[nbClusters];
+		approximateCentre = new boolean[nbClusters];
+		for (int i = 0; i < nbClusters; i++) {
+			Cluster cluster = clusters.get(i);
+			minQuantity[i] = cluster.getMinQuantity();
+			maxQuantity[i] = cluster.getMaxQuantity();
+			targetCentre[i] = cluster.getTargetCentre();
+			targetCostPerDistance[i] = cluster.getTargetCentreCostPerUnitDistance();
+			targetCostPerTime[i] = cluster.getTargetCentreCostPerUnitTime();
+			fixedCentre[i] = Cluster.getFixedCentre(cluster);
+			fixedCentreLocationIndex[i] = fixedCentre[i] != null ? fixedCentre[i].getIndex() : -1;
+			approximateCentre[i] = fixedCentre[i] == null && (approximateCentres == ApproximateCentres.ALL
+					|| (approximateCentres == ApproximateCentres.PER_CLUSTER && cluster.isApproximateCentre()));
+		}
+	}
+
+	/**
+	 * Compile the index from the problem's current customers and clusters
+	 * @param problem
+	 * @return
+	 */
+	public static ProblemIndex compile(Problem problem) {
+		return new ProblemIndex(problem, ApproximateCentres.PER_CLUSTER, DEFAULT_APPROXIMATE_CENTRE_SAMPLE_SIZE);
+	}
+
+	/**
+	 * Compile the index from the problem's current customers and clusters
+	 * @param problem
+	 * @param approximateCentres
+	 * @param approximateCentreSampleSize
+	 * @return
+	 */
+	public static ProblemIndex compile(Problem problem, ApproximateCentres approximateCentres,
+			int approximateCentreSampleSize) {
+		return new ProblemIndex(problem, approximateCentres, approximateCentreSampleSize);
+	}
+
+	/**
+	 * Get the problem's compiled index, or compile a new one if it doesn't have one
+	 * @param problem
+	 * @return
+	 */
+	public static ProblemIndex get(Problem problem) {
+		ProblemIndex ret = problem.getProblemIndex();
+		return ret != null ? ret : compile(problem);
+	}
+
+	public ApproximateCentres getApproximateCentres() {
+		return approximateCentres;
+	}
+
+	public int getApproximateCentreSampleSize() {
+		return approximateCentreSampleSize;
+	}
+
+	/**
+	 * 
+	 * @param clusterIndex
+	 * @return True if the cluster's centre is approximated, see {@link ApproximateCentres}
+	 */
+	public boolean isApproximateCentre(int clusterIndex) {
+		return approximateCentre[clusterIndex];
+	}
+
+	/**
+	 * 
+	 * @return True if any cluster's centre is approximated
+	 */
+	public boolean hasApproximateCentres() {
+		for (boolean b : approximateCentre) {
+			if (b) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public QuantityViolationType getQuantityViolationType() {
+		return quantityViolationType;
+	}
+
+	public int getNbCustomers() {
+		return nbCustomers;
+	}
+
+	public double getQuantity(int customerIndex) {
+		return quantity[customerIndex];
+	}
+
+	public Location getLocation(int customerIndex) {
+		return location[customerIndex];
+	}
+
+	public int getLocationIndex(int customerIndex) {
+		return locationIndex[customerIndex];
+	}
+
+	public double getCostPerUnitDistance(int customerIndex) {
+		return costPerDistance[customerIndex];
+	}
+
+	public double getCostPerUnitTime(int customerIndex) {
+		return costPerTime[customerIndex];
+	}
+
+	/**
+	 * 
+	 * @param customerIndex
+	 * @return Preferred cluster index or -1 if none
+	 */
+	public int getPreferredClusterIndex(int customerIndex) {
+		return preferredCluster[customerIndex];
+	}
+
+	public double getTravelCostMultiplier4PreferredClusterIndex(int customerIndex) {
+		return preferredClusterMultiplier[customerIndex];
+	}
+
+	/**
+	 * Get the penalty for assigning the customer to the cluster
+	 * @param customerIndex
+	 * @param clusterIndex
+	 * @return The preferred cluster penalty if the customer has a different preferred cluster, otherwise 0
+	 */
+	public double getPreferredClusterPenalty(int customerIndex, int clusterIndex) {
+		int pref = preferredCluster[customerIndex];
+		if (pref != -1 && pref != clusterIndex) {
+			return preferredPenalty[customerIndex];
+		}
+		return 0;
+	}
+
+	public int getNbClusters() {
+		return nbClusters;
+	}
+
+	public double getMinQuantity(int clusterIndex) {
+		return minQuantity[clusterIndex];
+	}
+
+	public double getMaxQuantity(int clusterIndex) {
+		return maxQuantity[clusterIndex];
+	}
+
+	/**
+	 * 
+	 * @param clusterIndex
+	 * @return Target centre or null
+	 */
+	public Location getTargetCentre(int clusterIndex) {
+		return targetCentre[clusterIndex];
+	}
+
+	public double getTargetCentreCostPerUnitDistance(int clusterIndex) {
+		return targetCostPerDistance[clusterIndex];
+	}
+
+	public double getTargetCentreCostPerUnitTime(int clusterIndex) {
+		return targetCostPerTime[clusterIndex];
+	}
+
+	/**
+	 * 
+	 * @param clusterIndex
+	 * @return The fixed centre, see {@link Cluster#getFixedCentre(Cluster)}, or null
+	 */
+	public Location getFixedCentre(int clusterIndex) {
+		return fixedCentre[clusterIndex];
+	}
+
+	/**
+	 * 
+	 * @param clusterIndex
+	 * @return The fixed centre's location index or -1
+	 */
+	public int getFixedCentreLocationIndex(int clusterIndex) {
+		return fixedCentreLocationIndex[clusterIndex];
+	}
+
+	/**
+	 *
+	 * @return True if any cluster has a fixed centre
+	 */
+	public boolean hasFixedCentres() {
+		for (Location centre : fixedCentre) {
+			if (centre != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 *
+	 * @return True if there is at least one cluster and every cluster has a fixed centre
+	 */
+	public boolean hasOnlyFixedCentres() {
+		if (fixedCentre.length == 0) {
+			return false;
+		}
+		for (Location centre : fixedCentre) {
+			if (centre == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Same as {@link com.opendoorlogistics.territorium.optimiser.utils.QuantityUtils#getAbsQuantityViolation}
+	 * for the cluster at the index
+	 * @param clusterIndex
+	 * @param quantity
+	 * @return
+	 */
+	public double getAbsQuantityViolation(int clusterIndex, double quantity) {
+		double linear = 0;
+		if (quantity < minQuantity[clusterIndex]) {
+			linear = minQuantity[clusterIndex] - quantity;
+		} else if (quantity > maxQuantity[clusterIndex]) {
+			linear = quantity - maxQuantity[clusterIndex];
+		}
+
+		if (quantityViolationType == QuantityViolationType.SQUARE) {
+			return linear * linear;
+		}
+		return linear;
+	}
+}
@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.problem;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.opendoorlogistics.territorium.problem.location.LatLongLocation;
+import com.opendoorlogistics.territorium.problem.location.Location;
+import com.opendoorlogistics.territorium.problem.location.XYLocation;
+
+/**
+ * Read problems (without the travel matrix) from JSON or CSV.
+ * <p>
+ * JSON uses the same property names as the problem objects. A location's type is taken from its
+ * properties: x and y give an {@link XYLocation}, latitude and longitude a {@link LatLongLocation},
+ * otherwise it's a plain {@link Location} with just an index into the travel matrix.
+ * <p>
+ * CSV files have a header row; column names are case-insensitive and unknown columns are ignored.
+ * The customers file has a locationIndex column plus optional x, y or latitude, longitude columns,
+ * and optional columns named after the {@link Customer} properties (quantity, costPerUnitDistance etc).
+ * The clusters file has optional columns named after the {@link Cluster} properties, with the target
+ * centre given by targetLocationIndex plus optional targetX, targetY or targetLatitude, targetLongitude.
+ * @author Phil
+ *
+ */
+public class ProblemReader {
+	private ProblemReader() {
+	}
+
+	@JsonIgnoreProperties(value = { "travelMatrix" }, ignoreUnknown = true)
+	private static abstract class ProblemMixin {
+	}
+
+	private static class LocationDeserializer extends StdDeserializer<Location> {
+		private static final long serialVersionUID = 1L;
+
+		LocationDeserializer() {
+			super(Location.class);
+		}
+
+		@Override
+		public Location deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+			JsonNode node = p.getCodec().readTree(p);
+			Location ret;
+			if (node.has("x") || node.has("y")) {
+				XYLocation xy = new XYLocation();
+				xy.setX(node.path("x").asDouble());
+				xy.setY(node.path("y").asDouble());
+				ret = xy;
+			} else if (node.has("latitude") || node.has("longitude")) {
+				ret = new LatLongLocation(node.path("latitude").asDouble(), node.path("longitude").asDouble());
+			} else {
+				ret = new Location();
+			}
+			ret.setIndex(node.path("index").asInt());
+			return ret;
+		}
+	}
+
+	/**
+	 * Read a problem from JSON. The travel matrix is not read and must be set separately.
+	 * @param reader
+	 * @return
+	 * @throws IOException
+	 */
+	public static Problem readJson(Reader reader) throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+		mapper.addMixIn(Problem.class, ProblemMixin.class);
+		SimpleModule module = new SimpleModule();
+		module.addDeserializer(Location.class, new LocationDeserializer());
+		mapper.registerModule(module);
+		return mapper.readValue(reader, Problem.class);
+	}
+
+	/**
+	 * Read customers from CSV
+	 * @param reader
+	 * @return
+	 * @throws IOException
+	 */
+	public static List<Customer> readCustomersCsv(Reader reader) throws IOException {
+		List<Customer> ret = new ArrayList<>();
+		Customer defaults = new Customer();
+		int rowNb = 1;
+		for (Map<String, String> row : readCsv(reader)) {
+			rowNb++;
+			Customer customer = new Customer();
+			Location location = readLocation(row, "", rowNb);
+			if (location == null) {
+				throw new IllegalArgumentException("Customer on CSV row " + rowNb + " has no locationIndex");
+			}
+			customer.setLocation(location);
+			customer.setUserIndex(getLong(row, "userindex", rowNb - 1, rowNb));
+			customer.setQuantity(getDouble(row, "quantity", defaults.getQuantity(), rowNb));
+			customer.setCostPerUnitDistance(getDouble(row, "costperunitdistance", defaults.getCostPerUnitDistance(), rowNb));
+			customer.setCostPerUnitTime(getDouble(row, "costperunittime", defaults.getCostPerUnitTime(), rowNb));
+			customer.setPreferredClusterIndex((int) getLong(row, "preferredclusterindex", defaults.getPreferredClusterIndex(), rowNb));
+			customer.setTravelCostMultiplier4PreferredClusterIndex(getDouble(row, "travelcostmultiplier4preferredclusterindex",
+					defaults.getTravelCostMultiplier4PreferredClusterIndex(), rowNb));
+			customer.setPreferredClusterPenaltyCost(getDouble(row, "preferredclusterpenaltycost",
+					defaults.getPreferredClusterPenaltyCost(), rowNb));
+			ret.add(customer);
+		}
+		return ret;
+	}
+
+	/**
+	 * Read clusters from CSV
+	 * @param reader
+	 * @return
+	 * @throws IOException
+	 */
+	public static List<Cluster> readClustersCsv(Reader reader) throws IOException {
+		List<Cluster> ret = new ArrayList<>();
+		Cluster defaults = new Cluster();
+		int rowNb = 1;
+		for (Map<String, String> row : readCsv(reader)) {
+			rowNb++;
+			Cluster cluster = new Cluster();
+			cluster.setUserIndex(getLong(row, "userindex", rowNb - 1, rowNb));
+			cluster.setMinQuantity(getDouble(row, "minquantity", defaults.getMinQuantity(), rowNb));
+			cluster.setMaxQuantity(getDouble(row, "maxquantity", defaults.getMaxQuantity(), rowNb));
+			cluster.setTargetCentre(readLocation(row, "target", rowNb));
+			cluster.setTargetCentreCostPerUnitDistance(getDouble(row, "targetcentrecostperunitdistance",
+					defaults.getTargetCentreCostPerUnitDistance(), rowNb));
+			cluster.setTargetCentreCostPerUnitTime(getDouble(row, "targetcentrecostperunittime",
+					defaults.getTargetCentreCostPerUnitTime(), rowNb));
+			String fix = row.containsKey("fixcentretotarget") ? row.get("fixcentretotarget").trim() : "";
+			cluster.setFixCentreToTarget(fix.equalsIgnoreCase("true") || fix.equals("1"));
+			ret.add(cluster);
+		}
+		return ret;
+	}
+
+	/**
+	 * Read a location from the row
+	 * @param row
+	 * @param prefix Prefix for the column names (lower case)
+	 * @param rowNb
+	 * @return The location or null if it has no location index
+	 */
+	private static Location readLocation(Map<String, String> row, String prefix, int rowNb) {
+		if (isEmpty(row.get(prefix + "locationindex"))) {
+			return null;
+		}
+
+		Location ret;
+		if (!isEmpty(row.get(prefix + "x")) || !isEmpty(row.get(prefix + "y"))) {
+			XYLocation xy = new XYLocation();
+			xy.setX(getDouble(row, prefix + "x", 0, rowNb));
+			xy.setY(getDouble(row, prefix + "y", 0, rowNb));
+			ret = xy;
+		} else if (!isEmpty(row.get(prefix + "latitude")) || !isEmpty(row.get(prefix + "longitude"))) {
+			ret = new LatLongLocation(getDouble(row, prefix + "latitude", 0, rowNb),
+					getDouble(row, prefix + "longitude", 0, rowNb));
+		} else {
+			ret = new Location();
+		}
+		ret.setIndex((int) getLong(row, prefix + "locationindex", 0, rowNb));
+		return ret;
+	}
+
+	private static boolean isEmpty(String s) {
+		return s == null || s.trim().length() == 0;
+	}
+
+	private static double getDouble(Map<String, String> row, String column, double defaultValue, int rowNb) {
+		String s = row.get(column);
+		if (isEmpty(s)) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(s.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number \"" + s + "\" in column " + column + " on CSV row " + rowNb);
+		}
+	}
+
+	private static long getLong(Map<String, String> row, String column, long defaultValue, int rowNb) {
+		String s = row.get(column);
+		if (isEmpty(s)) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(s.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid integer \"" + s + "\" in column " + column + " on CSV row " + rowNb);
+		}
+	}
+
+	/**
+	 * Read CSV with a header row. Fields can be quoted, with "" for a quote inside a quoted field.
+	 * @param reader
+	 * @return One map per row, from the lower case column name to the value
+	 * @throws IOException
+	 */
+	static List<Map<String, String>> readCsv(Reader reader) throws IOException {
+		BufferedReader br = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+		List<Map<String, String>> ret = new ArrayList<>();
+		String line = br.readLine();
+		if (line == null) {
+			return ret;
+		}
+		if (line.startsWith("\uFEFF")) {
+			line = line.substring(1);
+		}
+		List<String> header = new ArrayList<>();
+		for (String s : splitCsvLine(line)) {
+			header.add(s.trim().toLowerCase(Locale.ROOT));
+		}
+
+		while ((line = br.readLine()) != null) {
+			if (line.trim().length() == 0) {
+				continue;
+			}
+			List<String> fields = splitCsvLine(line);
+			Map<String, String> row = new HashMap<>();
+			for (int i = 0; i < header.size() && i < fields.size(); i++) {
+				row.put(header.get(i), fields.get(i));
+			}
+			ret.add(row);
+		}
+		return ret;
+	}
+
+	private static List<String> splitCsvLine(String line) {
+		List<String> ret = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"') {
+					if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+						field.append('"');
+						i++;
+					} else {
+						quoted = false;
+					}
+				} else {
+					field.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				ret.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		ret.add(field.toString());
+		return ret;
+	}
+}
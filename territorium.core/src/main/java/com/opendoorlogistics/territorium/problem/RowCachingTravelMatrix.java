@@ -0,0 +1,327 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.problem;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+/**
+ * Travel matrix which calculates rows lazily from a {@link TravelMatrixRowProvider} the first time they're
+ * read and keeps them in a least-recently-used cache bounded by a memory cap. When the search only reads
+ * the rows for customers' nearest neighbours and candidate centres, most of the matrix is never calculated.
+ * <p>
+ * The cache is int-indexed with the LRU order held in primitive linked-list arrays, so a cache hit
+ * allocates nothing. The solver's islands and subproblem workers share the problem, so the cache bookkeeping
+ * is synchronised, but the provider is called outside the lock: a slow row only holds up threads reading
+ * that same row, which wait for it rather than calculating it again. Cached rows are never modified,
+ * so they're read outside the lock too.
+ * @author Phil
+ *
+ */
+public class RowCachingTravelMatrix implements TravelMatrix {
+	private static final int NONE = -1;
+
+	private final TravelMatrixRowProvider provider;
+	private final int nbLocations;
+	private final int maxRows;
+
+	/**
+	 * Cache slot by location index, or NONE
+	 */
+	private final int[] slotByRow;
+
+	/**
+	 * Per-slot data. The LRU list runs from head (most recent) to tail (least recent).
+	 */
+	private final int[] rowBySlot;
+	private final Row[] rows;
+	private final int[] prev;
+	private final int[] next;
+	private int head = NONE;
+	private int tail = NONE;
+	private int nbUsedSlots;
+
+	/**
+	 * Rows being calculated by the provider, which other threads reading them wait for
+	 */
+	private final TIntObjectHashMap<CompletableFuture<Row>> inFlight = new TIntObjectHashMap<>();
+
+	private long nbHits;
+	private long nbMisses;
+	private long nbEvictions;
+
+	/**
+	 * A calculated row, which is never modified once cached
+	 */
+	private static class Row {
+		final double[] distances;
+		final double[] times;
+
+		Row(int nbLocations) {
+			distances = new double[nbLocations];
+			times = new double[nbLocations];
+		}
+	}
+
+	/**
+	 * 
+	 * @param provider
+	 * @param maxCacheBytes Memory cap for the cached rows. At least one row is always cached.
+	 */
+	public RowCachingTravelMatrix(TravelMatrixRowProvider provider, long maxCacheBytes) {
+		this.provider = provider;
+		this.nbLocations = provider.getNbLocations();
+		long bytesPerRow = Math.max(1, 2L * Double.BYTES * nbLocations);
+		this.maxRows = (int) Math.max(1, Math.min(Math.max(nbLocations, 1), maxCacheBytes / bytesPerRow));
+
+		slotByRow = new int[nbLocations];
+		Arrays.fill(slotByRow, NONE);
+		rowBySlot = new int[maxRows];
+		rows = new Row[maxRows];
+		prev = new int[maxRows];
+		next = new int[maxRows];
+	}
+
+	public int getNbLocations() {
+		return nbLocations;
+	}
+
+	/**
+	 * 
+	 * @return Maximum number of rows held in the cache
+	 */
+	public int getMaxCachedRows() {
+		return maxRows;
+	}
+
+	public synchronized int getNbCachedRows() {
+		return nbUsedSlots;
+	}
+
+	/**
+	 * 
+	 * @return Number of reads which didn't calculate the row, including those which waited for another thread to
+	 */
+	public synchronized long getNbHits() {
+		return nbHits;
+	}
+
+	/**
+	 * 
+	 * @return Number of rows calculated by the provider
+	 */
+	public synchronized long getNbMisses() {
+		return nbMisses;
+	}
+
+	public synchronized long getNbEvictions() {
+		return nbEvictions;
+	}
+
+	/**
+	 * Returns a new {@link DistanceTime} object each call. Solver code should
+	 * use {@link #getDistance(int, int)} and {@link #getTime(int, int)} instead.
+	 */
+	@Override
+	public DistanceTime get(int fromLocationIndex, int toLocationIndex) {
+		Row row = getRow(fromLocationIndex);
+		return new DistanceTime(row.distances[toLocationIndex], row.times[toLocationIndex]);
+	}
+
+	@Override
+	public double getDistance(int fromLocationIndex, int toLocationIndex) {
+		return getRow(fromLocationIndex).distances[toLocationIndex];
+	}
+
+	@Override
+	public double getTime(int fromLocationIndex, int toLocationIndex) {
+		return getRow(fromLocationIndex).times[toLocationIndex];
+	}
+
+	/**
+	 * Calculate any of the rows which aren't already cached or being calculated in a single provider batch.
+	 * Rows beyond the cache capacity are not fetched.
+	 * @param fromLocationIndices
+	 */
+	public void prefetchRows(int... fromLocationIndices) {
+		int[] missing = new int[Math.min(fromLocationIndices.length, maxRows)];
+		int nbMissing = 0;
+		synchronized (this) {
+			for (int row : fromLocationIndices) {
+				if (nbMissing == missing.length) {
+					break;
+				}
+				if (slotByRow[row] == NONE && !inFlight.containsKey(row)) {
+					missing[nbMissing++] = row;
+					inFlight.put(row, new CompletableFuture<>());
+				}
+			}
+		}
+		if (nbMissing == 0) {
+			return;
+		}
+
+		missing = Arrays.copyOf(missing, nbMissing);
+		Row[] calculated = new Row[nbMissing];
+		double[][] rowDistances = new double[nbMissing][];
+		double[][] rowTimes = new double[nbMissing][];
+		for (int i = 0; i < nbMissing; i++) {
+			calculated[i] = new Row(nbLocations);
+			rowDistances[i] = calculated[i].distances;
+			rowTimes[i] = calculated[i].times;
+		}
+		try {
+			provider.computeRows(missing, rowDistances, rowTimes);
+		} catch (RuntimeException | Error e) {
+			fail(missing, e);
+			throw e;
+		}
+
+		synchronized (this) {
+			nbMisses += nbMissing;
+			for (int i = 0; i < nbMissing; i++) {
+				install(missing[i], calculated[i]).complete(calculated[i]);
+			}
+		}
+	}
+
+	/**
+	 * Get the row from the cache, or wait for another thread calculating it, or calculate it.
+	 * Only the cache bookkeeping is done holding the lock.
+	 * @param row
+	 * @return
+	 */
+	private Row getRow(int row) {
+		CompletableFuture<Row> future;
+		synchronized (this) {
+			int slot = slotByRow[row];
+			if (slot != NONE) {
+				nbHits++;
+				if (slot != head) {
+					unlink(slot);
+					linkAtHead(slot);
+				}
+				return rows[slot];
+			}
+
+			future = inFlight.get(row);
+			if (future != null) {
+				nbHits++;
+			} else {
+				inFlight.put(row, new CompletableFuture<>());
+			}
+		}
+
+		if (future != null) {
+			try {
+				return future.join();
+			} catch (CompletionException e) {
+				Throwable cause = e.getCause();
+				throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+			}
+		}
+
+		// the row is only cached once the provider has returned
+		Row calculated = new Row(nbLocations);
+		try {
+			provider.computeRow(row, calculated.distances, calculated.times);
+		} catch (RuntimeException | Error e) {
+			fail(new int[] { row }, e);
+			throw e;
+		}
+		synchronized (this) {
+			nbMisses++;
+			install(row, calculated).complete(calculated);
+		}
+		return calculated;
+	}
+
+	/**
+	 * Stop the rows being in flight and pass the provider's exception to any threads waiting for them
+	 */
+	private void fail(int[] failedRows, Throwable exception) {
+		synchronized (this) {
+			for (int row : failedRows) {
+				inFlight.remove(row).completeExceptionally(exception);
+			}
+		}
+	}
+
+	/**
+	 * Cache the calculated row, which must be in flight, returning its in-flight future
+	 * @param row
+	 * @param calculated
+	 * @return
+	 */
+	private CompletableFuture<Row> install(int row, Row calculated) {
+		int slot = allocateSlot(row);
+		rows[slot] = calculated;
+		return inFlight.remove(row);
+	}
+
+	/**
+	 * Get a slot for the row, evicting the least recently used row if the cache is full.
+	 * The slot is placed at the head of the LRU list. An evicted row's arrays aren't reused
+	 * as threads which read the row before the eviction may still be reading them.
+	 * @param row
+	 * @return
+	 */
+	private int allocateSlot(int row) {
+		int slot;
+		if (nbUsedSlots < maxRows) {
+			slot = nbUsedSlots++;
+		} else {
+			slot = tail;
+			unlink(slot);
+			slotByRow[rowBySlot[slot]] = NONE;
+			rows[slot] = null;
+			nbEvictions++;
+		}
+		rowBySlot[slot] = row;
+		slotByRow[row] = slot;
+		linkAtHead(slot);
+		return slot;
+	}
+	private void unlink(int slot) {
+		int p = prev[slot];
+		int n = next[slot];
+		if (p != NONE) {
+			next[p] = n;
+		} else {
+			head = n;
+		}
+		if (n != NONE) {
+			prev[n] = p;
+		} else {
+			tail = p;
+		}
+	}
+
+	private void linkAtHead(int slot) {
+		prev[slot] = NONE;
+		next[slot] = head;
+		if (head != NONE) {
+			prev[head] = slot;
+		}
+		head = slot;
+		if (tail == NONE) {
+			tail = slot;
+		}
+	}
+}
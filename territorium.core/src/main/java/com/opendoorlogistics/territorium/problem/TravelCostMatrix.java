@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.problem;
+
+import java.util.List;
+
+import com.opendoorlogistics.territorium.problem.location.Location;
+
+/**
+ * Dense location-by-customer matrix of generalised travel cost, i.e. distance and time
+ * already multiplied by each customer's cost per unit distance and time.
+ * The preferred cluster multiplier is not included as it depends on the assigned cluster;
+ * {@link Problem} applies it afterwards.
+ * @author Phil
+ *
+ */
+public class TravelCostMatrix {
+	private final int nbLocations;
+	private final int nbCustomers;
+	private final double[] costs;
+
+	private TravelCostMatrix(int nbLocations, int nbCustomers, double[] costs) {
+		this.nbLocations = nbLocations;
+		this.nbCustomers = nbCustomers;
+		this.costs = costs;
+	}
+
+	public int getNbLocations() {
+		return nbLocations;
+	}
+
+	public int getNbCustomers() {
+		return nbCustomers;
+	}
+
+	/**
+	 * Get the travel cost from the location to the customer, excluding the preferred cluster multiplier
+	 * @param fromLocationIndex
+	 * @param customerIndex
+	 * @return
+	 */
+	public double getCost(int fromLocationIndex, int customerIndex) {
+		return costs[fromLocationIndex * nbCustomers + customerIndex];
+	}
+
+	/**
+	 * Compile the matrix for all locations in the problem (customers and cluster target centres)
+	 * using the problem's current travel matrix and customer cost coefficients.
+	 * The matrix is a snapshot and must be recompiled if any of these change.
+	 * @param problem
+	 * @return
+	 */
+	public static TravelCostMatrix compile(Problem problem) {
+		List<Location> locations = Problem.getAllLocations(problem);
+		int maxLocIndx = -1;
+		for (Location location : locations) {
+			maxLocIndx = Math.max(location.getIndex(), maxLocIndx);
+		}
+		int nbLocations = maxLocIndx + 1;
+
+		// only compile rows for locations which are actually used, the travel matrix may not define the others
+		boolean[] used = new boolean[nbLocations];
+		for (Location location : locations) {
+			used[location.getIndex()] = true;
+		}
+
+		List<Customer> customers = problem.getCustomers();
+		int nbCustomers = customers.size();
+		long size = (long) nbLocations * nbCustomers;
+		if (size > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Problem is too large (" + nbLocations + " locations by " + nbCustomers
+					+ " customers) to precompile travel costs");
+		}
+
+		// read each customer's details once
+		int[] toIndices = new int[nbCustomers];
+		double[] costPerDistance = new double[nbCustomers];
+		double[] costPerTime = new double[nbCustomers];
+		for (int j = 0; j < nbCustomers; j++) {
+			Customer customer = customers.get(j);
+			toIndices[j] = customer.getLocation().getIndex();
+			costPerDistance[j] = customer.getCostPerUnitDistance();
+			costPerTime[j] = customer.getCostPerUnitTime();
+		}
+
+		TravelMatrix travelMatrix = problem.getTravelMatrix();
+		double[] costs = new double[(int) size];
+		for (int from = 0; from < nbLocations; from++) {
+			if (!used[from]) {
+				continue;
+			}
+			int offset = from * nbCustomers;
+			for (int j = 0; j < nbCustomers; j++) {
+				int to = toIndices[j];
+				costs[offset + j] = travelMatrix.getDistance(from, to) * costPerDistance[j]
+						+ travelMatrix.getTime(from, to) * costPerTime[j];
+			}
+		}
+		return new TravelCostMatrix(nbLocations, nbCustomers, costs);
+	}
+}
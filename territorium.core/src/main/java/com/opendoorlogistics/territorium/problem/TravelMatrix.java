@@ -17,4 +17,26 @@ package com.opendoorlogistics.territorium.problem;
 
 public interface TravelMatrix {
 	DistanceTime get(int fromLocationIndex, int toLocationIndex);
+	
+	/**
+	 * Get the distance only. Implementations backed by primitive arrays
+	 * should override this so the solver's hot paths don't allocate or 
+	 * chase a pointer to a {@link DistanceTime} object.
+	 * @param fromLocationIndex
+	 * @param toLocationIndex
+	 * @return
+	 */
+	default double getDistance(int fromLocationIndex, int toLocationIndex){
+		return get(fromLocationIndex, toLocationIndex).getDistance();
+	}
+	
+	/**
+	 * Get the time only. See {@link #getDistance(int, int)}.
+	 * @param fromLocationIndex
+	 * @param toLocationIndex
+	 * @return
+	 */
+	default double getTime(int fromLocationIndex, int toLocationIndex){
+		return get(fromLocationIndex, toLocationIndex).getTime();
+	}
 }
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.problem;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Binary travel matrix file format, read by {@link MappedFileTravelMatrix} and
+ * written by {@link TravelMatrixFileWriter}. All values are little-endian.
+ * <pre>
+ * offset  size  field
+ * 0       4     magic number 'TMTX'
+ * 4       4     format version
+ * 8       4     number of locations n
+ * 12      4     bytes per value (4 = float, 8 = double)
+ * 16      8     CRC32 checksum of the distance and time blocks
+ * 24      8     reserved (0)
+ * 32      ...   distance block, n*n values row-major (from * n + to)
+ * ...     ...   time block, n*n values row-major
+ * </pre>
+ * @author Phil
+ *
+ */
+public class TravelMatrixFileFormat {
+	public static final int MAGIC = 0x544D5458;
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 32;
+
+	public enum Precision {
+		FLOAT32(4), FLOAT64(8);
+
+		private final int bytesPerValue;
+
+		private Precision(int bytesPerValue) {
+			this.bytesPerValue = bytesPerValue;
+		}
+
+		public int getBytesPerValue() {
+			return bytesPerValue;
+		}
+
+		static Precision fromBytesPerValue(int bytesPerValue) {
+			for (Precision precision : values()) {
+				if (precision.bytesPerValue == bytesPerValue) {
+					return precision;
+				}
+			}
+			return null;
+		}
+	}
+
+	public static class Header {
+		private final int nbLocations;
+		private final Precision precision;
+		private final long checksum;
+
+		public Header(int nbLocations, Precision precision, long checksum) {
+			this.nbLocations = nbLocations;
+			this.precision = precision;
+			this.checksum = checksum;
+		}
+
+		public int getNbLocations() {
+			return nbLocations;
+		}
+
+		public Precision getPrecision() {
+			return precision;
+		}
+
+		public long getChecksum() {
+			return checksum;
+		}
+
+		/**
+		 * @return Size in bytes of a single block (distance or time)
+		 */
+		public long getBlockSize() {
+			return (long) nbLocations * nbLocations * precision.getBytesPerValue();
+		}
+
+		/**
+		 * @return Expected total file size in bytes
+		 */
+		public long getFileSize() {
+			return HEADER_SIZE + 2 * getBlockSize();
+		}
+
+		ByteBuffer write() {
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(nbLocations);
+			buffer.putInt(precision.getBytesPerValue());
+			buffer.putLong(checksum);
+			buffer.putLong(0);
+			((Buffer) buffer).flip();
+			return buffer;
+		}
+
+		static Header read(ByteBuffer buffer) throws IOException {
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+				throw new IOException("Not a travel matrix file");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported travel matrix file version " + version);
+			}
+			int nbLocations = buffer.getInt();
+			if (nbLocations < 0) {
+				throw new IOException("Invalid number of locations " + nbLocations + " in travel matrix file");
+			}
+			int bytesPerValue = buffer.getInt();
+			Precision precision = Precision.fromBytesPerValue(bytesPerValue);
+			if (precision == null) {
+				throw new IOException("Invalid precision (" + bytesPerValue + " bytes per value) in travel matrix file");
+			}
+			long checksum = buffer.getLong();
+			return new Header(nbLocations, precision, checksum);
+		}
+	}
+}
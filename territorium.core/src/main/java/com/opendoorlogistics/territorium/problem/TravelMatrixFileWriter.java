@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.problem;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import com.opendoorlogistics.territorium.problem.TravelMatrixFileFormat.Header;
+import com.opendoorlogistics.territorium.problem.TravelMatrixFileFormat.Precision;
+
+/**
+ * Writes a {@link TravelMatrix} to the binary format described in {@link TravelMatrixFileFormat}.
+ * Rows are streamed from the source matrix so the whole matrix never needs to be held in memory,
+ * i.e. the source can calculate values on-the-fly.
+ * @author Phil
+ *
+ */
+public class TravelMatrixFileWriter {
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Write the matrix to the file, overwriting it if it exists
+	 * @param source
+	 * @param nbLocations Number of locations, i.e. the max location index + 1
+	 * @param precision FLOAT32 halves the file size but loses precision
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void write(TravelMatrix source, int nbLocations, Precision precision, File file) throws IOException {
+		if (nbLocations < 0) {
+			throw new IllegalArgumentException("Number of locations cannot be negative");
+		}
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			// write a placeholder header first as we only know the checksum at the end
+			channel.write(new Header(nbLocations, precision, 0).write());
+
+			CRC32 crc = new CRC32();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			for (int block = 0; block < 2; block++) {
+				boolean distance = block == 0;
+				for (int from = 0; from < nbLocations; from++) {
+					for (int to = 0; to < nbLocations; to++) {
+						if (buffer.remaining() < precision.getBytesPerValue()) {
+							flush(buffer, crc, channel);
+						}
+						double value = distance ? source.getDistance(from, to) : source.getTime(from, to);
+						if (precision == Precision.FLOAT32) {
+							buffer.putFloat((float) value);
+						} else {
+							buffer.putDouble(value);
+						}
+					}
+				}
+			}
+			flush(buffer, crc, channel);
+
+			// now go back and write the real header
+			channel.position(0);
+			channel.write(new Header(nbLocations, precision, crc.getValue()).write());
+		}
+	}
+
+	private static void flush(ByteBuffer buffer, CRC32 crc, FileChannel channel) throws IOException {
+		((Buffer) buffer).flip();
+		crc.update(buffer.duplicate());
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		((Buffer) buffer).clear();
+	}
+}
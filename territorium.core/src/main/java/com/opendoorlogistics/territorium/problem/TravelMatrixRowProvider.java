@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium.problem;
+
+/**
+ * Calculates whole rows of a travel matrix on request, e.g. using a road network engine.
+ * Used by {@link RowCachingTravelMatrix} so only rows which are actually read get calculated.
+ * @author Phil
+ *
+ */
+public interface TravelMatrixRowProvider {
+	/**
+	 * 
+	 * @return Number of locations, i.e. the length of each row
+	 */
+	int getNbLocations();
+
+	/**
+	 * Calculate distance and time from the location to every location
+	 * @param fromLocationIndex
+	 * @param outDistances Filled with distance by destination location index
+	 * @param outTimes Filled with time by destination location index
+	 */
+	void computeRow(int fromLocationIndex, double[] outDistances, double[] outTimes);
+
+	/**
+	 * Calculate several rows together. Providers which can batch requests (e.g. a one-to-many
+	 * or many-to-many road network query) should override this.
+	 * @param fromLocationIndices
+	 * @param outDistances One row array per from location
+	 * @param outTimes One row array per from location
+	 */
+	default void computeRows(int[] fromLocationIndices, double[][] outDistances, double[][] outTimes) {
+		for (int i = 0; i < fromLocationIndices.length; i++) {
+			computeRow(fromLocationIndices[i], outDistances[i], outTimes[i]);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.opendoorlogistics.territorium.examples.XYMinMaxQuantitiesHeterogeneousClusters;
+import com.opendoorlogistics.territorium.optimiser.data.KNearestCustomer2CustomerNgbMatrix;
+import com.opendoorlogistics.territorium.optimiser.solver.Solver;
+import com.opendoorlogistics.territorium.optimiser.solver.SolverConfig;
+import com.opendoorlogistics.territorium.problem.Customer;
+import com.opendoorlogistics.territorium.problem.FlatArrayTravelMatrix;
+import com.opendoorlogistics.territorium.problem.Problem;
+import com.opendoorlogistics.territorium.problem.location.LatLongLocation;
+import com.opendoorlogistics.territorium.problem.location.Location;
+
+public class TestClosestNeighbourMatrices {
+	private static final int K = 10;
+
+	private static Problem buildXYProblem(Random random) {
+		return new XYMinMaxQuantitiesHeterogeneousClusters().setNbCustomers(300).setNbClusters(5).build(random);
+	}
+
+	/**
+	 * Check the K nearest have the same costs, in the same order, as a brute force sort
+	 * (compare costs not indices as ties can be ordered either way)
+	 */
+	private static void checkAgainstBruteForce(Problem problem, KNearestCustomer2CustomerNgbMatrix matrix) {
+		int n = problem.getCustomers().size();
+		assertEquals(K, matrix.getK());
+		for (int i = 0; i < n; i++) {
+			Location from = problem.getCustomers().get(i).getLocation();
+			double[] costs = new double[n];
+			for (int j = 0; j < n; j++) {
+				costs[j] = problem.getTravelCost(-1, from, j);
+			}
+			Arrays.sort(costs);
+
+			assertEquals(K, matrix.getNbClosestNeighbours(i));
+			for (int nn = 0; nn < K; nn++) {
+				assertEquals(costs[nn], problem.getTravelCost(-1, from, matrix.getClosestNeighbour(i, nn)), 1E-12);
+			}
+		}
+	}
+
+	@Test
+	public void testKDTreeXY() {
+		Problem problem = buildXYProblem(new Random(123));
+		checkAgainstBruteForce(problem, new KNearestCustomer2CustomerNgbMatrix(problem, K));
+	}
+
+	@Test
+	public void testKDTreeLatLong() {
+		Random random = new Random(123);
+		Problem problem = buildXYProblem(random);
+		int n = problem.getCustomers().size();
+		FlatArrayTravelMatrix.Builder builder = new FlatArrayTravelMatrix.Builder(n);
+		for (int i = 0; i < n; i++) {
+			// spread across the antimeridian to check wrap-around
+			LatLongLocation ll = new LatLongLocation(-60 + 120 * random.nextDouble(), 170 + 20 * random.nextDouble());
+			ll.setIndex(i);
+			problem.getCustomers().get(i).setLocation(ll);
+		}
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				double d = greatCircle((LatLongLocation) problem.getCustomers().get(i).getLocation(),
+						(LatLongLocation) problem.getCustomers().get(j).getLocation());
+				builder.set(i, j, d, d);
+			}
+		}
+		problem.setTravelMatrix(builder.build());
+		checkAgainstBruteForce(problem, new KNearestCustomer2CustomerNgbMatrix(problem, K));
+	}
+
+	@Test
+	public void testRowSelectionForNonSpatialLocations() {
+		Problem problem = buildXYProblem(new Random(123));
+		for (Customer customer : problem.getCustomers()) {
+			Location plain = new Location();
+			plain.setIndex(customer.getLocation().getIndex());
+			customer.setLocation(plain);
+		}
+		checkAgainstBruteForce(problem, new KNearestCustomer2CustomerNgbMatrix(problem, K));
+	}
+
+	@Test
+	public void testSolverChoosesSparseAboveThreshold() {
+		Problem problem = buildXYProblem(new Random(123));
+		SolverConfig config = new SolverConfig();
+		assertTrue(Solver.createClosestNgbMatrix(problem, config).getNbClosestNeighbours(0) == problem.getCustomers().size());
+
+		config.setSparseNearestNeighboursThreshold(problem.getCustomers().size() - 1);
+		config.setNbNearestNeighbours(K);
+		assertTrue(Solver.createClosestNgbMatrix(problem, config) instanceof KNearestCustomer2CustomerNgbMatrix);
+	}
+
+	private static double greatCircle(LatLongLocation a, LatLongLocation b) {
+		double lat1 = Math.toRadians(a.getLatitude());
+		double lat2 = Math.toRadians(b.getLatitude());
+		double dLat = lat2 - lat1;
+		double dLng = Math.toRadians(b.getLongitude() - a.getLongitude());
+		double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+				+ Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+		return 2 * Math.asin(Math.min(1, Math.sqrt(h)));
+	}
+}
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.opendoorlogistics.territorium.examples.XYMinMaxQuantitiesHeterogeneousClusters;
+import com.opendoorlogistics.territorium.optimiser.data.ClusterAdjacencyGraph;
+import com.opendoorlogistics.territorium.optimiser.data.Customer2CustomerClosestNgbMatrix;
+import com.opendoorlogistics.territorium.optimiser.data.KNearestCustomer2CustomerNgbMatrix;
+import com.opendoorlogistics.territorium.optimiser.data.MutableSolution;
+import com.opendoorlogistics.territorium.problem.Problem;
+import com.opendoorlogistics.territorium.problem.location.XYLocation;
+
+import gnu.trove.list.array.TIntArrayList;
+
+public class TestClusterAdjacencyGraph {
+	private static final int K = 8;
+
+	@Test
+	public void testIncrementalMatchesRebuild() {
+		Random random = new Random(123);
+		Problem problem = new XYMinMaxQuantitiesHeterogeneousClusters().setNbCustomers(200).setNbClusters(8).build(random);
+		int nbCustomers = problem.getCustomers().size();
+		int nbClusters = problem.getClusters().size();
+		int[] assignment = new int[nbCustomers];
+		for (int i = 0; i < nbCustomers; i++) {
+			assignment[i] = random.nextInt(nbClusters + 1) - 1;
+		}
+
+		Customer2CustomerClosestNgbMatrix neighbours = new KNearestCustomer2CustomerNgbMatrix(problem, K * 2);
+		MutableSolution solution = new MutableSolution(problem, assignment);
+		solution.setClusterAdjacency(new ClusterAdjacencyGraph(neighbours, K, solution));
+
+		for (int step = 0; step < 2000; step++) {
+			solution.setCustomerToCluster(random.nextInt(nbCustomers), random.nextInt(nbClusters + 1) - 1);
+			if (step % 100 == 0) {
+				checkEqual(solution.getClusterAdjacency(), new ClusterAdjacencyGraph(neighbours, K, solution), nbClusters,
+						nbCustomers);
+			}
+		}
+	}
+
+	@Test
+	public void testMostLinkedOrdering() {
+		Random random = new Random(456);
+		Problem problem = new XYMinMaxQuantitiesHeterogeneousClusters().setNbCustomers(200).setNbClusters(10).build(random);
+		int nbClusters = problem.getClusters().size();
+		int[] assignment = new int[problem.getCustomers().size()];
+		for (int i = 0; i < assignment.length; i++) {
+			assignment[i] = random.nextInt(nbClusters);
+		}
+		MutableSolution solution = new MutableSolution(problem, assignment);
+		ClusterAdjacencyGraph graph = new ClusterAdjacencyGraph(new KNearestCustomer2CustomerNgbMatrix(problem, K), K, solution);
+
+		TIntArrayList list = new TIntArrayList();
+		for (int c = 0; c < nbClusters; c++) {
+			graph.getMostLinkedClusters(c, 4, list);
+			assertEquals(Math.min(4, graph.getNbLinkedClusters(c)), list.size());
+			for (int i = 1; i < list.size(); i++) {
+				int prev = graph.getNbLinks(c, list.get(i - 1));
+				int current = graph.getNbLinks(c, list.get(i));
+				assertTrue(prev > current || (prev == current && list.get(i - 1) < list.get(i)));
+			}
+
+			// nothing left out should have more links than the last one kept
+			if (list.size() > 0) {
+				int last = graph.getNbLinks(c, list.get(list.size() - 1));
+				for (int other = 0; other < nbClusters; other++) {
+					if (other != c && !list.contains(other)) {
+						assertTrue(graph.getNbLinks(c, other) <= last);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testBoundaryCustomers() {
+		Random random = new Random(789);
+		Problem problem = new XYMinMaxQuantitiesHeterogeneousClusters().setNbCustomers(200).setNbClusters(4).build(random);
+		int nbCustomers = problem.getCustomers().size();
+		int nbClusters = problem.getClusters().size();
+
+		// assign by quadrant so most customers are interior
+		int[] assignment = new int[nbCustomers];
+		for (int i = 0; i < nbCustomers; i++) {
+			XYLocation location = (XYLocation) problem.getCustomers().get(i).getLocation();
+			assignment[i] = (location.getX() < 0 ? 0 : 1) + (location.getY() < 0 ? 0 : 2);
+		}
+		Customer2CustomerClosestNgbMatrix neighbours = new KNearestCustomer2CustomerNgbMatrix(problem, K * 2);
+		MutableSolution solution = new MutableSolution(problem, assignment);
+		ClusterAdjacencyGraph graph = new ClusterAdjacencyGraph(neighbours, K, solution);
+		solution.setClusterAdjacency(graph);
+		assertTrue(graph.getNbBoundaryCustomers() > 0);
+		assertTrue(graph.getNbBoundaryCustomers() < nbCustomers / 2);
+
+		for (int step = 0; step < 500; step++) {
+			solution.setCustomerToCluster(random.nextInt(nbCustomers), random.nextInt(nbClusters));
+
+			// check against a brute force count
+			int nbBoundary = 0;
+			for (int i = 0; i < nbCustomers; i++) {
+				int cluster = solution.getClusterIndex(i);
+				boolean[] neighbourClusters = new boolean[nbClusters];
+				int nbForeign = 0;
+				for (int nn = 0, found = 0; nn < neighbours.getNbClosestNeighbours(i) && found < K; nn++) {
+					int j = neighbours.getClosestNeighbour(i, nn);
+					if (j != i && j != -1) {
+						found++;
+						int other = solution.getClusterIndex(j);
+						if (other != cluster) {
+							nbForeign++;
+							neighbourClusters[other] = true;
+						}
+					}
+				}
+				assertEquals(nbForeign, graph.getNbForeignNeighbours(i));
+				assertEquals(nbForeign > 0, graph.isBoundary(i));
+				for (int c = 0; c < nbClusters; c++) {
+					if (c != cluster) {
+						assertEquals(neighbourClusters[c], graph.hasNeighbourInCluster(i, c, solution));
+					}
+				}
+				if (nbForeign > 0) {
+					nbBoundary++;
+				}
+			}
+			assertEquals(nbBoundary, graph.getNbBoundaryCustomers());
+		}
+	}
+
+	private static void checkEqual(ClusterAdjacencyGraph expected, ClusterAdjacencyGraph actual, int nbClusters,
+			int nbCustomers) {
+		assertEquals(expected.getNbBoundaryCustomers(), actual.getNbBoundaryCustomers());
+		for (int i = 0; i < nbCustomers; i++) {
+			assertEquals(expected.getNbForeignNeighbours(i), actual.getNbForeignNeighbours(i));
+		}
+		for (int a = 0; a < nbClusters; a++) {
+			assertEquals(actual.getNbLinkedClusters(a), expected.getNbLinkedClusters(a));
+			for (int b = 0; b < nbClusters; b++) {
+				assertEquals(actual.getNbLinks(a, b), expected.getNbLinks(a, b));
+				assertEquals(expected.getNbLinks(a, b), expected.getNbLinks(b, a));
+			}
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.opendoorlogistics.territorium.examples.XYMinMaxQuantitiesHeterogeneousClusters;
+import com.opendoorlogistics.territorium.optimiser.Main;
+import com.opendoorlogistics.territorium.problem.Customer;
+import com.opendoorlogistics.territorium.problem.Problem;
+import com.opendoorlogistics.territorium.problem.TravelMatrixFileFormat.Precision;
+import com.opendoorlogistics.territorium.problem.TravelMatrixFileWriter;
+import com.opendoorlogistics.territorium.problem.location.Location;
+import com.opendoorlogistics.territorium.utils.StringUtils;
+
+public class TestMain {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static class Result {
+		int exitCode;
+		String stdout;
+		String stderr;
+	}
+
+	private static Result run(String stdin, String... args) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		Result ret = new Result();
+		ret.exitCode = Main.run(args, new ByteArrayInputStream(stdin.getBytes(StandardCharsets.UTF_8)),
+				new PrintStream(out, true), new PrintStream(err, true));
+		ret.stdout = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		ret.stderr = new String(err.toByteArray(), StandardCharsets.UTF_8);
+		return ret;
+	}
+
+	private static void checkResult(JsonNode result, int nbCustomers, int nbClusters) {
+		assertEquals(nbCustomers, result.get("assignment").size());
+		assertEquals(nbClusters, result.get("clusters").size());
+		int total = 0;
+		for (JsonNode cluster : result.get("clusters")) {
+			total += cluster.get("nbCustomers").asInt();
+		}
+		int assigned = 0;
+		for (JsonNode clusterIndx : result.get("assignment")) {
+			assertTrue(clusterIndx.asInt() < nbClusters);
+			if (clusterIndx.asInt() >= 0) {
+				assigned++;
+			}
+		}
+		assertEquals(assigned, total);
+	}
+
+	@Test
+	public void testJsonFromStdin() throws Exception {
+		Problem problem = new Problem(
+				new XYMinMaxQuantitiesHeterogeneousClusters().setNbCustomers(60).setNbClusters(4).build(new Random(123)));
+		problem.setTravelMatrix(null);
+
+		Result result = run(StringUtils.toPrettyPrintJSON(problem), "--steps", "5", "--seed", "1");
+		assertEquals(result.stderr, 0, result.exitCode);
+		checkResult(new ObjectMapper().readTree(result.stdout), 60, 4);
+		assertTrue(result.stderr.contains("Finished"));
+	}
+
+	@Test
+	public void testCsvWithMatrixFile() throws Exception {
+		Problem problem = new XYMinMaxQuantitiesHeterogeneousClusters().setNbCustomers(40).setNbClusters(3)
+				.build(new Random(123));
+		int nbLocations = 0;
+		for (Location location : Problem.getAllLocations(problem)) {
+			nbLocations = Math.max(nbLocations, location.getIndex() + 1);
+		}
+		File matrix = folder.newFile("matrix.bin");
+		TravelMatrixFileWriter.write(problem.getTravelMatrix(), nbLocations, Precision.FLOAT64, matrix);
+
+		File customers = folder.newFile("customers.csv");
+		try (PrintWriter writer = new PrintWriter(customers, "UTF-8")) {
+			writer.println("locationIndex,quantity");
+			for (Customer customer : problem.getCustomers()) {
+				writer.println(customer.getLocation().getIndex() + "," + customer.getQuantity());
+			}
+		}
+
+		File output = new File(folder.getRoot(), "out.json");
+		Result result = run("", "--problem", customers.getPath(), "--matrix", matrix.getPath(), "--nb-clusters", "3",
+				"--steps", "3", "--output", output.getPath());
+		assertEquals(result.stderr, 0, result.exitCode);
+		checkResult(new ObjectMapper().readTree(output), 40, 3);
+
+		// locations without x and y need a matrix
+		result = run("", "--problem", customers.getPath(), "--nb-clusters", "3");
+		assertEquals(1, result.exitCode);
+	}
+
+	@Test
+	public void testBadArguments() {
+		assertEquals(2, run("", "--steps").exitCode);
+		assertEquals(2, run("", "--unknown", "1").exitCode);
+		assertEquals(2, run("", "--threads", "0").exitCode);
+		assertEquals(0, run("", "--help").exitCode);
+	}
+
+	@Test
+	public void testXYLocationsRoundTrip() throws Exception {
+		Result result = run("locationIndex,x,y\n0,0,0\n1,1,0\n2,10,10\n3,11,10\n", "--format", "csv", "--nb-clusters", "2",
+				"--steps", "2");
+		assertEquals(result.stderr, 0, result.exitCode);
+		JsonNode json = new ObjectMapper().readTree(result.stdout);
+		checkResult(json, 4, 2);
+		JsonNode assignment = json.get("assignment");
+		assertEquals(assignment.get(0).asInt(), assignment.get(1).asInt());
+		assertEquals(assignment.get(2).asInt(), assignment.get(3).asInt());
+		assertTrue(assignment.get(0).asInt() != assignment.get(2).asInt());
+	}
+}
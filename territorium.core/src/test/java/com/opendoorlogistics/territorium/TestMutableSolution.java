@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.opendoorlogistics.territorium.examples.XYMinMaxQuantitiesHeterogeneousClusters;
+import com.opendoorlogistics.territorium.optimiser.data.Cost;
+import com.opendoorlogistics.territorium.optimiser.data.MutableSolution;
+import com.opendoorlogistics.territorium.optimiser.data.SolutionSnapshot;
+import com.opendoorlogistics.territorium.problem.Cluster;
+import com.opendoorlogistics.territorium.problem.Customer;
+import com.opendoorlogistics.territorium.problem.FixedCentreCostTable;
+import com.opendoorlogistics.territorium.problem.Problem;
+import com.opendoorlogistics.territorium.problem.Problem.QuantityViolationType;
+import com.opendoorlogistics.territorium.problem.ProblemIndex;
+import com.opendoorlogistics.territorium.problem.ProblemIndex.ApproximateCentres;
+import com.opendoorlogistics.territorium.problem.location.Location;
+
+import gnu.trove.list.array.TIntArrayList;
+
+public class TestMutableSolution {
+
+	/**
+	 * Build a problem exercising all cost components: fixed and target centres,
+	 * preferred clusters and square quantity violation
+	 */
+	private static Problem buildProblem(Random random, QuantityViolationType qvt) {
+		int nbClusters = 6;
+		Problem problem = new XYMinMaxQuantitiesHeterogeneousClusters().setNbCustomers(60).setNbClusters(nbClusters)
+				.build(random);
+		problem.setQuantityViolationType(qvt);
+
+		for (int i = 0; i < nbClusters; i++) {
+			Cluster cluster = problem.getClusters().get(i);
+			if (i < 4) {
+				cluster.setTargetCentre(problem.getCustomers().get(random.nextInt(problem.getCustomers().size())).getLocation());
+				cluster.setTargetCentreCostPerUnitDistance(random.nextDouble());
+				cluster.setFixCentreToTarget(i < 2);
+			}
+		}
+
+		for (Customer customer : problem.getCustomers()) {
+			if (random.nextBoolean()) {
+				customer.setPreferredClusterIndex(random.nextInt(nbClusters));
+				customer.setTravelCostMultiplier4PreferredClusterIndex(0.5);
+				customer.setPreferredClusterPenaltyCost(random.nextDouble());
+			}
+		}
+		return problem;
+	}
+
+	private static int[] randomAssignment(Random random, Problem problem) {
+		int[] ret = new int[problem.getCustomers().size()];
+		for (int i = 0; i < ret.length; i++) {
+			// leave some unassigned
+			ret[i] = random.nextInt(problem.getClusters().size() + 1) - 1;
+		}
+		return ret;
+	}
+
+	@Test
+	public void testEvaluateSetMatchesMove() {
+		for (QuantityViolationType qvt : QuantityViolationType.values()) {
+			Random random = new Random(123);
+			Problem problem = buildProblem(random, qvt);
+			MutableSolution solution = new MutableSolution(problem, randomAssignment(random, problem));
+			int nbCustomers = problem.getCustomers().size();
+			Cost evaluated = new Cost();
+			for (int i = 0; i < 2000; i++) {
+				int customer = random.nextInt(nbCustomers);
+				int cluster = random.nextInt(problem.getClusters().size() + 1) - 1;
+
+				Cost before = new Cost(solution.getCost());
+				int[] assignmentBefore = solution.getCustomersToClusters();
+				solution.evaluateSet(customer, cluster, evaluated);
+
+				// evaluation must not change the solution at all
+				assertEquals(before.getCost(), solution.getCost().getCost(), 0);
+				assertEquals(before.getQuantityViolation(), solution.getCost().getQuantityViolation(), 0);
+				assertArrayEquals(assignmentBefore, solution.getCustomersToClusters());
+
+				// keep the move half the time so the solution evolves
+				solution.setCustomerToCluster(customer, cluster);
+				checkApproxEqual(solution.getCost(), evaluated);
+				if (random.nextBoolean()) {
+					solution.setCustomerToCluster(customer, assignmentBefore[customer]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testEvaluateSwapMatchesMove() {
+		for (QuantityViolationType qvt : QuantityViolationType.values()) {
+			Random random = new Random(456);
+			Problem problem = buildProblem(random, qvt);
+			int[] assignment = randomAssignment(random, problem);
+			for (int i = 0; i < assignment.length; i++) {
+				assignment[i] = Math.max(0, assignment[i]);
+			}
+			MutableSolution solution = new MutableSolution(problem, assignment);
+			int nbCustomers = problem.getCustomers().size();
+			Cost evaluated = new Cost();
+			for (int i = 0; i < 2000; i++) {
+				int customer1 = random.nextInt(nbCustomers);
+				int customer2 = random.nextInt(nbCustomers);
+				int cluster1 = solution.getClusterIndex(customer1);
+				int cluster2 = solution.getClusterIndex(customer2);
+
+				Cost before = new Cost(solution.getCost());
+				solution.evaluateSwap(customer1, customer2, evaluated);
+				assertEquals(before.getCost(), solution.getCost().getCost(), 0);
+				assertEquals(before.getQuantityViolation(), solution.getCost().getQuantityViolation(), 0);
+
+				solution.setCustomerToCluster(customer1, cluster2);
+				solution.setCustomerToCluster(customer2, cluster1);
+				checkApproxEqual(solution.getCost(), evaluated);
+			}
+		}
+	}
+
+	@Test
+	public void testUpdateOnlyChangedClustersMatchesRebuild() {
+		Random random = new Random(789);
+		Problem problem = buildProblem(random, QuantityViolationType.LINEAR);
+		MutableSolution solution = new MutableSolution(problem, randomAssignment(random, problem));
+		int nbCustomers = problem.getCustomers().size();
+		for (int i = 0; i < 500; i++) {
+			// move a few customers then update, sometimes without moving any
+			int nbMoves = random.nextInt(4);
+			for (int j = 0; j < nbMoves; j++) {
+				solution.setCustomerToCluster(random.nextInt(nbCustomers), random.nextInt(problem.getClusters().size() + 1) - 1);
+			}
+			solution.update();
+
+			// unchanged clusters recalculate to exactly the same values so results should be identical
+			MutableSolution rebuilt = new MutableSolution(problem, solution.getCustomersToClusters());
+			assertEquals(rebuilt.getCost().getCost(), solution.getCost().getCost(), 0);
+			assertEquals(rebuilt.getCost().getQuantityViolation(), solution.getCost().getQuantityViolation(), 0);
+			assertArrayEquals(rebuilt.getClusterCentres(), solution.getClusterCentres());
+		}
+	}
+
+	@Test
+	public void testCompiledProblemIndexGivesIdenticalCosts() {
+		for (QuantityViolationType qvt : QuantityViolationType.values()) {
+			Random random = new Random(321);
+			Problem problem = buildProblem(random, qvt);
+			Problem compiled = new Problem(problem);
+			compiled.setProblemIndex(ProblemIndex.compile(compiled));
+			assertNull(problem.getProblemIndex());
+
+			int nbClusters = problem.getClusters().size();
+			for (int c = -1; c < nbClusters; c++) {
+				for (int i = 0; i < problem.getCustomers().size(); i++) {
+					Location from = problem.getCustomers().get(random.nextInt(problem.getCustomers().size())).getLocation();
+					assertEquals(problem.getTravelCost(c, from, i), compiled.getTravelCost(c, from, i), 0);
+				}
+			}
+
+			// the index path should give bit-identical costs, so search trajectories don't change
+			for (int i = 0; i < 20; i++) {
+				int[] assignment = randomAssignment(random, problem);
+				MutableSolution a = new MutableSolution(problem, assignment);
+				MutableSolution b = new MutableSolution(compiled, assignment);
+				assertEquals(a.getCost().getCost(), b.getCost().getCost(), 0);
+				assertEquals(a.getCost().getQuantityViolation(), b.getCost().getQuantityViolation(), 0);
+				for (int c = 0; c < nbClusters; c++) {
+					assertEquals(a.getClusterCost(c).getCost(), b.getClusterCost(c).getCost(), 0);
+				}
+			}
+
+			// changing the problem clears the now-stale index
+			compiled.setClusters(problem.getClusters());
+			assertNull(compiled.getProblemIndex());
+		}
+	}
+
+	@Test
+	public void testFixedCentreCostTableGivesIdenticalCosts() {
+		for (QuantityViolationType qvt : QuantityViolationType.values()) {
+			Random random = new Random(654);
+			Problem problem = buildProblem(random, qvt);
+			Problem compiled = new Problem(problem);
+			compiled.setFixedCentreCostTable(FixedCentreCostTable.compile(compiled));
+			assertNull(compiled.getFixedCentreCostTable().getCosts(2));
+
+			// moves and evaluations should be bit-identical with and without the table
+			int[] assignment = randomAssignment(random, problem);
+			MutableSolution a = new MutableSolution(problem, assignment);
+			MutableSolution b = new MutableSolution(compiled, assignment);
+			int nbCustomers = problem.getCustomers().size();
+			Cost evaluatedA = new Cost();
+			Cost evaluatedB = new Cost();
+			for (int i = 0; i < 2000; i++) {
+				int customer = random.nextInt(nbCustomers);
+				int cluster = random.nextInt(problem.getClusters().size() + 1) - 1;
+				a.evaluateSet(customer, cluster, evaluatedA);
+				b.evaluateSet(customer, cluster, evaluatedB);
+				assertEquals(evaluatedA.getCost(), evaluatedB.getCost(), 0);
+				assertEquals(evaluatedA.getQuantityViolation(), evaluatedB.getQuantityViolation(), 0);
+
+				a.setCustomerToCluster(customer, cluster);
+				b.setCustomerToCluster(customer, cluster);
+				assertEquals(a.getCost().getCost(), b.getCost().getCost(), 0);
+			}
+
+			// changing the problem clears the now-stale table
+			compiled.setTravelMatrix(problem.getTravelMatrix());
+			assertNull(compiled.getFixedCentreCostTable());
+		}
+	}
+
+	@Test
+	public void testApproximateCentresEvaluateAndUpdateConsistently() {
+		for (QuantityViolationType qvt : QuantityViolationType.values()) {
+			Random random = new Random(987);
+			Problem problem = new Problem(buildProblem(random, qvt));
+			problem.setProblemIndex(ProblemIndex.compile(problem, ApproximateCentres.ALL, 4));
+			MutableSolution solution = new MutableSolution(problem, randomAssignment(random, problem));
+			int nbCustomers = problem.getCustomers().size();
+			int nbClusters = problem.getClusters().size();
+			Cost evaluated = new Cost();
+			for (int i = 0; i < 2000; i++) {
+				int customer = random.nextInt(nbCustomers);
+				int cluster = random.nextInt(nbClusters + 1) - 1;
+				solution.evaluateSet(customer, cluster, evaluated);
+				solution.setCustomerToCluster(customer, cluster);
+				checkApproxEqual(solution.getCost(), evaluated);
+
+				if (i % 50 == 0) {
+					// the centre is re-chosen on update and only depends on the assignment
+					solution.update();
+					MutableSolution rebuilt = new MutableSolution(problem, solution.getCustomersToClusters());
+					assertEquals(rebuilt.getCost().getCost(), solution.getCost().getCost(), 0);
+					assertArrayEquals(rebuilt.getClusterCentres(), solution.getClusterCentres());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSnapshotMatchesRebuild() {
+		Random random = new Random(654);
+		Problem problem = buildProblem(random, QuantityViolationType.SQUARE);
+		MutableSolution solution = new MutableSolution(problem, randomAssignment(random, problem));
+		int nbCustomers = problem.getCustomers().size();
+		int nbClusters = problem.getClusters().size();
+		TIntArrayList expected = new TIntArrayList();
+		TIntArrayList actual = new TIntArrayList();
+		for (int i = 0; i < 50; i++) {
+			solution.setCustomerToCluster(random.nextInt(nbCustomers), random.nextInt(nbClusters + 1) - 1);
+
+			// snapshot with and without an update after the last move
+			if (random.nextBoolean()) {
+				solution.update();
+			}
+			SolutionSnapshot snapshot = new SolutionSnapshot(solution);
+			MutableSolution rebuilt = new MutableSolution(problem, solution.getCustomersToClusters());
+
+			assertEquals(rebuilt.getCost().getCost(), snapshot.getCost().getCost(), 0);
+			assertEquals(rebuilt.getCost().getQuantityViolation(), snapshot.getCost().getQuantityViolation(), 0);
+			assertEquals(rebuilt.getNbUnassignedCustomers(), snapshot.getNbUnassignedCustomers());
+			assertArrayEquals(rebuilt.getCustomersToClusters(), snapshot.getCustomersToClusters());
+			assertArrayEquals(rebuilt.getClusterCentres(), snapshot.getClusterCentres());
+			for (int c = 0; c < nbClusters; c++) {
+				assertEquals(rebuilt.getClusterCost(c).getCost(), snapshot.getClusterCost(c).getCost(), 0);
+				assertEquals(rebuilt.getClusterQuantity(c), snapshot.getClusterQuantity(c), 0);
+				rebuilt.getCustomers(c, expected);
+				snapshot.getCustomers(c, actual);
+				assertEquals(expected, actual);
+				for (int j = 0; j < actual.size(); j++) {
+					assertEquals(actual.get(j), snapshot.getCustomer(c, j));
+				}
+			}
+
+			// the snapshot mustn't change with the solution
+			int[] assignment = snapshot.getCustomersToClusters();
+			solution.setCustomerToCluster(random.nextInt(nbCustomers), random.nextInt(nbClusters));
+			assertArrayEquals(assignment, snapshot.getCustomersToClusters());
+			assertSame(snapshot, SolutionSnapshot.of(snapshot));
+		}
+	}
+
+	private static void checkApproxEqual(Cost expected, Cost actual) {
+		assertEquals(expected.getCost(), actual.getCost(), 1E-8 * Math.max(1, Math.abs(expected.getCost())));
+		assertEquals(expected.getQuantityViolation(), actual.getQuantityViolation(),
+				1E-8 * Math.max(1, Math.abs(expected.getQuantityViolation())));
+	}
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.opendoorlogistics.territorium.examples.XYMinMaxQuantitiesHeterogeneousClusters;
+import com.opendoorlogistics.territorium.optimiser.data.Cost;
+import com.opendoorlogistics.territorium.optimiser.data.ImmutableSolution;
+import com.opendoorlogistics.territorium.optimiser.solver.ContinueCallback.ContinueOption;
+import com.opendoorlogistics.territorium.optimiser.solver.Solver;
+import com.opendoorlogistics.territorium.optimiser.solver.SolverConfig;
+import com.opendoorlogistics.territorium.problem.Problem;
+
+public class TestParallelSolver {
+
+	private static Problem buildProblem() {
+		return new XYMinMaxQuantitiesHeterogeneousClusters().setNbCustomers(150).setNbClusters(8).build(new Random(123));
+	}
+
+	@Test
+	public void testIslandsImproveOnFirstLocalOptimum() {
+		Problem problem = buildProblem();
+		SolverConfig config = new SolverConfig();
+		config.setNbOuterSteps(40);
+		config.setNbIslands(4);
+		config.setIslandMigrationInterval(2);
+
+		// the islands start from the same first solution as greedy improvement when using the same seed
+		ImmutableSolution greedy = new Solver(problem, config, null, new Random(123)).greedyImprove(null);
+
+		Thread caller = Thread.currentThread();
+		long[] maxSteps = new long[1];
+		ImmutableSolution sol = new Solver(problem, config, s -> {
+			assertTrue("Callback should only be called from the calling thread", Thread.currentThread() == caller);
+			maxSteps[0] = Math.max(maxSteps[0], s.getNbOuterSteps());
+			return ContinueOption.KEEP_GOING;
+		}, new Random(123)).solve(null);
+
+		assertEquals(0, sol.getNbUnassignedCustomers());
+		assertTrue(Cost.createApproxEqualComparator().compare(sol.getCost(), greedy.getCost()) <= 0);
+		assertTrue(maxSteps[0] <= config.getNbOuterSteps());
+	}
+
+	@Test
+	public void testIslandsStopWhenCallbackSays() {
+		Problem problem = buildProblem();
+		SolverConfig config = new SolverConfig();
+		config.setNbOuterSteps(Integer.MAX_VALUE);
+		config.setNbIslands(3);
+
+		long start = System.currentTimeMillis();
+		ImmutableSolution sol = new Solver(problem, config,
+				s -> System.currentTimeMillis() - start > 1000 ? ContinueOption.FINISH_NOW : ContinueOption.KEEP_GOING,
+				new Random(123)).solve(null);
+		assertEquals(0, sol.getNbUnassignedCustomers());
+	}
+
+	@Test
+	public void testParallelSubproblemsGiveSameResult() {
+		Problem problem = new XYMinMaxQuantitiesHeterogeneousClusters().setNbCustomers(200).setNbClusters(16)
+				.build(new Random(123));
+		ImmutableSolution[] sols = new ImmutableSolution[2];
+		for (int i = 0; i < 2; i++) {
+			SolverConfig config = new SolverConfig();
+			config.setNbOuterSteps(10);
+			config.setNewSolutionFraction(0);
+			config.setSplitProblemProbability(1);
+			config.setParallelSubproblems(i == 0);
+			sols[i] = new Solver(problem, config, null, new Random(123)).solve(null);
+		}
+		assertArrayEquals(sols[1].getCustomersToClusters(), sols[0].getCustomersToClusters());
+	}
+}
@@ -4,7 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Random;
 
@@ -40,136 +40,140 @@ public class TestPreferredCluster4Customer {
 
 	@Test
 	public void test() {
-		XYMinMaxQuantitiesHeterogeneousClusters builder = new XYMinMaxQuantitiesHeterogeneousClusters();
-		Random random = new Random(123);
+		// Sum the number of customers assigned to their preferred cluster over several problems,
+		// so the assertions don't depend on a single random trajectory
+		int nbProblems = 5;
 		int nbClusters = 5;
 		int nbCustomers = 50;
-		Problem problem = builder.setMinCustomerQuantity(1).setMaxCustomerQuantity(10)
-				.setNbCustomers(nbCustomers).setNbClusters(nbClusters).build(random);
-
-		for (Customer customer : problem.getCustomers()) {
-			customer.setPreferredClusterIndex(random.nextInt(nbClusters));
-			assertEquals(1, customer.getTravelCostMultiplier4PreferredClusterIndex(), 0.0);
-		}
-
 		double[] prefMultiplierVals = new double[] { 100, 1, 0.01 };
 		double[] notPrefPenalty = new double[] { 0, 0.5, 10 };
-
-		// test heuristics independently
-		for (LocalSearchHeuristic heuristicType : LocalSearchHeuristic.values()) {
-			if (heuristicType == LocalSearchHeuristic.NONE) {
-				continue;
+		double[] unlimitedCapacityPenalties = new double[] { 0, 0.3, 10 };
+		int[][] multiplierTotals = new int[LocalSearchHeuristic.values().length][3];
+		int[][] penaltyTotals = new int[LocalSearchHeuristic.values().length][3];
+		int[] solverTotals = new int[3];
+		int[] unlimitedCapacityTotals = new int[3];
+
+		for (int seed = 0; seed < nbProblems; seed++) {
+			XYMinMaxQuantitiesHeterogeneousClusters builder = new XYMinMaxQuantitiesHeterogeneousClusters();
+			Random random = new Random(seed);
+			Problem problem = builder.setMinCustomerQuantity(1).setMaxCustomerQuantity(10)
+					.setNbCustomers(nbCustomers).setNbClusters(nbClusters).build(random);
+
+			for (Customer customer : problem.getCustomers()) {
+				customer.setPreferredClusterIndex(random.nextInt(nbClusters));
+				assertEquals(1, customer.getTravelCostMultiplier4PreferredClusterIndex(), 0.0);
 			}
 
-			for (boolean useMultiplier : new boolean[] { true, false }) {
-
-				ArrayList<Integer> nbCustomersAssigned2Pref = new ArrayList<Integer>();
-				for (double value :useMultiplier? prefMultiplierVals:notPrefPenalty) {
-					for (Customer customer : problem.getCustomers()) {
-						if(useMultiplier) {
-							customer.setTravelCostMultiplier4PreferredClusterIndex(value);
-							customer.setPreferredClusterPenaltyCost(0);
-						}else {
-							customer.setTravelCostMultiplier4PreferredClusterIndex(1);
-							customer.setPreferredClusterPenaltyCost(value);					
-						}
-					}
+			// test heuristics independently
+			for (LocalSearchHeuristic heuristicType : LocalSearchHeuristic.values()) {
+				if (heuristicType == LocalSearchHeuristic.NONE) {
+					continue;
+				}
 
-					// Create initial solution just using randomised weighted as this gives some initial quantity
-					ImmutableSolution initial = TestUtils.constructUsingRandomisedWeighted(random, problem);
-
-					// Setup local search using just the heuristic
-					LocalSearchConfig config = TestUtils.getSingleHeuristicConfig(heuristicType);
-					MutableSolution localSearchSolution = new MutableSolution(problem,
-							initial.getCustomersToClusters());
-
-					// Run iterations until no improvement (should happen quickly)
-					System.out.println(heuristicType.name()
-							+ " mult=" + useMultiplier
-							+ " prefMult=" + value);
-					System.out.println("\tInitial cost before calling " + heuristicType.name() + ": "
-							+ initial.getCost().toSingleLineSummary() + " #custAssigned2Pref="
-							+ getNbCustomersAssigned2PrefCluster(initial) + "/" + nbCustomers);
-					int step = 0;
-					Comparator<Cost> stdComparator = Cost.createApproxEqualComparator();
-					boolean improved = true;
-					while (improved) {
-						improved = TestUtils.createLocalSearch(problem, config, random).runSingleStep(step,
-								stdComparator, localSearchSolution);
-						int nbAssigned2Pref = getNbCustomersAssigned2PrefCluster(localSearchSolution);
-						System.out.println("\t... after step " + (step + 1) + " of " + heuristicType.name() + ": "
-								+ localSearchSolution.getCost().toSingleLineSummary() + " #custAssigned2Pref="
-								+ nbAssigned2Pref + "/" + nbCustomers);
-
-						step++;
-					}
+				for (boolean useMultiplier : new boolean[] { true, false }) {
+					double[] values = useMultiplier ? prefMultiplierVals : notPrefPenalty;
+					for (int i = 0; i < values.length; i++) {
+						double value = values[i];
+						for (Customer customer : problem.getCustomers()) {
+							if (useMultiplier) {
+								customer.setTravelCostMultiplier4PreferredClusterIndex(value);
+								customer.setPreferredClusterPenaltyCost(0);
+							} else {
+								customer.setTravelCostMultiplier4PreferredClusterIndex(1);
+								customer.setPreferredClusterPenaltyCost(value);
+							}
+						}
 
-					assertEquals(0, localSearchSolution.getNbUnassignedCustomers());
-					nbCustomersAssigned2Pref.add(getNbCustomersAssigned2PrefCluster(localSearchSolution));
-				}
+						// Create initial solution just using randomised weighted as this gives some initial quantity
+						ImmutableSolution initial = TestUtils.constructUsingRandomisedWeighted(random, problem);
+
+						// Setup local search using just the heuristic
+						LocalSearchConfig config = TestUtils.getSingleHeuristicConfig(heuristicType);
+						MutableSolution localSearchSolution = new MutableSolution(problem,
+								initial.getCustomersToClusters());
+
+						// Run iterations until no improvement (should happen quickly)
+						System.out.println(heuristicType.name() + " mult=" + useMultiplier + " prefMult=" + value);
+						System.out.println("\tInitial cost before calling " + heuristicType.name() + ": "
+								+ initial.getCost().toSingleLineSummary() + " #custAssigned2Pref="
+								+ getNbCustomersAssigned2PrefCluster(initial) + "/" + nbCustomers);
+						int step = 0;
+						Comparator<Cost> stdComparator = Cost.createApproxEqualComparator();
+						boolean improved = true;
+						while (improved) {
+							improved = TestUtils.createLocalSearch(problem, config, random).runSingleStep(step,
+									stdComparator, localSearchSolution);
+							int nbAssigned2Pref = getNbCustomersAssigned2PrefCluster(localSearchSolution);
+							System.out.println("\t... after step " + (step + 1) + " of " + heuristicType.name() + ": "
+									+ localSearchSolution.getCost().toSingleLineSummary() + " #custAssigned2Pref="
+									+ nbAssigned2Pref + "/" + nbCustomers);
+
+							step++;
+						}
 
-				if(useMultiplier) {
-					assertAssigned2PrefFractionsOK(nbCustomers, nbCustomersAssigned2Pref);					
-				}else {
-					String msg = heuristicType.name() + " using fixed penalty, nbCustomersAssigned2Pref=" + nbCustomersAssigned2Pref;
-					System.out.println(msg);
-					assertEquals(3, nbCustomersAssigned2Pref.size());
-					assertTrue(msg,nbCustomersAssigned2Pref.get(0)< nbCustomersAssigned2Pref.get(1)-5);
-					assertTrue(msg,nbCustomersAssigned2Pref.get(1)< nbCustomersAssigned2Pref.get(2)-10);
-				//	if(heuristicType)
-				//	assertEquals(nbCustomers, nbCustomersAssigned2Pref.get(2).intValue());
+						assertEquals(0, localSearchSolution.getNbUnassignedCustomers());
+						int[] totals = useMultiplier ? multiplierTotals[heuristicType.ordinal()]
+								: penaltyTotals[heuristicType.ordinal()];
+						totals[i] += getNbCustomersAssigned2PrefCluster(localSearchSolution);
+					}
+					System.out.println();
 				}
-				System.out.println();
 			}
-		}
 
-		// test whole solver running
-		{
+			// test whole solver running
 			System.out.println("Running whole solver");
-			ArrayList<Integer> nbCustomersAssigned2Pref = new ArrayList<Integer>();
-			for (double prefMultiplier : prefMultiplierVals) {
+			for (int i = 0; i < prefMultiplierVals.length; i++) {
 				for (Customer customer : problem.getCustomers()) {
-					customer.setTravelCostMultiplier4PreferredClusterIndex(prefMultiplier);
-					customer.setPreferredClusterPenaltyCost(0);					
-
+					customer.setTravelCostMultiplier4PreferredClusterIndex(prefMultiplierVals[i]);
+					customer.setPreferredClusterPenaltyCost(0);
 				}
 				ImmutableSolution sol = runGetSol(random, problem);
 				assertEquals(0, sol.getNbUnassignedCustomers());
-
-				nbCustomersAssigned2Pref.add(getNbCustomersAssigned2PrefCluster(sol));
-
+				solverTotals[i] += getNbCustomersAssigned2PrefCluster(sol);
 			}
-			assertAssigned2PrefFractionsOK(nbCustomers, nbCustomersAssigned2Pref);
 			System.out.println();
-		}
-
-		// test with effectively infinite capacity range, all customers to to their prefered
-		{
 
-			ArrayList<Integer> nbCustomersAssigned2Pref = new ArrayList<Integer>();
-			double[] penalties = new double[] { 0, 0.3, 10};
-			for(double penalty:penalties) {
-				for(Cluster cluster:problem.getClusters()) {
+			// test with effectively infinite capacity range, all customers to to their prefered
+			for (int i = 0; i < unlimitedCapacityPenalties.length; i++) {
+				for (Cluster cluster : problem.getClusters()) {
 					cluster.setMinQuantity(0);
 					cluster.setMaxQuantity(10000000);
-				}	
-				
+				}
+
 				for (Customer customer : problem.getCustomers()) {
 					customer.setTravelCostMultiplier4PreferredClusterIndex(1);
-					customer.setPreferredClusterPenaltyCost(penalty);
-				}	
-				
+					customer.setPreferredClusterPenaltyCost(unlimitedCapacityPenalties[i]);
+				}
+
 				ImmutableSolution sol = runGetSol(random, problem);
 				assertEquals(0, sol.getNbUnassignedCustomers());
-				int nbAssigned=getNbCustomersAssigned2PrefCluster(sol);
-				nbCustomersAssigned2Pref.add(nbAssigned);
-				System.out.println("penalty=" + penalty + " nbAssigned="+nbAssigned);
+				int nbAssigned = getNbCustomersAssigned2PrefCluster(sol);
+				unlimitedCapacityTotals[i] += nbAssigned;
+				System.out.println("penalty=" + unlimitedCapacityPenalties[i] + " nbAssigned=" + nbAssigned);
 			}
-			assertEquals(3, nbCustomersAssigned2Pref.size());
-			assertEquals(nbCustomers, nbCustomersAssigned2Pref.get(2).intValue());
-			assertTrue(nbCustomersAssigned2Pref.get(0)< nbCustomersAssigned2Pref.get(1)-5);
-			assertTrue(nbCustomersAssigned2Pref.get(1)< nbCustomersAssigned2Pref.get(2)-10);
 		}
+
+		int nbTotalCustomers = nbProblems * nbCustomers;
+		for (LocalSearchHeuristic heuristicType : LocalSearchHeuristic.values()) {
+			if (heuristicType == LocalSearchHeuristic.NONE) {
+				continue;
+			}
+			assertAssigned2PrefFractionsOK(nbTotalCustomers, multiplierTotals[heuristicType.ordinal()]);
+
+			// a small penalty has a small effect on a single problem, so require a mean increase of 2 customers
+			int[] totals = penaltyTotals[heuristicType.ordinal()];
+			String msg = heuristicType.name() + " using fixed penalty, nbCustomersAssigned2Pref="
+					+ Arrays.toString(totals);
+			System.out.println(msg);
+			assertTrue(msg, totals[0] < totals[1] - 2 * nbProblems);
+			assertTrue(msg, totals[1] < totals[2] - 10 * nbProblems);
+		}
+
+		assertAssigned2PrefFractionsOK(nbTotalCustomers, solverTotals);
+
+		assertEquals(nbTotalCustomers, unlimitedCapacityTotals[2]);
+		assertTrue(unlimitedCapacityTotals[0] < unlimitedCapacityTotals[1] - 5 * nbProblems);
+		assertTrue(unlimitedCapacityTotals[1] < unlimitedCapacityTotals[2] - 10 * nbProblems);
 	}
 
 	private ImmutableSolution runGetSol(Random random, Problem problem) {
@@ -182,14 +186,14 @@ public class TestPreferredCluster4Customer {
 		return sol;
 	}
 
-	private void assertAssigned2PrefFractionsOK(int nbCustomers, ArrayList<Integer> nbCustomersAssigned2Pref) {
-		assertEquals(3, nbCustomersAssigned2Pref.size());
-		String msg = "nbCustomersAssigned2Pref=" + nbCustomersAssigned2Pref;
+	private void assertAssigned2PrefFractionsOK(int nbCustomers, int[] nbCustomersAssigned2Pref) {
+		assertEquals(3, nbCustomersAssigned2Pref.length);
+		String msg = "nbCustomersAssigned2Pref=" + Arrays.toString(nbCustomersAssigned2Pref);
 		System.out.println(msg);
-		assertTrue(msg, nbCustomersAssigned2Pref.get(0) <= 0.5 * nbCustomersAssigned2Pref.get(1)+0.00001);
-		assertTrue(msg, nbCustomersAssigned2Pref.get(0) < 0.15 * nbCustomersAssigned2Pref.get(2));
-		assertTrue(msg, nbCustomersAssigned2Pref.get(1) < 0.45 * nbCustomersAssigned2Pref.get(2));
-		assertTrue(msg, nbCustomersAssigned2Pref.get(0) < 0.1 * nbCustomers);
-		assertTrue(msg, nbCustomersAssigned2Pref.get(2) > 0.7 * nbCustomers);
+		assertTrue(msg, nbCustomersAssigned2Pref[0] <= 0.5 * nbCustomersAssigned2Pref[1]+0.00001);
+		assertTrue(msg, nbCustomersAssigned2Pref[0] < 0.15 * nbCustomersAssigned2Pref[2]);
+		assertTrue(msg, nbCustomersAssigned2Pref[1] < 0.45 * nbCustomersAssigned2Pref[2]);
+		assertTrue(msg, nbCustomersAssigned2Pref[0] < 0.1 * nbCustomers);
+		assertTrue(msg, nbCustomersAssigned2Pref[2] > 0.7 * nbCustomers);
 	}
 }
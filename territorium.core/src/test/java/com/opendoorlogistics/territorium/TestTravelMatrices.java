@@ -0,0 +1,491 @@
+/*******************************************************************************
+ * Copyright 2014-2017 Open Door Logistics Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.opendoorlogistics.territorium;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.opendoorlogistics.territorium.examples.XYMinMaxQuantitiesHeterogeneousClusters;
+import com.opendoorlogistics.territorium.optimiser.data.ImmutableSolution;
+import com.opendoorlogistics.territorium.optimiser.solver.ContinueCallback.ContinueOption;
+import com.opendoorlogistics.territorium.optimiser.solver.Solver;
+import com.opendoorlogistics.territorium.optimiser.solver.SolverConfig;
+import com.opendoorlogistics.territorium.problem.Customer;
+import com.opendoorlogistics.territorium.problem.DistanceTime;
+import com.opendoorlogistics.territorium.problem.EuclideanTravelMatrix;
+import com.opendoorlogistics.territorium.problem.FlatArrayTravelMatrix;
+import com.opendoorlogistics.territorium.problem.HaversineTravelMatrix;
+import com.opendoorlogistics.territorium.problem.MappedFileTravelMatrix;
+import com.opendoorlogistics.territorium.problem.Problem;
+import com.opendoorlogistics.territorium.problem.RowCachingTravelMatrix;
+import com.opendoorlogistics.territorium.problem.TravelCostMatrix;
+import com.opendoorlogistics.territorium.problem.TravelMatrixFileFormat.Precision;
+import com.opendoorlogistics.territorium.problem.TravelMatrixFileWriter;
+import com.opendoorlogistics.territorium.problem.TravelMatrixRowProvider;
+import com.opendoorlogistics.territorium.problem.location.LatLongLocation;
+import com.opendoorlogistics.territorium.problem.location.XYLocation;
+
+public class TestTravelMatrices {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Problem buildProblem(Random random) {
+		return new XYMinMaxQuantitiesHeterogeneousClusters().setNbCustomers(50).setNbClusters(5).build(random);
+	}
+
+	@Test
+	public void testFlatArrayBuilder() {
+		FlatArrayTravelMatrix matrix = new FlatArrayTravelMatrix.Builder(3).set(0, 1, 10, 20).set(1, 0, 11, 21)
+				.setDistance(2, 2, 5).setTime(2, 1, 7).build();
+		assertEquals(3, matrix.getNbLocations());
+		assertEquals(10, matrix.getDistance(0, 1), 0);
+		assertEquals(20, matrix.getTime(0, 1), 0);
+		assertEquals(11, matrix.get(1, 0).getDistance(), 0);
+		assertEquals(21, matrix.get(1, 0).getTime(), 0);
+		assertEquals(5, matrix.getDistance(2, 2), 0);
+		assertEquals(0, matrix.getTime(2, 2), 0);
+		assertEquals(7, matrix.getTime(2, 1), 0);
+		assertEquals(0, matrix.getDistance(2, 1), 0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testFlatArrayBuilderCannotBeReused() {
+		FlatArrayTravelMatrix.Builder builder = new FlatArrayTravelMatrix.Builder(2);
+		builder.build();
+		builder.set(0, 1, 1, 1);
+	}
+
+	@Test
+	public void testFlatArrayXYMatchesGeometry() {
+		Problem problem = buildProblem(new Random(123));
+		FlatArrayTravelMatrix matrix = FlatArrayTravelMatrix.buildForXYProblem(problem, 2);
+		for (int i = 0; i < problem.getCustomers().size(); i++) {
+			XYLocation from = (XYLocation) problem.getCustomers().get(i).getLocation();
+			for (int j = 0; j < problem.getCustomers().size(); j++) {
+				XYLocation to = (XYLocation) problem.getCustomers().get(j).getLocation();
+				double expected = Math.sqrt(Math.pow(from.getX() - to.getX(), 2) + Math.pow(from.getY() - to.getY(), 2));
+				DistanceTime dt = matrix.get(from.getIndex(), to.getIndex());
+				assertEquals(expected, dt.getDistance(), 1E-12);
+				assertEquals(expected / 2, dt.getTime(), 1E-12);
+				assertEquals(dt.getDistance(), matrix.getDistance(from.getIndex(), to.getIndex()), 0);
+				assertEquals(dt.getTime(), matrix.getTime(from.getIndex(), to.getIndex()), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testCompiledTravelCostsMatchRaw() {
+		Random random = new Random(123);
+		Problem problem = buildProblem(random);
+		for (Customer customer : problem.getCustomers()) {
+			customer.setCostPerUnitDistance(random.nextDouble());
+			customer.setCostPerUnitTime(random.nextDouble());
+			customer.setPreferredClusterIndex(random.nextInt(problem.getClusters().size()));
+			customer.setTravelCostMultiplier4PreferredClusterIndex(0.5);
+		}
+
+		Problem compiled = new Problem(problem);
+		compiled.setTravelCostMatrix(TravelCostMatrix.compile(compiled));
+		assertNull(problem.getTravelCostMatrix());
+
+		int nbCustomers = problem.getCustomers().size();
+		for (int clusterIndex = -1; clusterIndex < problem.getClusters().size(); clusterIndex++) {
+			for (int i = 0; i < nbCustomers; i++) {
+				Customer from = problem.getCustomers().get(i);
+				for (int j = 0; j < nbCustomers; j++) {
+					double expected = problem.getTravelCost(clusterIndex, from.getLocation(), problem.getCustomers().get(j));
+					assertEquals(expected, compiled.getTravelCost(clusterIndex, from.getLocation(), j), 1E-12);
+					assertEquals(expected, problem.getTravelCost(clusterIndex, from.getLocation(), j), 0);
+				}
+			}
+		}
+
+		// changing the travel matrix must clear the now-stale compiled costs
+		compiled.setTravelMatrix(problem.getTravelMatrix());
+		assertNull(compiled.getTravelCostMatrix());
+	}
+
+	@Test
+	public void testSolverWithCompiledTravelCosts() {
+		Problem problem = buildProblem(new Random(123));
+		ImmutableSolution[] solutions = new ImmutableSolution[2];
+		for (int i = 0; i < 2; i++) {
+			SolverConfig config = new SolverConfig();
+			config.setPrecompileTravelCosts(i == 1);
+			solutions[i] = new Solver(problem, config,
+					s -> s.getNbOuterSteps() < 10 ? ContinueOption.KEEP_GOING : ContinueOption.FINISH_NOW, new Random(123))
+							.solve(null);
+		}
+
+		// the caller's problem is left untouched
+		assertNull(problem.getTravelCostMatrix());
+		assertEquals(solutions[0].getCost().getCost(), solutions[1].getCost().getCost(), 1E-6);
+		assertEquals(solutions[0].getCost().getQuantityViolation(), solutions[1].getCost().getQuantityViolation(), 1E-6);
+	}
+
+	@Test
+	public void testMappedFileMatchesSource() throws IOException {
+		Problem problem = buildProblem(new Random(123));
+		FlatArrayTravelMatrix source = FlatArrayTravelMatrix.buildForXYProblem(problem, 3);
+		int n = source.getNbLocations();
+
+		for (Precision precision : Precision.values()) {
+			File file = folder.newFile();
+			TravelMatrixFileWriter.write(source, n, precision, file);
+			assertEquals(32 + 2L * n * n * precision.getBytesPerValue(), file.length());
+
+			// use tiny segments so reads cross many segment boundaries
+			for (int segmentBits : new int[] { 6, MappedFileTravelMatrix.DEFAULT_SEGMENT_SIZE_BITS }) {
+				try (MappedFileTravelMatrix mapped = MappedFileTravelMatrix.open(file, true, segmentBits)) {
+					assertEquals(n, mapped.getNbLocations());
+					assertEquals(precision, mapped.getHeader().getPrecision());
+					for (int i = 0; i < n; i++) {
+						for (int j = 0; j < n; j++) {
+							double d = source.getDistance(i, j);
+							double t = source.getTime(i, j);
+							if (precision == Precision.FLOAT32) {
+								d = (float) d;
+								t = (float) t;
+							}
+							assertEquals(d, mapped.getDistance(i, j), 0);
+							assertEquals(t, mapped.getTime(i, j), 0);
+							assertEquals(t, mapped.get(i, j).getTime(), 0);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMappedFileDetectsCorruption() throws IOException {
+		Problem problem = buildProblem(new Random(123));
+		FlatArrayTravelMatrix source = FlatArrayTravelMatrix.buildForXYProblem(problem, 1);
+		File file = folder.newFile();
+		TravelMatrixFileWriter.write(source, source.getNbLocations(), Precision.FLOAT64, file);
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(file.length() - 3);
+			int b = raf.read();
+			raf.seek(file.length() - 3);
+			raf.write(b ^ 0xFF);
+		}
+
+		// opening without verification still works
+		MappedFileTravelMatrix.open(file, false).close();
+
+		try {
+			MappedFileTravelMatrix.open(file, true).close();
+			fail("Corrupt file should fail checksum verification");
+		} catch (IOException e) {
+			// expected
+		}
+
+		// truncated file
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(file.length() - 8);
+		}
+		try {
+			MappedFileTravelMatrix.open(file, false).close();
+			fail("Truncated file should not open");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testEuclideanMatchesFlatArray() {
+		Problem problem = buildProblem(new Random(123));
+		FlatArrayTravelMatrix flat = FlatArrayTravelMatrix.buildForXYProblem(problem, 2);
+		EuclideanTravelMatrix analytic = EuclideanTravelMatrix.buildForXYProblem(problem, 2);
+		int n = flat.getNbLocations();
+		assertEquals(n, analytic.getNbLocations());
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				assertEquals(flat.getDistance(i, j), analytic.getDistance(i, j), 0);
+				assertEquals(flat.getTime(i, j), analytic.getTime(i, j), 1E-15);
+				assertEquals(analytic.getTime(i, j), analytic.get(i, j).getTime(), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testHaversine() {
+		// London to Paris is about 344 km, Sydney to Auckland about 2156 km
+		HaversineTravelMatrix matrix = new HaversineTravelMatrix(new double[] { 51.5074, 48.8566, -33.8688, -36.8485 },
+				new double[] { -0.1278, 2.3522, 151.2093, 174.7633 }, 10);
+		assertEquals(343.5E3, matrix.getDistance(0, 1), 1E3);
+		assertEquals(matrix.getDistance(0, 1), matrix.getDistance(1, 0), 1E-6);
+		assertEquals(2156E3, matrix.getDistance(2, 3), 5E3);
+		assertEquals(matrix.getDistance(2, 3) / 10, matrix.getTime(2, 3), 1E-9);
+		assertEquals(0, matrix.getDistance(2, 2), 0);
+
+		// crossing the antimeridian, one degree of longitude on the equator
+		matrix = new HaversineTravelMatrix(new double[] { 0, 0 }, new double[] { 179.5, -179.5 }, 1, 1);
+		assertEquals(Math.toRadians(1), matrix.getDistance(0, 1), 1E-12);
+	}
+
+	@Test
+	public void testLatLongProblem() {
+		Problem problem = buildProblem(new Random(123));
+		for (Customer customer : problem.getCustomers()) {
+			XYLocation xy = (XYLocation) customer.getLocation();
+			LatLongLocation ll = new LatLongLocation(50 + xy.getY(), xy.getX());
+			ll.setIndex(xy.getIndex());
+			customer.setLocation(ll);
+		}
+		HaversineTravelMatrix matrix = HaversineTravelMatrix.buildForLatLongProblem(problem, 1);
+		LatLongLocation a = (LatLongLocation) problem.getCustomers().get(0).getLocation();
+		LatLongLocation b = (LatLongLocation) problem.getCustomers().get(1).getLocation();
+		double expected = HaversineTravelMatrix.EARTH_RADIUS_METRES * Math.acos(Math.sin(Math.toRadians(a.getLatitude()))
+				* Math.sin(Math.toRadians(b.getLatitude())) + Math.cos(Math.toRadians(a.getLatitude()))
+						* Math.cos(Math.toRadians(b.getLatitude())) * Math.cos(Math.toRadians(b.getLongitude() - a.getLongitude())));
+		assertEquals(expected, matrix.getDistance(a.getIndex(), b.getIndex()), 1E-3);
+
+		try {
+			EuclideanTravelMatrix.buildForXYProblem(problem, 1);
+			fail("Lat-long locations should be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testSolverWithEuclideanMatrix() {
+		Problem problem = buildProblem(new Random(123));
+		Problem analytic = new Problem(problem);
+		analytic.setTravelMatrix(EuclideanTravelMatrix.buildForXYProblem(problem, 1));
+		ImmutableSolution[] solutions = new ImmutableSolution[2];
+		Problem[] problems = new Problem[] { problem, analytic };
+		for (int i = 0; i < 2; i++) {
+			SolverConfig config = new SolverConfig();
+			config.setNbOuterSteps(10);
+			solutions[i] = new Solver(problems[i], config, null, new Random(123)).solve(null);
+		}
+		assertEquals(solutions[0].getCost().getCost(), solutions[1].getCost().getCost(), 1E-6);
+	}
+
+	/**
+	 * In-process stand-in for a road network engine, counting the rows it calculates
+	 */
+	private static class CountingRowProvider implements TravelMatrixRowProvider {
+		final FlatArrayTravelMatrix source;
+		int nbRowsComputed;
+		int nbBatches;
+
+		CountingRowProvider(FlatArrayTravelMatrix source) {
+			this.source = source;
+		}
+
+		@Override
+		public int getNbLocations() {
+			return source.getNbLocations();
+		}
+
+		@Override
+		public void computeRow(int fromLocationIndex, double[] outDistances, double[] outTimes) {
+			nbRowsComputed++;
+			for (int to = 0; to < outDistances.length; to++) {
+				outDistances[to] = source.getDistance(fromLocationIndex, to);
+				outTimes[to] = source.getTime(fromLocationIndex, to);
+			}
+		}
+
+		@Override
+		public void computeRows(int[] fromLocationIndices, double[][] outDistances, double[][] outTimes) {
+			nbBatches++;
+			TravelMatrixRowProvider.super.computeRows(fromLocationIndices, outDistances, outTimes);
+		}
+	}
+
+	@Test
+	public void testRowCachingLRU() {
+		Problem problem = buildProblem(new Random(123));
+		CountingRowProvider provider = new CountingRowProvider(FlatArrayTravelMatrix.buildForXYProblem(problem, 2));
+		int n = provider.getNbLocations();
+
+		// room for 3 rows
+		RowCachingTravelMatrix matrix = new RowCachingTravelMatrix(provider, 3 * 16L * n + 100);
+		assertEquals(3, matrix.getMaxCachedRows());
+
+		for (int row : new int[] { 0, 1, 2, 0, 3, 0, 1 }) {
+			for (int to = 0; to < n; to++) {
+				assertEquals(provider.source.getDistance(row, to), matrix.getDistance(row, to), 0);
+				assertEquals(provider.source.getTime(row, to), matrix.getTime(row, to), 0);
+			}
+		}
+
+		// 0,1,2 miss; 0 hits; 3 misses evicting 1; 0 hits; 1 misses evicting 2
+		assertEquals(5, provider.nbRowsComputed);
+		assertEquals(5, matrix.getNbMisses());
+		assertEquals(2, matrix.getNbEvictions());
+		assertEquals(7L * 2 * n - 5, matrix.getNbHits());
+		assertEquals(3, matrix.getNbCachedRows());
+
+		// 0, 1 and 3 cached so only 4 and 5 are fetched, in a single batch
+		matrix.prefetchRows(0, 4, 5, 4);
+		assertEquals(1, provider.nbBatches);
+		assertEquals(7, provider.nbRowsComputed);
+		assertEquals(provider.source.getDistance(5, 7), matrix.getDistance(5, 7), 0);
+		assertEquals(provider.source.getDistance(0, 7), matrix.getDistance(0, 7), 0);
+		assertEquals(8, provider.nbRowsComputed);
+	}
+
+	@Test
+	public void testRowCachingProviderFailure() {
+		Problem problem = buildProblem(new Random(123));
+		FlatArrayTravelMatrix source = FlatArrayTravelMatrix.buildForXYProblem(problem, 2);
+		int[] nbFailures = new int[] { 0 };
+		CountingRowProvider provider = new CountingRowProvider(source) {
+			@Override
+			public void computeRow(int fromLocationIndex, double[] outDistances, double[] outTimes) {
+				if (nbFailures[0] > 0) {
+					nbFailures[0]--;
+					throw new RuntimeException("Road network timeout");
+				}
+				super.computeRow(fromLocationIndex, outDistances, outTimes);
+			}
+		};
+		int n = provider.getNbLocations();
+
+		// room for 1 row, so the failing row would reuse row 0's slot
+		RowCachingTravelMatrix matrix = new RowCachingTravelMatrix(provider, 16L * n + 100);
+		assertEquals(1, matrix.getMaxCachedRows());
+		assertEquals(source.getDistance(0, 7), matrix.getDistance(0, 7), 0);
+
+		nbFailures[0] = 1;
+		try {
+			matrix.getDistance(1, 7);
+			fail();
+		} catch (RuntimeException e) {
+		}
+
+		// the failed row isn't cached and row 0 is still intact, so both are read correctly
+		assertEquals(1, matrix.getNbMisses());
+		assertEquals(source.getDistance(0, 7), matrix.getDistance(0, 7), 0);
+		for (int to = 0; to < n; to++) {
+			assertEquals(source.getDistance(1, to), matrix.getDistance(1, to), 0);
+			assertEquals(source.getTime(1, to), matrix.getTime(1, to), 0);
+		}
+		assertEquals(2, matrix.getNbMisses());
+	}
+
+	@Test
+	public void testRowCachingCalculatesOutsideLock() throws Exception {
+		Problem problem = buildProblem(new Random(123));
+		FlatArrayTravelMatrix source = FlatArrayTravelMatrix.buildForXYProblem(problem, 2);
+		int n = source.getNbLocations();
+
+		// rows 1 and 4 are slow, blocking until released
+		int[] slowRows = new int[] { 1, 4 };
+		CountDownLatch[] entered = new CountDownLatch[] { new CountDownLatch(1), new CountDownLatch(1) };
+		CountDownLatch[] release = new CountDownLatch[] { new CountDownLatch(1), new CountDownLatch(1) };
+		AtomicInteger[] nbComputed = new AtomicInteger[] { new AtomicInteger(), new AtomicInteger() };
+		AtomicBoolean timedOut = new AtomicBoolean();
+		TravelMatrixRowProvider provider = new TravelMatrixRowProvider() {
+			@Override
+			public int getNbLocations() {
+				return n;
+			}
+
+			@Override
+			public void computeRow(int fromLocationIndex, double[] outDistances, double[] outTimes) {
+				for (int i = 0; i < slowRows.length; i++) {
+					if (fromLocationIndex == slowRows[i]) {
+						nbComputed[i].incrementAndGet();
+						entered[i].countDown();
+						try {
+							if (!release[i].await(10, TimeUnit.SECONDS)) {
+								timedOut.set(true);
+							}
+						} catch (InterruptedException e) {
+							throw new RuntimeException(e);
+						}
+					}
+				}
+				for (int to = 0; to < n; to++) {
+					outDistances[to] = source.getDistance(fromLocationIndex, to);
+					outTimes[to] = source.getTime(fromLocationIndex, to);
+				}
+			}
+		};
+		RowCachingTravelMatrix matrix = new RowCachingTravelMatrix(provider, 10 * 16L * n);
+		matrix.getDistance(0, 7);
+
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			Future<Double> slow = executor.submit(() -> matrix.getDistance(1, 7));
+			entered[0].await();
+			Future<Double> waiting = executor.submit(() -> matrix.getTime(1, 8));
+
+			// while row 1 is calculated other rows can still be read and calculated
+			assertEquals(source.getDistance(0, 7), matrix.getDistance(0, 7), 0);
+			assertEquals(source.getDistance(2, 7), matrix.getDistance(2, 7), 0);
+			release[0].countDown();
+			assertEquals(source.getDistance(1, 7), slow.get(), 0);
+			assertEquals(source.getTime(1, 8), waiting.get(), 0);
+			assertEquals(1, nbComputed[0].get());
+
+			// a thread reading a row in a prefetch batch gets that row once the batch is done
+			Future<?> prefetch = executor.submit(() -> matrix.prefetchRows(3, 4));
+			entered[1].await();
+			Future<Double> waitingForBatch = executor.submit(() -> matrix.getDistance(4, 7));
+			release[1].countDown();
+			prefetch.get();
+			assertEquals(source.getDistance(4, 7), waitingForBatch.get(), 0);
+			assertEquals(1, nbComputed[1].get());
+		} finally {
+			executor.shutdown();
+		}
+		assertFalse("Reads shouldn't wait for another row's calculation", timedOut.get());
+		assertEquals(5, matrix.getNbMisses());
+	}
+
+	@Test
+	public void testSolverWithRowCaching() {
+		Problem problem = buildProblem(new Random(123));
+		CountingRowProvider provider = new CountingRowProvider(FlatArrayTravelMatrix.buildForXYProblem(problem, 1));
+		Problem cached = new Problem(problem);
+		cached.setTravelMatrix(new RowCachingTravelMatrix(provider, 10 * 16L * provider.getNbLocations()));
+
+		ImmutableSolution[] solutions = new ImmutableSolution[2];
+		Problem[] problems = new Problem[] { problem, cached };
+		for (int i = 0; i < 2; i++) {
+			SolverConfig config = new SolverConfig();
+			config.setNbOuterSteps(5);
+			solutions[i] = new Solver(problems[i], config, null, new Random(123)).solve(null);
+		}
+		assertEquals(solutions[0].getCost().getCost(), solutions[1].getCost().getCost(), 1E-9);
+	}
+}
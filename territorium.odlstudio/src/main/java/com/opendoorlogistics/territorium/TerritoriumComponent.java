@@ -63,8 +63,8 @@ import com.opendoorlogistics.territorium.optimiser.solver.SolverStateSummary;
 import com.opendoorlogistics.territorium.problem.Cluster;
 import com.opendoorlogistics.territorium.problem.Customer;
 import com.opendoorlogistics.territorium.problem.DistanceTime;
+import com.opendoorlogistics.territorium.problem.FlatArrayTravelMatrix;
 import com.opendoorlogistics.territorium.problem.Problem;
-import com.opendoorlogistics.territorium.problem.TravelMatrix;
 import com.opendoorlogistics.territorium.problem.location.LatLongLocation;
 import com.opendoorlogistics.territorium.problem.location.LatLongLocation.LatLongLocationFactory;
 import com.opendoorlogistics.territorium.problem.location.Location;
@@ -337,10 +337,9 @@ final public class TerritoriumComponent implements ODLComponent {
 					.getIndex(Integer.toString(ll.getIndex()));
 		});
 
-		// create territorium matrix and get non infinite (i.e. connected) distance and time
+		// get non infinite (i.e. connected) distance and time
 		DoubleSummaryStatistics maxDist = new DoubleSummaryStatistics();
 		DoubleSummaryStatistics maxTime = new DoubleSummaryStatistics();
-		DistanceTime[][] tMatrix = new DistanceTime[nLocs][nLocs];
 		for (int from = 0; from < nLocs; from++) {
 			int odlFrom = territoriumToODLLocIndex[from];
 			for (int to = 0; to < nLocs; to++) {
@@ -349,7 +348,6 @@ final public class TerritoriumComponent implements ODLComponent {
 						ODLCostMatrix.COST_MATRIX_INDEX_DISTANCE);
 				double time = distancesTable.get(odlFrom, odlTo,
 						ODLCostMatrix.COST_MATRIX_INDEX_TIME);
-				tMatrix[from][to] = new DistanceTime(dist, time);
 				if (!Double.isInfinite(dist)) {
 					maxDist.accept(dist);
 				}
@@ -359,26 +357,27 @@ final public class TerritoriumComponent implements ODLComponent {
 			}
 		}
 
-		// replace and infinites with 10 x times the max
+		// create territorium matrix, replacing any infinites with 10 x times the max
+		FlatArrayTravelMatrix.Builder builder = new FlatArrayTravelMatrix.Builder(nLocs);
 		for (int from = 0; from < nLocs; from++) {
+			int odlFrom = territoriumToODLLocIndex[from];
 			for (int to = 0; to < nLocs; to++) {
-				if (Double.isInfinite(tMatrix[from][to].getDistance())) {
-					tMatrix[from][to].setDistance(10 * maxDist.getMax());
+				int odlTo = territoriumToODLLocIndex[to];
+				double dist = distancesTable.get(odlFrom, odlTo,
+						ODLCostMatrix.COST_MATRIX_INDEX_DISTANCE);
+				double time = distancesTable.get(odlFrom, odlTo,
+						ODLCostMatrix.COST_MATRIX_INDEX_TIME);
+				if (Double.isInfinite(dist)) {
+					dist = 10 * maxDist.getMax();
 				}
-				if (Double.isInfinite(tMatrix[from][to].getTime())) {
-					tMatrix[from][to].setTime(10 * maxTime.getMax());
+				if (Double.isInfinite(time)) {
+					time = 10 * maxTime.getMax();
 				}
-
+				builder.set(from, to, dist, time);
 			}
 		}
 
-		problem.setTravelMatrix(new TravelMatrix() {
-
-			@Override
-			public DistanceTime get(int fromLocationIndex, int toLocationIndex) {
-				return tMatrix[fromLocationIndex][toLocationIndex];
-			}
-		});
+		problem.setTravelMatrix(builder.build());
 		return problem;
 	}
 